@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -37,6 +38,13 @@ public class AdvancedTextProcessor extends Application {
     private final DataAnalyzer dataAnalyzer = new DataAnalyzer();
     private final PatternManager patternManager = PatternManager.createCommonPatternCollection();
 
+    // Time allowed for a regex operation before it is aborted, so a runaway pattern cannot hang the UI
+    private static final long INTERACTIVE_TIMEOUT_SECONDS = 5;
+    private static final long BATCH_FILE_TIMEOUT_SECONDS = 30;
+
+    // Matches listed at once; further pages are loaded on request
+    private static final int MATCH_PAGE_SIZE = 1000;
+
     // UI Components - Input Section
     private TitledPane inputPane;
     private TextArea mainInputTextArea;
@@ -61,6 +69,7 @@ public class AdvancedTextProcessor extends Application {
     private TextField highlightPrefixField;
     private TextField highlightSuffixField;
     private ListView<String> matchesListView;
+    private Button loadMoreMatchesButton;
 
     // UI Components - Analysis Section
     private TitledPane analysisPane;
@@ -72,6 +81,7 @@ public class AdvancedTextProcessor extends Application {
     // UI Components - Output Section
     private TitledPane outputPane;
     private TextArea mainOutputTextArea;
+    private HighlightedTextView highlightedOutputView;
     private Label statusLabel;
     private TextArea fileContentPreviewArea; // Added to store the preview area
     private TextField outputDirField;
@@ -80,6 +90,22 @@ public class AdvancedTextProcessor extends Application {
     private Map<String, Long> wordFrequencyMap = new HashMap<>();
     private List<String> searchHistory = new ArrayList<>();
 
+    // Matches of the last search in the input, with the input range edited since then
+    private IncrementalMatcher inputMatcher;
+    private int editedStart = -1;
+    private int editedOldEnd;
+    private int editedNewEnd;
+
+    // Text and pattern of the listed matches, and where the next page of them starts
+    private String listedText;
+    private String listedPattern;
+    private int listedFlags;
+    private int nextMatchPosition;
+
+    // Line index of the input, kept until the input changes
+    private String indexedText;
+    private LineIndex inputLines;
+
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("DataFlow Text Processor");
@@ -142,6 +168,12 @@ public class AdvancedTextProcessor extends Application {
         mainInputTextArea.setPrefRowCount(10);
         mainInputTextArea.setPromptText("Enter text to process here...");
         mainInputTextArea.setWrapText(true);
+        mainInputTextArea.setTextFormatter(new TextFormatter<String>(change -> {
+            if (change.isContentChange()) {
+                recordInputEdit(change.getRangeStart(), change.getRangeEnd(), change.getText().length());
+            }
+            return change;
+        }));
 
 
         // File selection components
@@ -368,6 +400,10 @@ public class AdvancedTextProcessor extends Application {
         matchesListView = new ListView<>();
         matchesListView.setPrefHeight(120);
 
+        loadMoreMatchesButton = new Button("Load More Matches");
+        loadMoreMatchesButton.setOnAction(e -> loadMoreMatches());
+        loadMoreMatchesButton.setDisable(true);
+
         // Add all components to the content pane
         content.getChildren().addAll(
                 patternLabel,
@@ -377,7 +413,8 @@ public class AdvancedTextProcessor extends Application {
                 operationsBox,
                 executeBox,
                 matchesLabel,
-                matchesListView
+                matchesListView,
+                loadMoreMatchesButton
         );
 
         // Create the titled pane
@@ -450,6 +487,15 @@ public class AdvancedTextProcessor extends Application {
         mainOutputTextArea.setWrapText(true);
         mainOutputTextArea.setEditable(false);
 
+        // Highlighted results are rendered as styled spans and replace the text area while shown
+        highlightedOutputView = new HighlightedTextView();
+        highlightedOutputView.setPrefHeight(300);
+        setHighlightedOutputVisible(false);
+        mainOutputTextArea.textProperty().addListener((observable, oldText, newText) -> {
+            setHighlightedOutputVisible(false);
+            highlightedOutputView.clear();
+        });
+
         // Output actions
         HBox actionsBox = new HBox(10);
         Button saveOutputButton = new Button("Save to File");
@@ -463,6 +509,7 @@ public class AdvancedTextProcessor extends Application {
         content.getChildren().addAll(
                 outputLabel,
                 mainOutputTextArea,
+                highlightedOutputView,
                 actionsBox
         );
 
@@ -475,17 +522,19 @@ public class AdvancedTextProcessor extends Application {
             );
             File outputFile = fileChooser.showSaveDialog(null);
             if (outputFile != null) {
-                saveToFile(outputFile, mainOutputTextArea.getText());
+                saveToFile(outputFile, getOutputText());
             }
         });
 
         copyToInputButton.setOnAction(e -> {
-            mainInputTextArea.setText(mainOutputTextArea.getText());
+            mainInputTextArea.setText(getOutputText());
             statusLabel.setText("Output copied to input");
         });
 
         clearOutputButton.setOnAction(e -> {
             mainOutputTextArea.clear();
+            highlightedOutputView.clear();
+            setHighlightedOutputVisible(false);
             statusLabel.setText("Output cleared");
         });
 
@@ -514,41 +563,60 @@ public class AdvancedTextProcessor extends Application {
             }
 
             int flags = getCurrentFlags();
-            String result = inputText;
+            boolean find = findMatchesCheckBox.isSelected();
+            boolean highlight = highlightMatchesCheckBox.isSelected();
+            boolean replace = replaceMatchesCheckBox.isSelected();
 
-            // Process operations in sequence: find -> highlight -> replace
-            if (findMatchesCheckBox.isSelected()) {
+            if (find && !highlight && !replace) {
+                // Only re-matches what was edited since the last search
                 findMatches();
+                return;
             }
+            MatchBudget budget = new MatchBudget(INTERACTIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
-            if (highlightMatchesCheckBox.isSelected()) {
-                result = textProcessor.highlightMatches(
-                        result,
-                        patternStr,
-                        highlightPrefixField.getText(),
-                        highlightSuffixField.getText(),
-                        flags
-                );
-            }
+            // Run highlight -> replace in one scan that also lists the first page of matches;
+            // highlighting on its own is rendered from the spans
+            boolean spansOnly = highlight && !replace;
+            TextProcessor.ProcessResult processed = textProcessor.processText(
+                    (CharSequence) inputText,
+                    patternStr,
+                    flags,
+                    find ? MATCH_PAGE_SIZE : 0,
+                    highlight && !spansOnly ? highlightPrefixField.getText() : null,
+                    highlight && !spansOnly ? highlightSuffixField.getText() : null,
+                    replace ? replacementTextField.getText() : null,
+                    budget
+            );
 
-            if (replaceMatchesCheckBox.isSelected()) {
-                result = textProcessor.replaceAll(
-                        result,
-                        patternStr,
-                        replacementTextField.getText(),
-                        flags
-                );
+            if (find) {
+                // Only the first page of matches is listed; the rest is loaded on request
+                TextProcessor.MatchPage page = processed.getMatchPage();
+                LineIndex lines = linesOf(inputText);
+                List<String> matchTexts = new ArrayList<>(page.getMatches().size());
+                for (TextProcessor.MatchInfo match : page.getMatches()) {
+                    matchTexts.add(describeMatch(lines, match.getStartPosition(), match.getMatchText()));
+                }
+                showMatches(matchTexts, inputText, patternStr, flags, page.getNextPosition(), page.isComplete());
             }
 
-            // Update output if any operation was performed
-            if (highlightMatchesCheckBox.isSelected() || replaceMatchesCheckBox.isSelected()) {
-                mainOutputTextArea.setText(result);
+            if (spansOnly) {
+                MatchSpans spans = processed.getSpans();
+                mainOutputTextArea.clear();
+                highlightedOutputView.show(inputText, spans);
+                setHighlightedOutputVisible(true);
+                statusLabel.setText("Highlighted " + spans.size() + " matches");
+            } else if (highlight || replace) {
+                mainOutputTextArea.setText(processed.getOutput());
                 statusLabel.setText("Text processed successfully");
             }
 
         } catch (PatternSyntaxException e) {
             showError("Invalid Regex Pattern", "The regex pattern is invalid: " + e.getMessage());
             statusLabel.setText("Error: Invalid regex pattern");
+        } catch (MatchTimeoutException e) {
+            showError("Pattern Timeout", "The regex operation was stopped: " + e.getMessage()
+                    + " (" + e.getCompletedCount() + " matches processed)");
+            statusLabel.setText("Error: Regex operation timed out");
         } catch (Exception e) {
             showError("Error", e.getMessage());
             statusLabel.setText("Error: " + e.getMessage());
@@ -564,35 +632,165 @@ public class AdvancedTextProcessor extends Application {
                 throw new IllegalArgumentException("Regex pattern cannot be empty");
             }
 
-            List<String> matches = textProcessor.findMatches(
+            IncrementalMatcher matches = matchInput(
                     inputText,
                     patternStr,
-                    getCurrentFlags()
+                    getCurrentFlags(),
+                    new MatchBudget(INTERACTIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
             );
 
-            matchesListView.getItems().clear();
-
-            if (matches.isEmpty()) {
-                statusLabel.setText("No matches found");
-            } else {
-                matchesListView.getItems().addAll(matches);
-                statusLabel.setText("Found " + matches.size() + " matches");
+            // All matches are known, but only the first page is listed
+            int listed = Math.min(matches.size(), MATCH_PAGE_SIZE);
+            LineIndex lines = linesOf(inputText);
+            List<String> matchTexts = new ArrayList<>(listed);
+            for (int i = 0; i < listed; i++) {
+                matchTexts.add(describeMatch(lines, matches.getStart(i), matches.getMatchText(i)));
             }
-
-            // Add to search history
-            if (!searchHistory.contains(patternStr)) {
-                searchHistory.add(patternStr);
+            int nextPosition = 0;
+            if (listed > 0) {
+                int lastStart = matches.getStart(listed - 1);
+                int lastEnd = matches.getEnd(listed - 1);
+                nextPosition = lastEnd == lastStart ? lastEnd + 1 : lastEnd;
+            }
+            showMatches(matchTexts, inputText, patternStr, getCurrentFlags(), nextPosition,
+                    listed == matches.size());
+            if (listed < matches.size()) {
+                statusLabel.setText("Showing " + listed + " of " + matches.size() + " matches");
             }
 
         } catch (PatternSyntaxException e) {
             showError("Invalid Regex Pattern", "The regex pattern is invalid: " + e.getMessage());
             statusLabel.setText("Error: Invalid regex pattern");
+        } catch (MatchTimeoutException e) {
+            showError("Pattern Timeout", "The regex operation was stopped: " + e.getMessage()
+                    + " (" + e.getCompletedCount() + " matches found)");
+            statusLabel.setText("Error: Regex operation timed out");
         } catch (Exception e) {
             showError("Error", e.getMessage());
             statusLabel.setText("Error: " + e.getMessage());
         }
     }
 
+    /**
+     * Lists the first page of matches of a search and remembers where the next page starts
+     */
+    private void showMatches(List<String> matches, String text, String patternStr, int flags,
+                             int nextPosition, boolean complete) {
+        matchesListView.getItems().clear();
+        listedText = text;
+        listedPattern = patternStr;
+        listedFlags = flags;
+        addMatches(matches, nextPosition, complete);
+
+        // Add to search history
+        if (!searchHistory.contains(patternStr)) {
+            searchHistory.add(patternStr);
+        }
+    }
+
+    /**
+     * Lists the next page of matches, resuming the search where the listed matches end
+     */
+    private void loadMoreMatches() {
+        try {
+            TextProcessor.MatchPage page = TextProcessor.findMatchPage(
+                    listedText,
+                    listedPattern,
+                    listedFlags,
+                    nextMatchPosition,
+                    MATCH_PAGE_SIZE,
+                    new MatchBudget(INTERACTIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            );
+            LineIndex lines = linesOf(listedText);
+            List<String> matchTexts = new ArrayList<>(page.getMatches().size());
+            for (TextProcessor.MatchInfo match : page.getMatches()) {
+                matchTexts.add(describeMatch(lines, match.getStartPosition(), match.getMatchText()));
+            }
+            addMatches(matchTexts, page.getNextPosition(), page.isComplete());
+        } catch (MatchTimeoutException e) {
+            showError("Pattern Timeout", "The regex operation was stopped: " + e.getMessage()
+                    + " (" + e.getCompletedCount() + " matches found)");
+            statusLabel.setText("Error: Regex operation timed out");
+        } catch (Exception e) {
+            showError("Error", e.getMessage());
+            statusLabel.setText("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the line index of a text, building it only when the text changed since the last call
+     */
+    private LineIndex linesOf(String text) {
+        if (inputLines == null || !text.equals(indexedText)) {
+            inputLines = LineIndex.of(text);
+            indexedText = text;
+        }
+        return inputLines;
+    }
+
+    /**
+     * Formats a listed match as line:column: text, with lines and columns counted from 1
+     */
+    private static String describeMatch(LineIndex lines, int start, String matchText) {
+        return (lines.getLine(start) + 1) + ":" + (lines.getColumn(start) + 1) + ": " + matchText;
+    }
+
+    private void addMatches(List<String> matches, int nextPosition, boolean complete) {
+        matchesListView.getItems().addAll(matches);
+        nextMatchPosition = nextPosition;
+        loadMoreMatchesButton.setDisable(complete);
+
+        int listed = matchesListView.getItems().size();
+        if (listed == 0) {
+            statusLabel.setText("No matches found");
+        } else if (complete) {
+            statusLabel.setText("Found " + listed + " matches");
+        } else {
+            statusLabel.setText("Showing first " + listed + " matches");
+        }
+    }
+
+    /**
+     * Gets the matches of a pattern in the input, matching only the range edited since the last search again
+     */
+    private IncrementalMatcher matchInput(String inputText, String patternStr, int flags, MatchBudget budget) {
+        try {
+            if (inputMatcher == null || !inputMatcher.getPattern().equals(patternStr)
+                    || inputMatcher.getFlags() != flags) {
+                inputMatcher = new IncrementalMatcher(patternStr, flags);
+                inputMatcher.reset(inputText, budget);
+            } else if (editedStart >= 0
+                    && inputText.length() - editedNewEnd + editedOldEnd == inputMatcher.getText().length()) {
+                inputMatcher.edit(inputText, editedStart, editedOldEnd - editedStart,
+                        editedNewEnd - editedStart, budget);
+            } else if (inputMatcher.getText() != inputText) {
+                inputMatcher.update(inputText, budget);
+            }
+            editedStart = -1;
+            return inputMatcher;
+        } catch (MatchTimeoutException e) {
+            inputMatcher = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Merges an edit of the input into the range edited since the last search
+     * Offsets of the merged range are kept both in the text of the last search and in the current text.
+     */
+    private void recordInputEdit(int start, int end, int insertedLength) {
+        if (editedStart < 0) {
+            editedStart = start;
+            editedOldEnd = end;
+            editedNewEnd = start + insertedLength;
+            return;
+        }
+        int mergedEnd = Math.max(editedNewEnd, end);
+        editedOldEnd += mergedEnd - editedNewEnd;
+        editedNewEnd = mergedEnd + insertedLength - (end - start);
+        editedStart = Math.min(editedStart, start);
+    }
+
     private void analyzeText() {
         try {
             String text = getCurrentInputText();
@@ -660,6 +858,23 @@ public class AdvancedTextProcessor extends Application {
         return "";
     }
 
+    private void setHighlightedOutputVisible(boolean visible) {
+        highlightedOutputView.setVisible(visible);
+        highlightedOutputView.setManaged(visible);
+        mainOutputTextArea.setVisible(!visible);
+        mainOutputTextArea.setManaged(!visible);
+    }
+
+    /**
+     * Gets the output as text, with highlighted matches marked by the prefix and suffix
+     */
+    private String getOutputText() {
+        if (highlightedOutputView.isVisible()) {
+            return highlightedOutputView.getMarkedText(highlightPrefixField.getText(), highlightSuffixField.getText());
+        }
+        return mainOutputTextArea.getText();
+    }
+
     private int getCurrentFlags() {
         int flags = 0;
         if (multilineCheckBox.isSelected()) flags |= Pattern.MULTILINE;
@@ -680,6 +895,26 @@ public class AdvancedTextProcessor extends Application {
                 caseInsensitiveCheckBox.isSelected()
         );
 
+        // Check the pattern before it can reach a batch run
+        PatternAnalyzer.PatternAnalysis analysis = PatternAnalyzer.analyze(entry);
+        if (!analysis.isValid()) {
+            showError("Save Pattern", "The regex pattern is invalid: " + analysis.getErrorMessage());
+            return;
+        }
+        if (analysis.isDangerous()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING,
+                    "This pattern can backtrack catastrophically (" + analysis.getCostClass()
+                            + " worst case):\n" + String.join("\n", analysis.getWarnings())
+                            + "\n\nSave it anyway?",
+                    ButtonType.OK, ButtonType.CANCEL);
+            alert.setTitle("Save Pattern");
+            alert.setHeaderText("Potentially dangerous pattern");
+            if (alert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                statusLabel.setText("Pattern not saved");
+                return;
+            }
+        }
+
         if (patternManager.addPattern(entry)) {
             savedPatterns.add(entry.getName());
             statusLabel.setText("Pattern saved");
@@ -849,17 +1084,24 @@ public class AdvancedTextProcessor extends Application {
                 // Apply regex operations if needed
                 if (performRegexOps) {
                     try {
-                        // Apply operations in the same order as in processText()
-                        if (findMatches) {
-                            // For findMatches, we only collect the matches but don't modify the content
-                            List<String> matches = textProcessor.findMatches(
-                                    outputContent,
-                                    regexPattern,
-                                    flags
-                            );
+                        MatchBudget budget = new MatchBudget(BATCH_FILE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                        // Apply operations in the same order as in processText(), in one scan
+                        TextProcessor.ProcessResult processed = textProcessor.processText(
+                                content,
+                                regexPattern,
+                                flags,
+                                findMatches,
+                                highlightMatches ? highlightPrefix : null,
+                                highlightMatches ? highlightSuffix : null,
+                                replaceMatches ? replacement : null,
+                                budget
+                        );
+                        outputContent = processed.getOutput();
 
+                        if (findMatches) {
                             // Append matches to analysis results
-                            final List<String> finalMatches = matches;
+                            final List<String> finalMatches = processed.getMatches();
                             Platform.runLater(() -> {
                                 analysisResults.append("\n--- Matches in " + fileName + " ---\n");
                                 if (finalMatches.isEmpty()) {
@@ -872,30 +1114,16 @@ public class AdvancedTextProcessor extends Application {
                                 }
                             });
                         }
-
-                        if (highlightMatches) {
-                            outputContent = textProcessor.highlightMatches(
-                                    outputContent,
-                                    regexPattern,
-                                    highlightPrefix,
-                                    highlightSuffix,
-                                    flags
-                            );
-                        }
-
-                        if (replaceMatches) {
-                            outputContent = textProcessor.replaceAll(
-                                    outputContent,
-                                    regexPattern,
-                                    replacement,
-                                    flags
-                            );
-                        }
                     } catch (PatternSyntaxException e) {
                         Platform.runLater(() -> {
                             analysisResults.append("\nError in " + fileName + ": Invalid regex pattern: " + e.getMessage() + "\n");
                         });
                         continue;
+                    } catch (MatchTimeoutException e) {
+                        Platform.runLater(() -> {
+                            analysisResults.append("\nError in " + fileName + ": " + e.getMessage() + "\n");
+                        });
+                        continue;
                     }
                 }
 
@@ -0,0 +1,235 @@
+package com.ibra.advancedtextprocessor;
+
+import com.ibra.advancedtextprocessor.backend.MatchSpans;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view that renders match spans as styles over an unchanged text
+ * The text is shown as rows in a virtualized list: a row ends at a line feed or after ROW_LENGTH
+ * chars, and only the rows on screen get Text nodes, cut at the span boundaries within them. The
+ * text and spans are kept as they are, plus one offset per row. Spans of different patterns get
+ * different colors; where spans overlap, the part already covered by an earlier span is not
+ * highlighted again.
+ */
+public class HighlightedTextView extends StackPane {
+    private static final Color[] PATTERN_COLORS = {
+            Color.CRIMSON, Color.ROYALBLUE, Color.FORESTGREEN, Color.DARKORANGE, Color.DARKVIOLET, Color.TEAL
+    };
+    /** Longest row; longer lines are shown over several rows so one row never needs many nodes */
+    private static final int ROW_LENGTH = 1000;
+
+    private final ListView<Integer> rows = new ListView<>();
+    private CharSequence text = "";
+    private MatchSpans spans = new MatchSpans();
+    /** Start offset of every row, with the text length after the last */
+    private int[] rowStarts = {0, 0};
+    /** The highlighted parts as (start, end, pattern id) triples, without overlaps */
+    private int[] highlights = new int[0];
+
+    public HighlightedTextView() {
+        rows.setSelectionModel(null);
+        rows.setFocusTraversable(false);
+        rows.setCellFactory(list -> new RowCell());
+        getChildren().add(rows);
+    }
+
+    /**
+     * Shows a text with the given spans highlighted
+     *
+     * @param text The text to show
+     * @param spans The spans to highlight, ordered by start offset
+     */
+    public void show(CharSequence text, MatchSpans spans) {
+        this.text = text;
+        this.spans = spans;
+        this.rowStarts = findRowStarts(text);
+        this.highlights = clipSpans(spans);
+
+        int rowCount = rowStarts.length - 1;
+        rows.setItems(FXCollections.observableList(new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        }));
+        rows.scrollTo(0);
+    }
+
+    private static int[] findRowStarts(CharSequence text) {
+        int[] starts = new int[16];
+        int count = 0;
+        int rowStart = 0;
+        do {
+            if (count + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count++] = rowStart;
+            int limit = (int) Math.min(text.length(), (long) rowStart + ROW_LENGTH);
+            int next = limit;
+            for (int i = rowStart; i < limit; i++) {
+                if (text.charAt(i) == '\n') {
+                    next = i + 1;
+                    break;
+                }
+            }
+            rowStart = next;
+        } while (rowStart < text.length());
+        starts[count] = text.length();
+        return Arrays.copyOf(starts, count + 1);
+    }
+
+    /**
+     * Cuts off the parts of spans an earlier span already covers and drops the empty ones
+     */
+    private static int[] clipSpans(MatchSpans spans) {
+        int[] clipped = new int[3 * spans.size()];
+        int count = 0;
+        int position = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int start = Math.max(spans.getStart(i), position);
+            int end = spans.getEnd(i);
+            if (end <= start) {
+                // Empty, or already covered by an earlier span
+                continue;
+            }
+            clipped[count++] = start;
+            clipped[count++] = end;
+            clipped[count++] = spans.getPatternId(i);
+            position = end;
+        }
+        return Arrays.copyOf(clipped, count);
+    }
+
+    /**
+     * Builds the nodes of one row, cut at the highlight boundaries within it
+     */
+    private List<Node> buildRow(int row) {
+        int rowStart = rowStarts[row];
+        int rowEnd = rowStarts[row + 1];
+        // The line break itself is not shown
+        if (rowEnd > rowStart && text.charAt(rowEnd - 1) == '\n') {
+            rowEnd--;
+            if (rowEnd > rowStart && text.charAt(rowEnd - 1) == '\r') {
+                rowEnd--;
+            }
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        int position = rowStart;
+        for (int h = firstHighlightEndingAfter(rowStart); h < highlights.length && highlights[h] < rowEnd; h += 3) {
+            int start = Math.max(highlights[h], rowStart);
+            int end = Math.min(highlights[h + 1], rowEnd);
+            if (end <= start) {
+                continue;
+            }
+            if (start > position) {
+                nodes.add(new Text(text.subSequence(position, start).toString()));
+            }
+            Text match = new Text(text.subSequence(start, end).toString());
+            match.setFill(PATTERN_COLORS[Math.floorMod(highlights[h + 2], PATTERN_COLORS.length)]);
+            match.setUnderline(true);
+            nodes.add(match);
+            position = end;
+        }
+        if (position < rowEnd || nodes.isEmpty()) {
+            // An empty line still takes the height of one
+            nodes.add(new Text(text.subSequence(position, rowEnd).toString()));
+        }
+        return nodes;
+    }
+
+    /**
+     * Finds the first highlight that ends after an offset; highlights are ordered and do not overlap
+     */
+    private int firstHighlightEndingAfter(int offset) {
+        int low = 0;
+        int high = highlights.length / 3;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (highlights[3 * middle + 1] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return 3 * low;
+    }
+
+    /**
+     * Gets the shown text with every span surrounded by the given markers, as highlightMatches produces it
+     *
+     * @param prefix The marker to insert before each span
+     * @param suffix The marker to insert after each span
+     * @return The marked up text
+     */
+    public String getMarkedText(String prefix, String suffix) {
+        StringBuilder result = new StringBuilder(text.length() + spans.size() * (prefix.length() + suffix.length()));
+        int position = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int start = Math.max(spans.getStart(i), position);
+            int end = spans.getEnd(i);
+            if (end < start) {
+                continue;
+            }
+            result.append(text, position, start)
+                    .append(prefix)
+                    .append(text, start, end)
+                    .append(suffix);
+            position = end;
+        }
+        result.append(text, position, text.length());
+        return result.toString();
+    }
+
+    /**
+     * Removes the shown text
+     */
+    public void clear() {
+        show("", new MatchSpans());
+    }
+
+    /**
+     * Cell that renders one row; the list only keeps cells for the rows on screen
+     */
+    private class RowCell extends ListCell<Integer> {
+        private final TextFlow flow = new TextFlow();
+
+        RowCell() {
+            flow.setPadding(new Insets(0, 5, 0, 5));
+            // Wrap within the list instead of widening it
+            flow.prefWidthProperty().bind(rows.widthProperty().subtract(20));
+            setPrefWidth(0);
+            setText(null);
+        }
+
+        @Override
+        protected void updateItem(Integer row, boolean empty) {
+            super.updateItem(row, empty);
+            if (empty || row == null || row >= rowStarts.length - 1) {
+                flow.getChildren().clear();
+                setGraphic(null);
+            } else {
+                flow.getChildren().setAll(buildRow(row));
+                setGraphic(flow);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.ibra.advancedtextprocessor.backend;
+
+/**
+ * Search kernels over byte arrays, used to split encoded text into lines and find literals
+ * before anything is decoded
+ * getDefault returns a kernel that compares a whole vector of bytes per instruction when the
+ * jdk.incubator.vector module is available (start the JVM with --add-modules
+ * jdk.incubator.vector) and a plain loop otherwise. Both give the same results.
+ */
+public abstract class ByteScanner {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final ByteScanner SCALAR = new ScalarByteScanner();
+    private static final ByteScanner DEFAULT = loadDefault();
+
+    ByteScanner() {
+    }
+
+    /**
+     * Gets the fastest kernel the running JVM supports
+     */
+    public static ByteScanner getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the kernel that looks at one byte at a time
+     */
+    public static ByteScanner scalar() {
+        return SCALAR;
+    }
+
+    private static ByteScanner loadDefault() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            ByteScanner vector = new VectorByteScanner();
+            // Vectors narrower than 16 bytes do not pay for their setup
+            return vector.getVectorSize() >= 16 ? vector : SCALAR;
+        } catch (LinkageError | RuntimeException e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Gets the number of bytes compared at once, 1 for the scalar kernel
+     */
+    public abstract int getVectorSize();
+
+    /**
+     * Finds the first occurrence of a byte
+     *
+     * @param bytes The bytes to search
+     * @param from First index to look at
+     * @param to Index after the last one to look at
+     * @param value The byte to find
+     * @return The index of the byte, or -1 if it does not occur in the range
+     */
+    public abstract int indexOf(byte[] bytes, int from, int to, byte value);
+
+    /**
+     * Finds the first occurrence of either of two bytes, such as the line terminators \n and \r
+     *
+     * @return The index of the first byte equal to one of them, or -1 if neither occurs in the range
+     */
+    public abstract int indexOfAny(byte[] bytes, int from, int to, byte first, byte second);
+
+    /**
+     * Finds the first occurrence of a byte sequence that lies completely inside a range
+     *
+     * @param bytes The bytes to search
+     * @param from First index an occurrence may start at
+     * @param to Index after the last byte an occurrence may cover
+     * @param needle The bytes to find; must not be empty
+     * @return The start index of the occurrence, or -1 if there is none
+     */
+    public abstract int indexOf(byte[] bytes, int from, int to, byte[] needle);
+
+    /**
+     * Finds the first byte outside the ASCII range, 0x80 or above
+     *
+     * @return The index of the byte, or -1 if all bytes in the range are ASCII
+     */
+    public abstract int indexOfNonAscii(byte[] bytes, int from, int to);
+
+    /**
+     * Counts the occurrences of a byte
+     */
+    public abstract int count(byte[] bytes, int from, int to, byte value);
+
+    /**
+     * Counts the chars that UTF-8 encoded bytes decode to
+     * Every byte that does not continue a sequence starts a char, and sequences of four bytes
+     * decode to a surrogate pair. Malformed sequences are not checked for.
+     */
+    public abstract int countUtf8Chars(byte[] bytes, int from, int to);
+
+    /**
+     * Counts the non-overlapping occurrences of a byte sequence, as a left-to-right search finds them
+     */
+    public int count(byte[] bytes, int from, int to, byte[] needle) {
+        if (needle.length == 1) {
+            return count(bytes, from, to, needle[0]);
+        }
+        int count = 0;
+        int position = indexOf(bytes, from, to, needle);
+        while (position >= 0) {
+            count++;
+            position = indexOf(bytes, position + needle.length, to, needle);
+        }
+        return count;
+    }
+
+    /**
+     * Check whether a byte sequence occurs at an index; the caller ensures it fits into the array
+     */
+    static boolean startsWith(byte[] bytes, int index, byte[] needle) {
+        for (int i = 0; i < needle.length; i++) {
+            if (bytes[index + i] != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getVectorSize() + " bytes]";
+    }
+
+    /**
+     * Kernel that looks at one byte at a time; also finishes the tails of the vector kernel
+     */
+    static final class ScalarByteScanner extends ByteScanner {
+        @Override
+        public int getVectorSize() {
+            return 1;
+        }
+
+        @Override
+        public int indexOf(byte[] bytes, int from, int to, byte value) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOfAny(byte[] bytes, int from, int to, byte first, byte second) {
+            for (int i = from; i < to; i++) {
+                byte b = bytes[i];
+                if (b == first || b == second) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOf(byte[] bytes, int from, int to, byte[] needle) {
+            byte head = needle[0];
+            for (int i = from, last = to - needle.length; i <= last; i++) {
+                if (bytes[i] == head && startsWith(bytes, i, needle)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int indexOfNonAscii(byte[] bytes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] < 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int count(byte[] bytes, int from, int to, byte value) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == value) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public int countUtf8Chars(byte[] bytes, int from, int to) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                byte b = bytes[i];
+                // As signed bytes, continuation bytes 0x80-0xBF are the ones below 0xC0
+                if (b >= (byte) 0xC0) {
+                    count++;
+                }
+                // Lead bytes of four-byte sequences are 0xF0 and above
+                if (b >= (byte) 0xF0 && b < 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
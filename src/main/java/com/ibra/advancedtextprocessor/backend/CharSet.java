@@ -0,0 +1,194 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of UTF-16 chars stored as sorted, disjoint, inclusive ranges
+ * The supplementary flag records whether the set also matches a whole supplementary
+ * code point (a surrogate pair), as negated classes and the dot do in java.util.regex.
+ */
+final class CharSet {
+    static final CharSet EMPTY = new CharSet(new int[0], false);
+    static final CharSet ALL = new CharSet(new int[]{0, Character.MAX_VALUE}, true);
+
+    private final int[] ranges;
+    private final boolean supplementary;
+
+    private CharSet(int[] ranges, boolean supplementary) {
+        this.ranges = ranges;
+        this.supplementary = supplementary;
+    }
+
+    static CharSet of(char c) {
+        return new CharSet(new int[]{c, c}, false);
+    }
+
+    static CharSet range(char low, char high) {
+        return new CharSet(new int[]{low, high}, false);
+    }
+
+    /**
+     * Builds a set from a flat list of inclusive (low, high) pairs in any order
+     */
+    static CharSet ofRanges(int... pairs) {
+        return normalize(pairs.clone(), false);
+    }
+
+    boolean contains(char c) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (c < ranges[2 * mid]) {
+                high = mid - 1;
+            } else if (c > ranges[2 * mid + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return ranges.length == 0 && !supplementary;
+    }
+
+    boolean matchesSupplementary() {
+        return supplementary;
+    }
+
+    /**
+     * Gets the single char this set contains, or -1 if it contains zero or several chars
+     */
+    int singleChar() {
+        if (ranges.length == 2 && ranges[0] == ranges[1] && !supplementary) {
+            return ranges[0];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if this set is exactly one ASCII letter in both cases
+     */
+    boolean isAsciiCasePair() {
+        if (ranges.length != 4 || supplementary) {
+            return false;
+        }
+        int upper = ranges[0];
+        int lower = ranges[2];
+        return ranges[0] == ranges[1] && ranges[2] == ranges[3]
+                && upper >= 'A' && upper <= 'Z' && lower == upper + ('a' - 'A');
+    }
+
+    int rangeCount() {
+        return ranges.length / 2;
+    }
+
+    char rangeStart(int index) {
+        return (char) ranges[2 * index];
+    }
+
+    char rangeEnd(int index) {
+        return (char) ranges[2 * index + 1];
+    }
+
+    CharSet union(CharSet other) {
+        int[] merged = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, merged, ranges.length, other.ranges.length);
+        return normalize(merged, supplementary || other.supplementary);
+    }
+
+    CharSet complement() {
+        int[] result = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[size++] = next;
+                result[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result[size++] = next;
+            result[size++] = Character.MAX_VALUE;
+        }
+        return new CharSet(Arrays.copyOf(result, size), !supplementary);
+    }
+
+    boolean intersects(CharSet other) {
+        if (supplementary && other.supplementary) {
+            return true;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < ranges.length && j < other.ranges.length) {
+            if (ranges[i + 1] < other.ranges[j]) {
+                i += 2;
+            } else if (other.ranges[j + 1] < ranges[i]) {
+                j += 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the other case of every ASCII letter in the set, as Pattern.CASE_INSENSITIVE does
+     */
+    CharSet withAsciiCaseFolding() {
+        int[] extra = new int[104];
+        int size = 0;
+        for (char c = 'A'; c <= 'Z'; c++) {
+            char lower = (char) (c + ('a' - 'A'));
+            if (contains(c) || contains(lower)) {
+                extra[size++] = c;
+                extra[size++] = c;
+                extra[size++] = lower;
+                extra[size++] = lower;
+            }
+        }
+        if (size == 0) {
+            return this;
+        }
+        return union(new CharSet(Arrays.copyOf(extra, size), false));
+    }
+
+    private static CharSet normalize(int[] pairs, boolean supplementary) {
+        int count = pairs.length / 2;
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = ((long) pairs[2 * i] << 32) | pairs[2 * i + 1];
+        }
+        Arrays.sort(packed);
+
+        int[] result = new int[pairs.length];
+        int size = 0;
+        for (long range : packed) {
+            int low = (int) (range >>> 32);
+            int high = (int) range;
+            if (size > 0 && low <= result[size - 1] + 1) {
+                result[size - 1] = Math.max(result[size - 1], high);
+            } else {
+                result[size++] = low;
+                result[size++] = high;
+            }
+        }
+        return new CharSet(Arrays.copyOf(result, size), supplementary);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CharSet)) return false;
+        CharSet that = (CharSet) o;
+        return supplementary == that.supplementary && Arrays.equals(ranges, that.ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(ranges) + (supplementary ? 1 : 0);
+    }
+}
@@ -2,10 +2,25 @@ package com.ibra.advancedtextprocessor.backend;
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -14,23 +29,113 @@ import java.util.regex.PatternSyntaxException;
  * Class for handling file operations with advanced text processing capabilities
  */
 public class FileProcessor {
+    /** Bytes read at once when counting a literal in a file */
+    private static final int COUNT_BUFFER_SIZE = 64 * 1024;
+
+    /** Bytes, or chars for writers, of matching lines collected before they are written to a sink */
+    private static final int FILTER_BUFFER_SIZE = 1024 * 1024;
+
+    /** Most bytes of a file searched through one view when matches cannot span lines */
+    private static final long SCAN_RANGE_LENGTH = 64L * 1024 * 1024;
+
+    /** Seconds an idle grep thread is kept */
+    private static final long GREP_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final AtomicInteger GREP_THREAD_COUNT = new AtomicInteger();
+
+    // Guarded by the class
+    private static int grepParallelism;
+    private static ThreadPoolExecutor grepExecutor;
+    /** The grep grepFiles hands several files to, or null to grep them one after another */
+    private static volatile ParallelGrep parallelGrep;
+
+    static {
+        setGrepParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Sets how many files or file ranges grepFiles and filterFileByLinePattern scan at once
+     * Files longer than ParallelGrep.DEFAULT_RANGE_LENGTH bytes are split into ranges of whole lines.
+     *
+     * @param parallelism Most units scanned at once, at least 1; the number of processors by default
+     * @see #setGrepParallelism(int, long)
+     */
+    public static void setGrepParallelism(int parallelism) {
+        setGrepParallelism(parallelism, ParallelGrep.DEFAULT_RANGE_LENGTH);
+    }
+
+    /**
+     * Sets how many files or file ranges grepFiles and filterFileByLinePattern scan at once
+     * With more than one, several files, and files longer than the range length, are grepped by a
+     * ParallelGrep on a pool of that many daemon threads with a queue of the same size; results
+     * waiting for their turn to be written are held up to ParallelGrep.DEFAULT_MAX_PENDING_LENGTH
+     * chars. Files are only split in charsets LineReader can find line ends in. With one, files
+     * are scanned one after another on the calling thread. The output is the same either way.
+     *
+     * @param parallelism Most units scanned at once, at least 1; the number of processors by default
+     * @param rangeLength Bytes of a file above which it is split, and most bytes of each range
+     */
+    public static synchronized void setGrepParallelism(int parallelism, long rangeLength) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (rangeLength < 1 || rangeLength > MappedTextFile.MAX_VIEW_LENGTH) {
+            throw new IllegalArgumentException("Range length must be between 1 and " + MappedTextFile.MAX_VIEW_LENGTH);
+        }
+        if (grepExecutor != null) {
+            // Greps still running on the old pool scan their remaining files themselves
+            grepExecutor.shutdown();
+            grepExecutor = null;
+        }
+        grepParallelism = parallelism;
+        if (parallelism == 1) {
+            parallelGrep = null;
+            return;
+        }
+        grepExecutor = new ThreadPoolExecutor(parallelism, parallelism,
+                GREP_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(parallelism), task -> {
+                    Thread thread = new Thread(task, "grep-" + GREP_THREAD_COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        grepExecutor.allowCoreThreadTimeOut(true);
+        parallelGrep = new ParallelGrep(grepExecutor, parallelism, ParallelGrep.DEFAULT_MAX_PENDING_LENGTH, rangeLength);
+    }
+
+    /**
+     * Gets how many files or line ranges grepFiles and filterFileByLinePattern scan at the same time
+     *
+     * @return The parallelism, 1 if files are scanned one after another
+     */
+    public static synchronized int getGrepParallelism() {
+        return grepParallelism;
+    }
+
+    /**
+     * Gets the parallel grep for a file if it is long enough to be split into line ranges
+     *
+     * @return The grep, or null to scan the file on the calling thread
+     */
+    private static ParallelGrep parallelGrepFor(File file) {
+        ParallelGrep grep = parallelGrep;
+        if (grep == null || file.length() <= grep.getRangeLength() || !LineReader.supports(Charset.defaultCharset())) {
+            return null;
+        }
+        return grep;
+    }
 
     /**
      * Reads the entire content of a file as a string
+     * The text is decoded from a memory-mapped view of the file in the platform default charset
+     * and kept as it is, line endings included.
      *
      * @param file The file to read
      * @return The file content as a string
-     * @throws IOException If an I/O error occurs
+     * @throws IOException If an I/O error occurs or the file is too large for one string
      */
     public static String readFile(File file) throws IOException {
-        StringBuilder content = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
-            }
+        try (MappedTextFile text = MappedTextFile.open(file)) {
+            return text.getText().toString();
         }
-        return content.toString();
     }
 
     /**
@@ -48,6 +153,7 @@ public class FileProcessor {
 
     /**
      * Processes a file line by line, applying a regex filter
+     * Files longer than the grep range length are split and filtered in parallel, see setGrepParallelism.
      *
      * @param file The file to process
      * @param patternStr The regex pattern to filter lines
@@ -58,19 +164,151 @@ public class FileProcessor {
      */
     public static String filterFileByLinePattern(File file, String patternStr, int flags)
             throws IOException, PatternSyntaxException {
-        Pattern pattern = Pattern.compile(patternStr, flags);
+        return filterFileByLinePattern(file, patternStr, flags, null);
+    }
+
+    /**
+     * Processes a file line by line, applying a regex filter within a time budget
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return A string containing only the lines that match the pattern
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static String filterFileByLinePattern(File file, String patternStr, int flags, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        ParallelGrep grep = parallelGrepFor(file);
+        if (grep != null) {
+            StringWriter out = new StringWriter();
+            grep.filter(file, patternStr, flags, out, budget);
+            return out.toString();
+        }
         StringBuilder filteredContent = new StringBuilder();
+        filterLines(file, patternStr, flags, budget, (reader, line) -> {
+            filteredContent.append(line).append("\n");
+            return line.length() + 1;
+        });
+        return filteredContent.toString();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (pattern.matcher(line).find()) {
-                    filteredContent.append(line).append("\n");
-                }
+    /**
+     * Filters a file line by line, writing the matching lines to a writer as they are found
+     * Memory use does not depend on the size of the input or the output. Each line is written
+     * with a line feed after it, as in the string returned by the other overloads. The writer is
+     * flushed but not closed; lines found before an exception are written.
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @param out The writer to write the matching lines to
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The line and match counters; the written length is in chars
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static LineFilterResult filterFileByLinePattern(File file, String patternStr, int flags, Writer out,
+                                                           MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        ParallelGrep grep = parallelGrepFor(file);
+        if (grep != null) {
+            return grep.filter(file, patternStr, flags, out, budget);
+        }
+        BufferedWriter writer = new BufferedWriter(out, FILTER_BUFFER_SIZE);
+        try {
+            return filterLines(file, patternStr, flags, budget, (reader, line) -> {
+                writer.write(line);
+                writer.write('\n');
+                return line.length() + 1;
+            });
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Filters a file line by line, writing the matching lines to a channel as they are found
+     * The bytes of the matching lines are copied from the input without being encoded again,
+     * through one buffer that is reused for the whole file, and each is followed by a line
+     * feed. The channel is not closed; lines found before an exception are written.
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @param out The channel to write the matching lines to
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The line and match counters; the written length is in bytes
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static LineFilterResult filterFileByLinePattern(File file, String patternStr, int flags,
+                                                           WritableByteChannel out, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        ParallelGrep grep = parallelGrepFor(file);
+        if (grep != null) {
+            return grep.filter(file, patternStr, flags, out, budget);
+        }
+        ChannelLineSink sink = new ChannelLineSink(out, Charset.defaultCharset());
+        try {
+            return filterLines(file, patternStr, flags, budget, sink);
+        } finally {
+            sink.finish();
+        }
+    }
+
+    /**
+     * Filters a file line by line, streaming the matching lines to another file
+     * The output is written to a temporary file first and only replaces the output file on success.
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @param outputFile The file to write the matching lines to
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The line and match counters; the written length is in bytes
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static LineFilterResult filterFileByLinePattern(File file, String patternStr, int flags,
+                                                           File outputFile, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        Path target = outputFile.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), outputFile.getName(), ".tmp");
+        try {
+            LineFilterResult result;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                result = filterFileByLinePattern(file, patternStr, flags, out, budget);
             }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            return result;
+        } finally {
+            Files.deleteIfExists(temp);
         }
+    }
 
-        return filteredContent.toString();
+    /**
+     * Reads a file line by line and hands every line matching a pattern to a sink
+     */
+    private static LineFilterResult filterLines(File file, String patternStr, int flags, MatchBudget budget,
+                                                LineSink sink)
+            throws IOException, PatternSyntaxException {
+        Pattern pattern = PatternCache.getShared().compile(patternStr, flags);
+        Charset charset = Charset.defaultCharset();
+        byte[] needle = requiredLiteral(pattern, charset);
+        boolean matchBlocks = matchesLineBlocks(pattern, flags);
+        long[] progress = new long[2];
+
+        try (LineReader reader = new LineReader(file, charset)) {
+            long writtenLength = grepLines(reader, pattern, null, needle, matchBlocks, budget, progress, sink);
+            return new LineFilterResult(reader.getLineNumber(), progress[0], reader.getBytesRead(), writtenLength);
+        }
     }
 
     /**
@@ -86,8 +324,33 @@ public class FileProcessor {
      */
     public static String replaceInFile(File file, String patternStr, String replacement, int flags)
             throws IOException, PatternSyntaxException {
-        String content = readFile(file);
-        return TextProcessor.replaceAll(content, patternStr, replacement, flags);
+        try (MappedTextFile text = MappedTextFile.open(file)) {
+            return TextProcessor.replaceAll(text.getText(), patternStr, replacement, flags);
+        }
+    }
+
+    /**
+     * Processes a file by replacing text that matches a pattern within a time budget
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to match
+     * @param replacement The replacement string
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The content with replacements
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of replacements so far
+     */
+    public static String replaceInFile(File file, String patternStr, String replacement, int flags,
+                                       MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        if (budget == null) {
+            return replaceInFile(file, patternStr, replacement, flags);
+        }
+        try (MappedTextFile text = MappedTextFile.open(file)) {
+            return TextProcessor.replaceAll(text.getText(), patternStr, replacement, flags, budget);
+        }
     }
 
     /**
@@ -105,6 +368,143 @@ public class FileProcessor {
     public static int batchReplaceInFiles(List<File> inputFiles, File outputDir,
                                           String patternStr, String replacement, int flags)
             throws IOException, PatternSyntaxException {
+        return batchReplaceInFiles(inputFiles, outputDir, patternStr, replacement, flags, null);
+    }
+
+    /**
+     * Processes multiple files with the same pattern within one time budget shared by all files
+     * Files finished before the budget runs out are written; the others are left untouched.
+     *
+     * @param inputFiles List of input files
+     * @param outputDir Output directory
+     * @param patternStr The regex pattern to match
+     * @param replacement The replacement string
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return Number of files processed
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of files written so far
+     */
+    public static int batchReplaceInFiles(List<File> inputFiles, File outputDir,
+                                          String patternStr, String replacement, int flags,
+                                          MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        StreamingReplacer replacer = new StreamingReplacer(patternStr, flags, replacement);
+        return batchProcessFiles(inputFiles, outputDir, budget,
+                (inputFile, outputFile) -> replaceInFile(inputFile, outputFile, replacer, budget));
+    }
+
+    /**
+     * Replaces text that matches a pattern while streaming a file to another file
+     * Only a sliding window of the input is held in memory, so files larger than the heap can be
+     * processed. Unlike replaceInFile, the line endings of the input are kept as they are.
+     * The output is written to a temporary file first and only replaces the output file on success.
+     *
+     * @param inputFile The file to process
+     * @param outputFile The file to write the content with replacements to
+     * @param patternStr The regex pattern to match
+     * @param replacement The replacement string
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of replacements made
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of replacements so far
+     */
+    public static long replaceInFile(File inputFile, File outputFile, String patternStr, String replacement,
+                                     int flags, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        return replaceInFile(inputFile, outputFile, new StreamingReplacer(patternStr, flags, replacement), budget);
+    }
+
+    private static long replaceInFile(File inputFile, File outputFile, StreamingReplacer replacer,
+                                      MatchBudget budget)
+            throws IOException {
+        Path target = outputFile.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), outputFile.getName(), ".tmp");
+        try {
+            long count;
+            try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                count = replacer.replace(in, out, Charset.defaultCharset(), budget);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Processes a file by applying all rules of a rule set in one pass
+     *
+     * @param file The file to process
+     * @param rules The replacement rules, in priority order
+     * @return The content with replacements
+     * @throws IOException If an I/O error occurs
+     */
+    public static String replaceInFile(File file, ReplacementRuleSet rules) throws IOException {
+        return replaceInFile(file, rules, null);
+    }
+
+    /**
+     * Processes a file by applying all rules of a rule set in one pass within a time budget
+     *
+     * @param file The file to process
+     * @param rules The replacement rules, in priority order
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The content with replacements
+     * @throws IOException If an I/O error occurs
+     * @throws MatchTimeoutException If the budget runs out; carries the number of replacements so far
+     */
+    public static String replaceInFile(File file, ReplacementRuleSet rules, MatchBudget budget)
+            throws IOException {
+        try (MappedTextFile text = MappedTextFile.open(file)) {
+            return rules.apply(text.getText(), budget);
+        }
+    }
+
+    /**
+     * Processes multiple files with a rule set and writes results to the output directory
+     *
+     * @param inputFiles List of input files
+     * @param outputDir Output directory
+     * @param rules The replacement rules, in priority order
+     * @return Number of files processed
+     * @throws IOException If an I/O error occurs
+     */
+    public static int batchReplaceInFiles(List<File> inputFiles, File outputDir, ReplacementRuleSet rules)
+            throws IOException {
+        return batchReplaceInFiles(inputFiles, outputDir, rules, null);
+    }
+
+    /**
+     * Processes multiple files with a rule set within one time budget shared by all files
+     * Files finished before the budget runs out are written; the others are left untouched.
+     *
+     * @param inputFiles List of input files
+     * @param outputDir Output directory
+     * @param rules The replacement rules, in priority order
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return Number of files processed
+     * @throws IOException If an I/O error occurs
+     * @throws MatchTimeoutException If the budget runs out; carries the number of files written so far
+     */
+    public static int batchReplaceInFiles(List<File> inputFiles, File outputDir, ReplacementRuleSet rules,
+                                          MatchBudget budget)
+            throws IOException {
+        return batchProcessFiles(inputFiles, outputDir, budget,
+                (inputFile, outputFile) -> writeFile(outputFile, replaceInFile(inputFile, rules, budget)));
+    }
+
+    /**
+     * Transforms every input file in parallel into a file of the same name in the output directory
+     */
+    private static int batchProcessFiles(List<File> inputFiles, File outputDir, MatchBudget budget,
+                                         FileTransform transform)
+            throws IOException {
 
         if (!outputDir.exists()) {
             outputDir.mkdirs();
@@ -115,20 +515,28 @@ public class FileProcessor {
         }
 
         AtomicInteger processedCount = new AtomicInteger(0);
+        AtomicLong processedLength = new AtomicLong(0);
 
         // Process files in parallel
         inputFiles.parallelStream().forEach(inputFile -> {
+            if (budget != null && budget.isExhausted()) {
+                return;
+            }
             try {
-                String processedContent = replaceInFile(inputFile, patternStr, replacement, flags);
-                File outputFile = new File(outputDir, inputFile.getName());
-                writeFile(outputFile, processedContent);
+                transform.apply(inputFile, new File(outputDir, inputFile.getName()));
                 processedCount.incrementAndGet();
+                processedLength.addAndGet(inputFile.length());
+            } catch (MatchTimeoutException e) {
+                // Reported once for the whole batch below
             } catch (IOException | PatternSyntaxException e) {
                 // Log error but continue processing other files
                 System.err.println("Error processing file " + inputFile.getName() + ": " + e.getMessage());
             }
         });
 
+        if (budget != null && budget.isExhausted() && processedCount.get() < inputFiles.size()) {
+            throw budget.exhausted(processedCount.get(), processedLength.get());
+        }
         return processedCount.get();
     }
 
@@ -144,15 +552,132 @@ public class FileProcessor {
      */
     public static int countOccurrencesInFile(File file, String patternStr, int flags)
             throws IOException, PatternSyntaxException {
-        String content = readFile(file);
-        Pattern pattern = Pattern.compile(patternStr, flags);
-        java.util.regex.Matcher matcher = pattern.matcher(content);
+        return countOccurrencesInFile(file, patternStr, flags, null);
+    }
 
-        int count = 0;
-        while (matcher.find()) {
-            count++;
+    /**
+     * Counts occurrences of a pattern in a file within a time budget
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to count
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of occurrences
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of occurrences so far
+     */
+    public static int countOccurrencesInFile(File file, String patternStr, int flags, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        Pattern pattern = PatternCache.getShared().compile(patternStr, flags);
+        Charset charset = Charset.defaultCharset();
+        byte[] literal = LineReader.encodeLiteral(LiteralPrefilter.exactLiteral(patternStr, flags), charset);
+        if (literal != null) {
+            return (int) Math.min(countLiteral(file, literal, budget), Integer.MAX_VALUE);
         }
+        try (MappedTextFile text = MappedTextFile.open(file, charset)) {
+            if (text.size() == 0) {
+                return 0;
+            }
+            return (int) countMatches(text, pattern, MatchReach.of(patternStr, flags), Integer.MAX_VALUE,
+                    budget, 0, 0);
+        }
+    }
+
+    /**
+     * Counts the occurrences of an encoded literal in the bytes of a file without decoding them
+     *
+     * @throws MatchTimeoutException If the budget runs out; carries the number of occurrences
+     *         so far and the number of bytes searched
+     */
+    private static long countLiteral(File file, byte[] literal, MatchBudget budget) throws IOException {
+        ByteScanner scanner = ByteScanner.getDefault();
+        byte[] buffer = new byte[Math.max(COUNT_BUFFER_SIZE, 2 * literal.length)];
+        long count = 0;
+        long searchedLength = 0;
+        int limit = 0;
 
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer, limit, buffer.length - limit)) >= 0) {
+                if (budget != null) {
+                    try {
+                        budget.check();
+                    } catch (MatchTimeoutException e) {
+                        throw e.withProgress(count, searchedLength);
+                    }
+                }
+                limit += read;
+                int from = 0;
+                int position = scanner.indexOf(buffer, from, limit, literal);
+                while (position >= 0) {
+                    count++;
+                    from = position + literal.length;
+                    position = scanner.indexOf(buffer, from, limit, literal);
+                }
+                // Keep the last bytes, which may start an occurrence that ends in the next read
+                int keep = Math.max(from, limit - literal.length + 1);
+                System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+                searchedLength += keep;
+                limit -= keep;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the matches of a pattern in a mapped file, up to a limit
+     * When no match of the pattern can cross a line feed, the file is searched in ranges of
+     * whole lines, so neither its size nor the memory needed to decode it is bounded by one
+     * view. Other patterns need the whole file in one view.
+     *
+     * @param file The mapped file
+     * @param pattern The compiled pattern
+     * @param reach The analysis of the pattern
+     * @param limit The most matches to count
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @param completedCount Count reported before this file when the budget runs out
+     * @param processedLength Length processed before this file when the budget runs out
+     * @return The number of matches, at most the limit
+     * @throws IOException If the file cannot be mapped or the pattern needs a view larger than
+     *         MappedTextFile.MAX_VIEW_LENGTH
+     * @throws MatchTimeoutException If the budget runs out; carries the count so far and the
+     *         length processed, where this file adds the bytes before the range being searched
+     */
+    private static long countMatches(MappedTextFile file, Pattern pattern, MatchReach reach, long limit,
+                                     MatchBudget budget, long completedCount, long processedLength)
+            throws IOException {
+        long size = file.size();
+        long[] bounds = reach.lineBounded && !reach.usesLastMatchEnd
+                ? file.splitAtLines(SCAN_RANGE_LENGTH)
+                : new long[] {0, size};
+        long count = 0;
+        for (int i = 0; i + 1 < bounds.length && count < limit; i++) {
+            long start = bounds[i];
+            long end = bounds[i + 1];
+            // The line feed before the range and a few bytes after it are context for
+            // anchors and word boundaries; a match cannot start in either
+            long viewStart = Math.max(0, start - 1);
+            long viewEnd = Math.min(size, end + MatchReach.ASSERTION_LOOKAHEAD);
+            CharSequence text = file.getText(viewStart, viewEnd);
+            int from = (int) (start - viewStart);
+            // A range other than the last ends after a line feed, which no match contains,
+            // so the search stops at that line feed and empty matches after it are left to
+            // the next range
+            int to = end == size ? text.length() : text.length() - file.getText(end, viewEnd).length() - 1;
+
+            try {
+                if (budget != null) {
+                    budget.check();
+                }
+                MatchScanner scanner = MatchScanner.of(pattern, InterruptibleCharSequence.wrap(text, budget), from, to);
+                while (count < limit && scanner.find()) {
+                    count++;
+                }
+            } catch (MatchTimeoutException e) {
+                throw e.withProgress(completedCount + count, processedLength + start);
+            }
+        }
         return count;
     }
 
@@ -168,29 +693,188 @@ public class FileProcessor {
      */
     public static String grepFiles(List<File> inputFiles, String patternStr, int flags)
             throws IOException, PatternSyntaxException {
-        Pattern pattern = Pattern.compile(patternStr, flags);
+        return grepFiles(inputFiles, patternStr, flags, null);
+    }
+
+    /**
+     * Extracts all lines containing a pattern from multiple files within one time budget
+     *
+     * @param inputFiles List of input files
+     * @param patternStr The regex pattern to match
+     * @param flags Regex flags
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return String containing all matching lines from all files
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static String grepFiles(List<File> inputFiles, String patternStr, int flags, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        return grepFiles(inputFiles, patternStr, flags, -1, budget);
+    }
+
+    /**
+     * Extracts all lines containing a pattern from multiple files, optionally allowing typos
+     * With a maximum edit distance of 0 or more the pattern is taken as literal text, and a line
+     * matches if some part of it can be turned into the pattern with that many inserted, deleted
+     * or substituted chars. Several files, and large files, are grepped in parallel, see setGrepParallelism.
+     *
+     * @param inputFiles List of input files
+     * @param patternStr The regex pattern, or the literal text of at most 64 chars for a fuzzy search
+     * @param flags Regex flags; a fuzzy search only uses Pattern.CASE_INSENSITIVE
+     * @param maxEditDistance The maximum number of edits for a fuzzy search, or -1 for a regex search
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return String containing all matching lines from all files
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public static String grepFiles(List<File> inputFiles, String patternStr, int flags, int maxEditDistance,
+                                   MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        ParallelGrep grep = inputFiles.size() == 1 ? parallelGrepFor(inputFiles.get(0)) : parallelGrep;
+        if (grep != null && !inputFiles.isEmpty()) {
+            StringWriter out = new StringWriter();
+            grep.grep(inputFiles, patternStr, flags, maxEditDistance, out, budget);
+            return out.toString();
+        }
+
+        Pattern pattern = null;
+        FuzzyMatcher fuzzyMatcher = null;
+        if (maxEditDistance < 0) {
+            pattern = PatternCache.getShared().compile(patternStr, flags);
+        } else {
+            fuzzyMatcher = new FuzzyMatcher(patternStr, maxEditDistance, (flags & Pattern.CASE_INSENSITIVE) != 0);
+        }
         StringBuilder result = new StringBuilder();
+        long[] progress = new long[2];
+
+        Charset charset = Charset.defaultCharset();
+        byte[] needle = pattern != null ? requiredLiteral(pattern, charset) : null;
+        boolean matchBlocks = matchesLineBlocks(pattern, flags);
 
         for (File file : inputFiles) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                int lineNumber = 0;
-
-                while ((line = reader.readLine()) != null) {
-                    lineNumber++;
-                    if (pattern.matcher(line).find()) {
-                        result.append(file.getName())
-                                .append(":").append(lineNumber)
-                                .append(": ").append(line)
-                                .append("\n");
-                    }
-                }
+            try (LineReader reader = new LineReader(file, charset)) {
+                grepLines(reader, pattern, fuzzyMatcher, needle, matchBlocks, budget, progress, (lines, line) -> {
+                    appendGrepLine(result, file, lines.getLineNumber(), line);
+                    return 0;
+                });
             }
         }
 
         return result.toString();
     }
 
+    /**
+     * Hands every line a reader reads that matches a regex or fuzzy pattern to a sink
+     *
+     * @param pattern The compiled pattern, or null for a fuzzy search
+     * @param fuzzyMatcher The fuzzy matcher, or null for a regex search
+     * @param needle The encoded literal every matching line contains, or null
+     * @param matchBlocks Whether to skip lines by matching blocks of them, as matchesLineBlocks allows
+     * @param progress The matching lines and the chars processed so far; both are advanced
+     * @return The total amount the sink wrote
+     * @throws MatchTimeoutException If the budget runs out, with the progress so far
+     */
+    static long grepLines(LineReader reader, Pattern pattern, FuzzyMatcher fuzzyMatcher, byte[] needle,
+                          boolean matchBlocks, MatchBudget budget, long[] progress, LineSink sink)
+            throws IOException {
+        long writtenLength = 0;
+        while (true) {
+            // Searching the bytes for a literal is cheaper than decoding them to match a block
+            if (needle != null) {
+                progress[1] += reader.skipLinesWithout(needle);
+            } else if (matchBlocks) {
+                try {
+                    progress[1] += reader.skipLinesWithoutMatch(pattern, budget);
+                } catch (MatchTimeoutException e) {
+                    throw e.withProgress(progress[0], progress[1]);
+                }
+            }
+            if (!reader.nextLine()) {
+                break;
+            }
+            String line = reader.getLine();
+            boolean matches = fuzzyMatcher != null
+                    ? containsMatch(fuzzyMatcher, line, budget, progress[0], progress[1])
+                    : containsMatch(pattern, line, budget, progress[0], progress[1]);
+            if (matches) {
+                writtenLength += sink.write(reader, line);
+                progress[0]++;
+            }
+            progress[1] += line.length() + 1;
+        }
+        return writtenLength;
+    }
+
+    /**
+     * Check whether the lines of a file can be searched for a pattern a block of lines at a time
+     * Only the lines a match in the block falls in are then decoded and matched on their own.
+     */
+    static boolean matchesLineBlocks(Pattern pattern, int flags) {
+        // The compile flags, not pattern.flags(), which also holds top-level inline flags like a(?-i)
+        return pattern != null && TextProcessor.isLineBlockMatchingEnabled()
+                && MatchReach.of(pattern.pattern(), flags).lineLocal;
+    }
+
+    /**
+     * Appends a matching line the way grepFiles reports it: file name, line number and line
+     */
+    static void appendGrepLine(Appendable out, File file, long lineNumber, CharSequence line) throws IOException {
+        out.append(file.getName())
+                .append(':').append(Long.toString(lineNumber))
+                .append(": ").append(line)
+                .append('\n');
+    }
+
+    /**
+     * Gets the encoded literal every match of a pattern contains, for skipping lines without it
+     *
+     * @return The literal, or null if the pattern has none that can be searched for in the bytes
+     */
+    static byte[] requiredLiteral(Pattern pattern, Charset charset) {
+        if (!TextProcessor.isLiteralPrefilterEnabled()) {
+            return null;
+        }
+        LiteralPrefilter prefilter = PatternCache.getShared().prefilterFor(pattern);
+        if (prefilter == null || prefilter.isFoldCase()) {
+            return null;
+        }
+        return LineReader.encodeLiteral(prefilter.getNeedle(), charset);
+    }
+
+    /**
+     * Check whether a pattern occurs in a line or text, checking the budget first if there is one
+     *
+     * @throws MatchTimeoutException If the budget runs out, with the given progress
+     */
+    private static boolean containsMatch(Pattern pattern, String text, MatchBudget budget,
+                                         long completedCount, long processedLength) {
+        if (budget == null) {
+            return MatchScanner.of(pattern, text).find();
+        }
+        try {
+            budget.check();
+            return MatchScanner.of(pattern, InterruptibleCharSequence.wrap(text, budget)).find();
+        } catch (MatchTimeoutException e) {
+            throw e.withProgress(completedCount, processedLength);
+        }
+    }
+
+    /**
+     * Check whether an approximate match occurs in a line, within the budget if there is one
+     *
+     * @throws MatchTimeoutException If the budget runs out, with the given progress
+     */
+    private static boolean containsMatch(FuzzyMatcher matcher, String text, MatchBudget budget,
+                                         long completedCount, long processedLength) {
+        try {
+            return matcher.contains(text, budget);
+        } catch (MatchTimeoutException e) {
+            throw e.withProgress(completedCount, processedLength);
+        }
+    }
+
     /**
      * Finds files in a directory that contain text matching a pattern
      *
@@ -205,17 +889,45 @@ public class FileProcessor {
     public static List<File> findFilesContainingPattern(File directory, String patternStr,
                                                         int flags, boolean recursive)
             throws IOException, PatternSyntaxException {
+        return findFilesContainingPattern(directory, patternStr, flags, recursive, null);
+    }
+
+    /**
+     * Finds files in a directory that contain text matching a pattern within one time budget
+     *
+     * @param directory The directory to search in
+     * @param patternStr The regex pattern to match
+     * @param flags Regex flags
+     * @param recursive Whether to search recursively in subdirectories
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return List of files containing matches
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching files found so far
+     */
+    public static List<File> findFilesContainingPattern(File directory, String patternStr,
+                                                        int flags, boolean recursive, MatchBudget budget)
+            throws IOException, PatternSyntaxException {
+        List<File> matchingFiles = new ArrayList<>();
+        collectFilesContainingPattern(directory, patternStr, flags, recursive, budget, matchingFiles, new long[1]);
+        return matchingFiles;
+    }
+
+    private static void collectFilesContainingPattern(File directory, String patternStr, int flags,
+                                                      boolean recursive, MatchBudget budget,
+                                                      List<File> matchingFiles, long[] processedLength)
+            throws IOException, PatternSyntaxException {
 
         if (!directory.isDirectory()) {
             throw new IOException("Not a directory: " + directory.getPath());
         }
 
-        Pattern pattern = Pattern.compile(patternStr, flags);
-        List<File> matchingFiles = new ArrayList<>();
+        Pattern pattern = PatternCache.getShared().compile(patternStr, flags);
+        MatchReach reach = MatchReach.of(patternStr, flags);
 
         File[] files = directory.listFiles();
         if (files == null) {
-            return matchingFiles;
+            return;
         }
 
         for (File file : files) {
@@ -223,9 +935,12 @@ public class FileProcessor {
                 try {
                     // Only check text files
                     if (isTextFile(file)) {
-                        String content = readFile(file);
-                        if (pattern.matcher(content).find()) {
-                            matchingFiles.add(file);
+                        try (MappedTextFile text = MappedTextFile.open(file)) {
+                            if (countMatches(text, pattern, reach, 1, budget,
+                                    matchingFiles.size(), processedLength[0]) > 0) {
+                                matchingFiles.add(file);
+                            }
+                            processedLength[0] += text.size();
                         }
                     }
                 } catch (IOException e) {
@@ -233,11 +948,9 @@ public class FileProcessor {
                     System.err.println("Error reading file " + file.getName() + ": " + e.getMessage());
                 }
             } else if (recursive && file.isDirectory()) {
-                matchingFiles.addAll(findFilesContainingPattern(file, patternStr, flags, true));
+                collectFilesContainingPattern(file, patternStr, flags, true, budget, matchingFiles, processedLength);
             }
         }
-
-        return matchingFiles;
     }
 
     /**
@@ -287,4 +1000,116 @@ public class FileProcessor {
         // If more than 10% of bytes are binary, consider it a binary file
         return binaryByteCount > (bytesToCheck * 0.1);
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the new content of one file of a batch to its output file
+     */
+    private interface FileTransform {
+        void apply(File inputFile, File outputFile) throws IOException;
+    }
+
+    /**
+     * Writes the lines a line filter or grep keeps
+     */
+    interface LineSink {
+        /**
+         * Writes one matching line
+         *
+         * @param reader The reader, positioned on the line
+         * @param line The decoded line
+         * @return The amount written
+         */
+        long write(LineReader reader, String line) throws IOException;
+    }
+
+    /**
+     * Collects matching lines in one reusable buffer and writes it to a channel whenever it is full
+     * Lines are copied as the bytes they were read as. Charsets the bytes of a line cannot be
+     * told apart in are encoded again, by one encoder for the whole output.
+     */
+    static final class ChannelLineSink implements LineSink {
+        private final WritableByteChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(FILTER_BUFFER_SIZE);
+        private final CharsetEncoder encoder;
+
+        ChannelLineSink(WritableByteChannel out, Charset charset) {
+            this.out = out;
+            this.encoder = LineReader.supports(charset)
+                    ? null
+                    : charset.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public long write(LineReader reader, String line) throws IOException {
+            if (encoder != null) {
+                return encode(CharBuffer.wrap(line + "\n"), false);
+            }
+            ByteBuffer bytes = reader.getLineBytes();
+            int length = bytes.remaining() + 1;
+            if (buffer.remaining() < length) {
+                drain();
+                if (buffer.remaining() < length) {
+                    // A line longer than the buffer is written straight from the reader
+                    writeFully(bytes);
+                }
+            }
+            buffer.put(bytes).put((byte) '\n');
+            return length;
+        }
+
+        /**
+         * Writes bytes collected elsewhere, such as lines copied out of a reader earlier
+         */
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes, offset, length);
+            if (buffer.remaining() < length) {
+                drain();
+                if (buffer.remaining() < length) {
+                    writeFully(wrapped);
+                    return;
+                }
+            }
+            buffer.put(wrapped);
+        }
+
+        private long encode(CharBuffer chars, boolean endOfInput) throws IOException {
+            long written = 0;
+            while (true) {
+                int start = buffer.position();
+                CoderResult result = encoder.encode(chars, buffer, endOfInput);
+                written += buffer.position() - start;
+                if (!result.isOverflow()) {
+                    return written;
+                }
+                drain();
+            }
+        }
+
+        /**
+         * Writes out what is left in the buffer
+         */
+        void finish() throws IOException {
+            if (encoder != null) {
+                encode(CharBuffer.allocate(0), true);
+                while (encoder.flush(buffer).isOverflow()) {
+                    drain();
+                }
+            }
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
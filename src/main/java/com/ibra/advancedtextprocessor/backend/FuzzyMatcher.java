@@ -0,0 +1,473 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate search for a literal pattern of up to 64 chars, allowing a number of edits
+ * An edit inserts, deletes or substitutes one char. The search uses Myers' bit-parallel
+ * algorithm: the edit distances of all pattern prefixes against the text are kept as bit
+ * vectors in two longs, so each text char costs a table lookup and a handful of word
+ * operations. Where the distance at some end position drops to the limit, the start of the
+ * match is found by running the algorithm backwards over the reversed pattern.
+ *
+ * A match with at most k edits contains one of k + 1 disjoint pieces of the pattern unchanged.
+ * When those pieces are long enough, all of them are searched in one Shift-And pass: a single
+ * long holds which prefixes of which piece end at the current char, updated with the same char
+ * masks as the main scan, so case folding is the same. Only the ranges around the occurrences are
+ * then scanned; everywhere else the distance is above the limit, so the result is the same as that
+ * of a scan of the whole text. TextProcessor.setLiteralPrefilterEnabled switches the piece search off.
+ *
+ * Matches do not overlap. A match ends where the distance falls to its lowest value before it
+ * rises again, at the last of several equally good ends unless a separate match can end at a
+ * later one; it starts where that distance is reached with the longest match. Instances are
+ * immutable and thread-safe.
+ */
+public class FuzzyMatcher {
+    /** Maximum pattern length; the bit vectors of one column fit in a long */
+    public static final int MAX_PATTERN_LENGTH = 64;
+
+    private static final long NO_MATCH = -1;
+    /** Chars copied out of the text at once; the budget is checked once per block */
+    private static final int BLOCK_SIZE = 8192;
+    /** Shortest piece worth searching for; shorter ones occur too often to leave much text unscanned */
+    private static final int MIN_PIECE_LENGTH = 3;
+
+    private final String pattern;
+    private final int maxDistance;
+    private final boolean ignoreCase;
+    private final CharMasks forward;
+    private final CharMasks reverse;
+    private final int lastRow;
+    /** Bits of the rows where a piece starts and where one ends, or zero without pieces */
+    private final long pieceStarts;
+    private final long pieceEnds;
+
+    /**
+     * Creates a matcher for a pattern
+     *
+     * @param pattern The literal text to search for, 1 to 64 chars long
+     * @param maxDistance The maximum number of edits, less than the pattern length
+     * @param ignoreCase Whether chars match their upper and lower case forms
+     */
+    public FuzzyMatcher(String pattern, int maxDistance, boolean ignoreCase) {
+        if (pattern == null || pattern.isEmpty() || pattern.length() > MAX_PATTERN_LENGTH) {
+            throw new IllegalArgumentException("Pattern must be 1 to " + MAX_PATTERN_LENGTH + " chars long");
+        }
+        if (maxDistance < 0 || maxDistance >= pattern.length()) {
+            throw new IllegalArgumentException("Maximum distance must be at least 0 and less than the pattern length");
+        }
+        this.pattern = pattern;
+        this.maxDistance = maxDistance;
+        this.ignoreCase = ignoreCase;
+        this.forward = new CharMasks(pattern, ignoreCase);
+        this.reverse = new CharMasks(new StringBuilder(pattern).reverse(), ignoreCase);
+        this.lastRow = pattern.length() - 1;
+
+        int pieceCount = maxDistance + 1;
+        long starts = 0;
+        long ends = 0;
+        if (pattern.length() / pieceCount >= MIN_PIECE_LENGTH) {
+            for (int i = 0; i < pieceCount; i++) {
+                starts |= 1L << (i * pattern.length() / pieceCount);
+                ends |= 1L << ((i + 1) * pattern.length() / pieceCount - 1);
+            }
+        }
+        this.pieceStarts = starts;
+        this.pieceEnds = ends;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Check whether a text contains the pattern within the maximum distance
+     *
+     * @param text The text to search in
+     * @return True if some part of the text is close enough to the pattern
+     */
+    public boolean contains(CharSequence text) {
+        return contains(text, null);
+    }
+
+    /**
+     * Check whether a text contains the pattern within a time budget
+     *
+     * @param text The text to search in
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return True if some part of the text is close enough to the pattern
+     * @throws MatchTimeoutException If the budget runs out
+     */
+    public boolean contains(CharSequence text, MatchBudget budget) {
+        char[] block = new char[Math.min(text.length(), BLOCK_SIZE)];
+        if (pieceEnds == 0 || !TextProcessor.isLiteralPrefilterEnabled()) {
+            return scanContains(text, 0, text.length(), block, budget);
+        }
+        PieceRanges ranges = new PieceRanges(text, budget);
+        while (ranges.next(0)) {
+            if (scanContains(text, ranges.start, ranges.end, block, budget)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds all non-overlapping matches of the pattern in a text
+     *
+     * @param text The text to search in
+     * @return The matches in text order, each with its edit distance
+     */
+    public List<TextProcessor.MatchInfo> findMatches(CharSequence text) {
+        return findMatches(text, null);
+    }
+
+    /**
+     * Finds all non-overlapping matches of the pattern within a time budget
+     *
+     * @param text The text to search in
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The matches in text order, each with its edit distance
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matches found so far
+     */
+    public List<TextProcessor.MatchInfo> findMatches(CharSequence text, MatchBudget budget) {
+        List<TextProcessor.MatchInfo> matches = new ArrayList<>();
+        char[] block = new char[Math.min(text.length(), BLOCK_SIZE)];
+        if (pieceEnds == 0 || !TextProcessor.isLiteralPrefilterEnabled()) {
+            scanMatches(text, 0, text.length(), 0, block, matches, budget);
+            return matches;
+        }
+        PieceRanges ranges = new PieceRanges(text, budget);
+        int previousEnd = 0;
+        while (ranges.next(matches.size())) {
+            previousEnd = scanMatches(text, ranges.start, ranges.end, previousEnd, block, matches, budget);
+        }
+        return matches;
+    }
+
+    /**
+     * Check whether a match ends within a range of a text, reading the chars through a block
+     */
+    private boolean scanContains(CharSequence text, int from, int to, char[] block, MatchBudget budget) {
+        long pv = -1L;
+        long mv = 0;
+        int score = pattern.length();
+        for (int blockStart = from; blockStart < to; blockStart += block.length) {
+            if (budget != null && budget.isExhausted()) {
+                throw budget.exhausted(0, blockStart);
+            }
+            int blockLength = copyBlock(text, blockStart, to, block);
+            for (int i = 0; i < blockLength; i++) {
+                long eq = forward.get(block[i]);
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                // The last row changes by +1, -1 or 0; ph and mh never share a bit
+                score += (int) (ph >>> lastRow & 1) - (int) (mh >>> lastRow & 1);
+                if (score <= maxDistance) {
+                    return true;
+                }
+                ph <<= 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the matches ending within a range of a text
+     *
+     * @param previousEnd The end of the last match found so far; new matches start at or after it
+     * @param block Buffer the chars are read through, reused across ranges
+     * @return The end of the last match found
+     */
+    private int scanMatches(CharSequence text, int from, int to, int previousEnd, char[] block,
+                            List<TextProcessor.MatchInfo> matches, MatchBudget budget) {
+        long pv = -1L;
+        long mv = 0;
+        int score = pattern.length();
+        // Best end position seen since the last match, and the distance there
+        int candidateEnd = -1;
+        int candidateScore = 0;
+
+        for (int blockStart = from; blockStart < to; blockStart += block.length) {
+            if (budget != null && budget.isExhausted()) {
+                throw budget.exhausted(matches.size(), previousEnd);
+            }
+            int blockLength = copyBlock(text, blockStart, to, block);
+            for (int i = 0; i < blockLength; i++) {
+                long eq = forward.get(block[i]);
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                score += (int) (ph >>> lastRow & 1) - (int) (mh >>> lastRow & 1);
+                ph <<= 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+
+                if (candidateEnd < 0 && score > maxDistance) {
+                    continue;
+                }
+                int end = blockStart + i + 1;
+                if (candidateEnd < 0) {
+                    candidateEnd = end;
+                    candidateScore = score;
+                } else if (score < candidateScore) {
+                    candidateEnd = end;
+                    candidateScore = score;
+                } else if (score > candidateScore
+                        || (score == candidateScore && findStart(text, end, candidateEnd) != NO_MATCH)) {
+                    // Past the best end, or a separate equally good match follows the candidate
+                    previousEnd = addMatch(text, candidateEnd, previousEnd, matches);
+                    candidateEnd = score <= maxDistance ? end : -1;
+                    candidateScore = score;
+                } else {
+                    // The same match grows longer without more edits
+                    candidateEnd = end;
+                }
+            }
+        }
+        if (candidateEnd >= 0) {
+            previousEnd = addMatch(text, candidateEnd, previousEnd, matches);
+        }
+        return previousEnd;
+    }
+
+    /**
+     * Adds the match ending at a position if it fits behind the previous match
+     *
+     * @return The end of the last match added
+     */
+    private int addMatch(CharSequence text, int end, int previousEnd, List<TextProcessor.MatchInfo> matches) {
+        long found = findStart(text, end, previousEnd);
+        if (found == NO_MATCH) {
+            return previousEnd;
+        }
+        int start = (int) (found >>> 32);
+        matches.add(new TextProcessor.MatchInfo(text, new int[]{start, end}, (int) found));
+        return end;
+    }
+
+    /**
+     * Finds the start of the best match ending at a position
+     * Runs the algorithm over the reversed pattern from the end backwards, with the end anchored,
+     * and picks the longest match with the fewest edits.
+     *
+     * @param end The end of the match
+     * @param lowerBound The earliest position the match may start at
+     * @return The start in the upper and the edit distance in the lower 32 bits, or NO_MATCH if
+     *         no match within the maximum distance starts at or after the lower bound
+     */
+    private long findStart(CharSequence text, int end, int lowerBound) {
+        if (end - lowerBound < pattern.length() - maxDistance) {
+            // Too short for a match: k edits remove at most k chars from the pattern
+            return NO_MATCH;
+        }
+        long pv = -1L;
+        long mv = 0;
+        int score = pattern.length();
+        int bestStart = -1;
+        int bestScore = maxDistance;
+        int limit = Math.max(lowerBound, end - pattern.length() - maxDistance);
+        for (int i = end - 1; i >= limit; i--) {
+            long eq = reverse.get(text.charAt(i));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            score += (int) (ph >>> lastRow & 1) - (int) (mh >>> lastRow & 1);
+            // The match may not skip chars at its end, so each shift brings in a 1 at the top row
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+
+            if (score <= bestScore) {
+                bestStart = i;
+                bestScore = score;
+            }
+        }
+        return bestStart < 0 ? NO_MATCH : ((long) bestStart << 32) | bestScore;
+    }
+
+    /**
+     * Copies the chars of a text from a position up to a limit into a block, as many as fit
+     *
+     * @return The number of chars copied
+     */
+    private static int copyBlock(CharSequence text, int start, int limit, char[] block) {
+        int end = Math.min(limit, start + block.length);
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, block, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, block, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                block[i - start] = text.charAt(i);
+            }
+        }
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return "FuzzyMatcher[" + pattern + ", " + maxDistance + " edits]";
+    }
+
+    /**
+     * Walks through the ranges of a text around the occurrences of the pattern pieces
+     * Each range reaches from k chars before to k chars after where the whole pattern would lie
+     * around a piece occurrence; overlapping and nearby ranges are merged.
+     */
+    private final class PieceRanges {
+        private final CharSequence text;
+        private final MatchBudget budget;
+        private final char[] block;
+        private int blockStart;
+        private int blockLength;
+        private int index;
+        /** Shift-And state: the rows where a piece prefix ends at the last char read */
+        private long state;
+        /** End of the last piece occurrences found and not yet added to a range, or -1 */
+        private int occurrenceEnd = -1;
+        private long occurrenceRows;
+        private int start;
+        private int end;
+
+        PieceRanges(CharSequence text, MatchBudget budget) {
+            this.text = text;
+            this.budget = budget;
+            this.block = new char[Math.min(text.length(), BLOCK_SIZE)];
+        }
+
+        /**
+         * Moves to the next range
+         *
+         * @param completedCount The number of matches found so far, reported if the budget runs out
+         * @return False if there are no more ranges
+         */
+        boolean next(int completedCount) {
+            start = -1;
+            while (occurrenceEnd >= 0 || findOccurrences(completedCount)) {
+                // Occurrences come in the order they end in, and one ending here or later puts
+                // the pattern no earlier than a pattern length back, so a range further back is
+                // complete
+                if (start >= 0 && (long) occurrenceEnd - pattern.length() - maxDistance > end) {
+                    return true;
+                }
+                for (long rows = occurrenceRows; rows != 0; rows &= rows - 1) {
+                    int patternStart = occurrenceEnd - Long.numberOfTrailingZeros(rows) - 1;
+                    int rangeStart = Math.max(0, patternStart - maxDistance);
+                    int rangeEnd = (int) Math.min(text.length(), (long) patternStart + pattern.length() + maxDistance);
+                    if (start < 0) {
+                        start = rangeStart;
+                        end = rangeEnd;
+                    } else {
+                        start = Math.min(start, rangeStart);
+                        end = Math.max(end, rangeEnd);
+                    }
+                }
+                occurrenceEnd = -1;
+            }
+            return start >= 0;
+        }
+
+        /**
+         * Reads on to the next position where pieces end
+         *
+         * @return False at the end of the text
+         */
+        private boolean findOccurrences(int completedCount) {
+            long found = state;
+            while (true) {
+                for (int i = index; i < blockLength; i++) {
+                    found = ((found << 1) | pieceStarts) & forward.get(block[i]);
+                    if ((found & pieceEnds) != 0) {
+                        state = found;
+                        index = i + 1;
+                        occurrenceEnd = blockStart + index;
+                        occurrenceRows = found & pieceEnds;
+                        return true;
+                    }
+                }
+                blockStart += blockLength;
+                if (blockStart >= text.length()) {
+                    return false;
+                }
+                if (budget != null && budget.isExhausted()) {
+                    throw budget.exhausted(completedCount, blockStart);
+                }
+                blockLength = copyBlock(text, blockStart, text.length(), block);
+                index = 0;
+            }
+        }
+    }
+
+    /**
+     * Bit masks of the pattern positions each char occurs at
+     * Chars below 256 are looked up in a table, the few others the pattern contains in a list.
+     */
+    private static final class CharMasks {
+        private static final int TABLE_SIZE = 256;
+
+        private final long[] table = new long[TABLE_SIZE];
+        private char[] otherChars = new char[0];
+        private long[] otherMasks = new long[0];
+
+        CharMasks(CharSequence pattern, boolean ignoreCase) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                long bit = 1L << i;
+                set(c, bit);
+                if (ignoreCase) {
+                    set(Character.toLowerCase(c), bit);
+                    set(Character.toUpperCase(c), bit);
+                }
+            }
+        }
+
+        private void set(char c, long bit) {
+            if (c < TABLE_SIZE) {
+                table[c] |= bit;
+                return;
+            }
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) {
+                    otherMasks[i] |= bit;
+                    return;
+                }
+            }
+            otherChars = Arrays.copyOf(otherChars, otherChars.length + 1);
+            otherMasks = Arrays.copyOf(otherMasks, otherMasks.length + 1);
+            otherChars[otherChars.length - 1] = c;
+            otherMasks[otherMasks.length - 1] = bit;
+        }
+
+        long get(char c) {
+            if (c < TABLE_SIZE) {
+                return table[c];
+            }
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) {
+                    return otherMasks[i];
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Keeps the matches of one pattern in a text up to date while the text is edited
+ * After an edit only the affected window is matched again. The window starts where match
+ * attempts could first read the edited text: the pattern's maximum match length before the
+ * edit, or the start of the line for patterns that cannot match a line feed. Scanning stops as
+ * soon as it is back in step with the previous scan behind the edit; the remaining matches are
+ * kept and shifted by the change in length. The matches always equal those
+ * TextProcessor.findMatches returns for the whole text.
+ *
+ * Patterns with an unbounded match length that can match a line feed are rescanned from the
+ * start of the text up to the point where the scan is back in step. Patterns using \G are
+ * always rescanned completely.
+ */
+public class IncrementalMatcher {
+    /** Chars matched at once when looking for the next match behind an edit */
+    private static final int MIN_WINDOW = 4096;
+
+    private final String patternStr;
+    private final int flags;
+    private final Pattern pattern;
+    private final MatchReach analysis;
+    private CharSequence text = "";
+    private int textLength;
+    private int[] offsets = new int[32];
+    private int size;
+    private int rescannedLength;
+
+    /**
+     * Creates a matcher for a pattern; call reset to give it a text
+     *
+     * @param patternStr The regex pattern to match
+     * @param flags Regex pattern flags
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public IncrementalMatcher(String patternStr, int flags) {
+        if (patternStr == null || patternStr.isEmpty()) {
+            throw new IllegalArgumentException("Pattern must not be empty");
+        }
+        this.patternStr = patternStr;
+        this.flags = flags;
+        this.pattern = PatternCache.getShared().compile(patternStr, flags);
+        this.analysis = MatchReach.of(patternStr, flags);
+    }
+
+    public String getPattern() {
+        return patternStr;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Gets the text the matches belong to
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Matches the whole of a new text
+     *
+     * @param text The text to search in; it must not change until the next reset or edit
+     */
+    public void reset(CharSequence text) {
+        reset(text, null);
+    }
+
+    /**
+     * Matches the whole of a new text within a time budget
+     *
+     * @param text The text to search in; it must not change until the next reset or edit
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @throws MatchTimeoutException If the budget runs out; the matcher is then left empty
+     */
+    public void reset(CharSequence text, MatchBudget budget) {
+        this.text = text == null ? "" : text;
+        this.textLength = this.text.length();
+        size = 0;
+        scanFrom(0, Integer.MAX_VALUE, 0, 0, 0, budget);
+    }
+
+    /**
+     * Updates the matches after part of the text was replaced
+     *
+     * @param text The text after the edit; it may be the same object as before if it was edited in place
+     * @param offset Where the edit starts
+     * @param removedLength Number of chars the edit removed at the offset
+     * @param insertedLength Number of chars the edit inserted at the offset
+     */
+    public void edit(CharSequence text, int offset, int removedLength, int insertedLength) {
+        edit(text, offset, removedLength, insertedLength, null);
+    }
+
+    /**
+     * Updates the matches after part of the text was replaced, within a time budget
+     *
+     * @param text The text after the edit; it may be the same object as before if it was edited in place
+     * @param offset Where the edit starts
+     * @param removedLength Number of chars the edit removed at the offset
+     * @param insertedLength Number of chars the edit inserted at the offset
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @throws MatchTimeoutException If the budget runs out; the matcher is then left empty
+     */
+    public void edit(CharSequence text, int offset, int removedLength, int insertedLength, MatchBudget budget) {
+        int oldLength = textLength;
+        if (text == null || offset < 0 || removedLength < 0 || insertedLength < 0
+                || offset + removedLength > oldLength
+                || text.length() != oldLength - removedLength + insertedLength) {
+            throw new IllegalArgumentException("Edit does not fit the text");
+        }
+
+        this.text = text;
+        this.textLength = text.length();
+        if (analysis.usesLastMatchEnd) {
+            size = 0;
+            scanFrom(0, Integer.MAX_VALUE, 0, 0, 0, budget);
+            return;
+        }
+
+        // Matches whose attempts read no edited text stay as they are
+        int resume = analysis.firstAffectedStart(text, offset);
+        int kept = 0;
+        while (kept < size && offsets[2 * kept] < resume) {
+            kept++;
+        }
+        if (kept > 0) {
+            int lastStart = offsets[2 * kept - 2];
+            int lastEnd = offsets[2 * kept - 1];
+            resume = Math.max(resume, lastEnd == lastStart ? lastEnd + 1 : lastEnd);
+        }
+
+        scanFrom(resume, kept, offset + removedLength, offset + insertedLength,
+                insertedLength - removedLength, budget);
+    }
+
+    /**
+     * Updates the matches for a new version of the text, finding the edit by comparing both
+     * Use edit when the position of the change is known; this method compares the texts from
+     * both ends, which takes time proportional to the unchanged length.
+     *
+     * @param text The new text; the previous text must not have been modified in place
+     */
+    public void update(CharSequence text) {
+        update(text, null);
+    }
+
+    /**
+     * Updates the matches for a new version of the text within a time budget
+     *
+     * @param text The new text; the previous text must not have been modified in place
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @throws MatchTimeoutException If the budget runs out; the matcher is then left empty
+     */
+    public void update(CharSequence text, MatchBudget budget) {
+        CharSequence old = this.text;
+        int limit = Math.min(old.length(), text.length());
+        int prefix = 0;
+        while (prefix < limit && old.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && old.charAt(old.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+        edit(text, prefix, old.length() - prefix - suffix, text.length() - prefix - suffix, budget);
+    }
+
+    /**
+     * Gets the number of matches
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int match) {
+        return offsets[index(match)];
+    }
+
+    public int getEnd(int match) {
+        return offsets[index(match) + 1];
+    }
+
+    public String getMatchText(int match) {
+        int index = index(match);
+        return text.subSequence(offsets[index], offsets[index + 1]).toString();
+    }
+
+    /**
+     * Gets the number of chars matched again by the last reset or edit
+     */
+    public int getRescannedLength() {
+        return rescannedLength;
+    }
+
+    /**
+     * Gets the matches as highlight spans with the given pattern id
+     *
+     * @param patternId The id to tag every span with
+     * @return The match spans in text order
+     */
+    public MatchSpans toSpans(int patternId) {
+        MatchSpans spans = new MatchSpans();
+        for (int i = 0; i < size; i++) {
+            spans.add(offsets[2 * i], offsets[2 * i + 1], patternId);
+        }
+        return spans;
+    }
+
+    /**
+     * Scans the text from a position and splices the found matches in behind the kept ones
+     * The old matches from index kept on belong to the text before the edit. Once the scan is
+     * about to try a position behind the edit that the old scan tried as well, and no attempt
+     * from there can look back into the edit, the rest of the old matches is shifted and reused.
+     *
+     * @param position Where the next match attempt starts
+     * @param kept Number of leading matches to keep, or Integer.MAX_VALUE when nothing is reused
+     * @param oldEditEnd End of the edited range in the old text
+     * @param newEditEnd End of the edited range in the new text
+     * @param delta Change in text length
+     * @param budget Time budget and cancellation token, or null for no limit
+     */
+    private void scanFrom(int position, int kept, int oldEditEnd, int newEditEnd, int delta, MatchBudget budget) {
+        try {
+            if (budget != null) {
+                budget.check();
+            }
+            scanFrom(position, kept, oldEditEnd, newEditEnd, delta, InterruptibleCharSequence.wrap(text, budget));
+        } catch (MatchTimeoutException e) {
+            // Partly updated matches would be wrong; start over with the next text
+            text = "";
+            textLength = 0;
+            size = 0;
+            throw e;
+        }
+    }
+
+    private void scanFrom(int position, int kept, int oldEditEnd, int newEditEnd, int delta, CharSequence input) {
+        boolean reuse = kept != Integer.MAX_VALUE;
+        int[] old = offsets;
+        int oldSize = size;
+        int[] found = new int[16];
+        int foundCount = 0;
+        int length = text.length();
+        int scanStart = Math.min(position, length);
+        int next = reuse ? kept : 0;
+
+        Matcher matcher = pattern.matcher(input)
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false);
+        // Without a bound on how far attempts read, one region covers the rest of the text
+        boolean windowed = !analysis.usesLastMatchEnd && (analysis.isBounded() || analysis.lineBounded);
+        int window = Math.max(MIN_WINDOW, analysis.isBounded() ? 2 * analysis.reach : 0);
+        if (!windowed) {
+            matcher.region(scanStart, length);
+        }
+
+        while (position <= length) {
+            if (reuse && position >= newEditEnd) {
+                // Skip old matches the scan has passed
+                while (next < oldSize && old[2 * next] < position - delta) {
+                    next++;
+                }
+                if (inStep(old, next, position - delta, oldEditEnd)
+                        && analysis.readsNothingBefore(text, position, newEditEnd)) {
+                    break;
+                }
+            }
+
+            int limit = length;
+            if (windowed) {
+                limit = (int) Math.min(length, (long) position + window);
+                matcher.region(position, limit);
+            }
+            boolean matched = matcher.find();
+            if (matcher.hitEnd() && limit < length) {
+                int settled = matched ? -1 : settledPosition(position, limit);
+                if (settled <= position) {
+                    // The result could still change with more text behind the window
+                    window *= 2;
+                    continue;
+                }
+                position = settled;
+                continue;
+            }
+
+            if (!matched) {
+                position = limit;
+                if (limit == length) {
+                    position = length + 1;
+                }
+                continue;
+            }
+
+            if (foundCount * 2 + 2 > found.length) {
+                found = Arrays.copyOf(found, found.length * 2);
+            }
+            found[2 * foundCount] = matcher.start();
+            found[2 * foundCount + 1] = matcher.end();
+            foundCount++;
+            position = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+        }
+
+        int head = reuse ? kept : 0;
+        int tail = reuse && position <= length ? oldSize - next : 0;
+        int newSize = head + foundCount + tail;
+        if (2 * newSize > old.length) {
+            offsets = Arrays.copyOf(old, Math.max(2 * old.length, 2 * newSize));
+        }
+        // Move the reused matches first; the found ones may overwrite where they were
+        System.arraycopy(old, 2 * next, offsets, 2 * (head + foundCount), 2 * tail);
+        System.arraycopy(found, 0, offsets, 2 * head, 2 * foundCount);
+        if (delta != 0) {
+            for (int i = 2 * (head + foundCount); i < 2 * newSize; i++) {
+                offsets[i] += delta;
+            }
+        }
+        size = newSize;
+        rescannedLength = Math.min(position, length) - scanStart;
+    }
+
+    /**
+     * Check whether the old scan tried a match at a position at or behind the old edit end
+     * It did unless the position lies inside an earlier non-empty match.
+     *
+     * @param next Index of the first old match starting at or after the position
+     */
+    private static boolean inStep(int[] old, int next, int oldPosition, int oldEditEnd) {
+        if (oldPosition < oldEditEnd) {
+            return false;
+        }
+        return next == 0 || old[2 * next - 1] <= oldPosition;
+    }
+
+    /**
+     * Gets the position before which all attempts in a window failed for good
+     */
+    private int settledPosition(int position, int limit) {
+        if (analysis.isBounded()) {
+            return limit - analysis.reach;
+        }
+        for (int i = limit - 1 - MatchReach.ASSERTION_LOOKAHEAD; i > position; i--) {
+            if (text.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return position;
+    }
+
+    private int index(int match) {
+        if (match < 0 || match >= size) {
+            throw new IndexOutOfBoundsException("Match " + match);
+        }
+        return 2 * match;
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalMatcher[" + patternStr + ", " + size + " matches]";
+    }
+}
@@ -0,0 +1,66 @@
+package com.ibra.advancedtextprocessor.backend;
+
+/**
+ * CharSequence wrapper that checks a MatchBudget while the regex engine reads the text
+ * java.util.regex cannot be interrupted, but it reads every char through charAt, so a
+ * catastrophically backtracking pattern keeps calling it. The budget is checked every
+ * CHECK_INTERVAL calls and a MatchTimeoutException aborts the match when it is exhausted.
+ */
+final class InterruptibleCharSequence implements CharSequence {
+    static final int CHECK_INTERVAL = 4096;
+
+    private final CharSequence text;
+    private final MatchBudget budget;
+    private int untilCheck = CHECK_INTERVAL;
+
+    private InterruptibleCharSequence(CharSequence text, MatchBudget budget) {
+        this.text = text;
+        this.budget = budget;
+    }
+
+    /**
+     * Wraps a text so reading it checks the budget, or returns it unchanged if there is no budget
+     *
+     * @param text The text to wrap
+     * @param budget The budget, may be null
+     * @return The wrapped text
+     */
+    static CharSequence wrap(CharSequence text, MatchBudget budget) {
+        if (budget == null || text == null) {
+            return text;
+        }
+        return new InterruptibleCharSequence(text, budget);
+    }
+
+    /**
+     * Returns the text a CharSequence wraps, or the sequence itself if it is not wrapped
+     */
+    static CharSequence unwrap(CharSequence text) {
+        return text instanceof InterruptibleCharSequence ? ((InterruptibleCharSequence) text).text : text;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--untilCheck <= 0) {
+            untilCheck = CHECK_INTERVAL;
+            budget.check();
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        // Sub sequences are only taken to copy matched text, which needs no checks
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,786 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lazily built DFA that finds exactly the matches java.util.regex finds, in linear time
+ * The pattern is compiled to a Thompson NFA whose threads are kept in backtracking priority
+ * order. A forward DFA over those ordered thread lists, which drops the lower priority threads
+ * once a match is seen, finds where the leftmost-first match ends; a DFA for the reversed
+ * pattern run back from that end then finds where it starts. DFA states are only built when
+ * the text reaches them and are cached for later searches, so every search reads each char a
+ * bounded number of times no matter how the pattern would backtrack.
+ * Supported are patterns without backreferences, lookaround, atomic groups, possessive
+ * quantifiers, \G, end-of-input anchors that look past a final line terminator (non-multiline $
+ * and \Z) and repetitions of parts that can match the empty string. Texts with surrogate pairs,
+ * and with combining marks for patterns using word boundaries, are left to java.util.regex.
+ * A DFA for a set of patterns runs all of them in one forward pass instead, with one match
+ * instruction per pattern, and reports where matches of each pattern end.
+ * Instances are thread-safe.
+ */
+final class LazyDfa {
+    static final long NO_MATCH = -1;
+    static final long GIVE_UP = -2;
+
+    /** Most patterns a pattern set DFA can hold, one bit of a state's masks each */
+    static final int MAX_SET_SIZE = 64;
+
+    private static final int MAX_PROGRAM_SIZE = 10_000;
+    private static final int MAX_CACHED_STATES = 4_096;
+
+    private static final int CHAR = 0;
+    private static final int SPLIT = 1;
+    private static final int ASSERT = 2;
+    private static final int MATCH = 3;
+
+    // What an assertion can see of the char on one side of a position
+    private static final int AT_EDGE = 0;
+    private static final int OTHER = 1;
+    private static final int WORD = 2;
+    private static final int LINE_FEED = 3;
+    private static final int CARRIAGE_RETURN = 4;
+    private static final int TERMINATOR = 5;
+    private static final int CONTEXT_COUNT = 6;
+
+    private final Program forward;
+    private final Program reverse;
+    private final int[] classStarts;
+    private final int[] asciiClasses = new int[128];
+    private final int[] classContexts;
+    private final boolean[] classNeedsCheck;
+    private final int endClass;
+    private final boolean checkMarks;
+    private final boolean patternSet;
+    private volatile StateCache forwardCache = new StateCache();
+    private volatile StateCache reverseCache = new StateCache();
+
+    private LazyDfa(Program forward, Program reverse) {
+        this.forward = forward;
+        this.reverse = reverse;
+        this.checkMarks = forward.usesWordBoundaries;
+        this.patternSet = reverse == null;
+
+        // Chars that no char set and no assertion can tell apart share one equivalence class
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        for (CharSet set : forward.sets) {
+            if (set != null) {
+                addBoundaries(boundaries, set);
+            }
+        }
+        if (forward.usesAssertions) {
+            addBoundaries(boundaries, RegexParser.WORD_CHARS);
+            addBoundaries(boundaries, RegexParser.LINE_TERMINATORS);
+        }
+        boundaries.add(Character.MIN_SURROGATE + 0);
+        boundaries.add(Character.MAX_SURROGATE + 1);
+
+        classStarts = boundaries.stream().mapToInt(Integer::intValue).toArray();
+        endClass = classStarts.length;
+        classContexts = new int[endClass + 1];
+        classNeedsCheck = new boolean[endClass];
+        for (int k = 0; k < endClass; k++) {
+            char first = (char) classStarts[k];
+            int last = k + 1 < endClass ? classStarts[k + 1] - 1 : Character.MAX_VALUE;
+            classContexts[k] = forward.usesAssertions ? contextOf(first) : OTHER;
+            classNeedsCheck[k] = Character.isSurrogate(first) || (checkMarks && last >= 0x300);
+        }
+        classContexts[endClass] = forward.usesAssertions ? AT_EDGE : OTHER;
+        for (char c = 0; c < 128; c++) {
+            asciiClasses[c] = classOf(c);
+        }
+    }
+
+    /**
+     * Builds the DFA for a pattern
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     * @return The DFA, or null if the pattern uses constructs outside the supported subset
+     */
+    static LazyDfa forPattern(String pattern, int flags) {
+        RegexNode root = RegexParser.parse(pattern, flags);
+        if (root == null) {
+            return null;
+        }
+        try {
+            return new LazyDfa(new ProgramBuilder(false).build(root), new ProgramBuilder(true).build(root));
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds one DFA that runs a set of patterns together, for findMatchEnds
+     *
+     * @param patterns The regex patterns, at most MAX_SET_SIZE
+     * @param flags Regex pattern flags of each pattern
+     * @return The DFA, or null if a pattern uses constructs outside the supported subset
+     */
+    static LazyDfa forPatterns(String[] patterns, int[] flags) {
+        if (patterns.length == 0 || patterns.length > MAX_SET_SIZE) {
+            throw new IllegalArgumentException("A pattern set must hold 1 to " + MAX_SET_SIZE + " patterns");
+        }
+        RegexNode[] roots = new RegexNode[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            roots[i] = RegexParser.parse(patterns[i], flags[i]);
+            if (roots[i] == null) {
+                return null;
+            }
+        }
+        try {
+            return new LazyDfa(new ProgramBuilder(false).buildSet(roots), null);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Receives the match ends a pattern set DFA finds
+     */
+    interface MatchEndListener {
+        /**
+         * Called for every position a match of a pattern ends at, in increasing order of the end
+         *
+         * @param pattern Index of the pattern in the set
+         * @param end The match end
+         * @param startsFrom Latest position at or before the end that no attempt of the pattern started
+         *                   before it runs across, so every match ending here starts at or after it
+         */
+        void matchEnd(int pattern, int end, int startsFrom);
+    }
+
+    /**
+     * Scans a whole text once with a pattern set DFA and reports where matches of each pattern end
+     * All matches are reported, at any start and overlapping or not; which of them Matcher.find()
+     * would return is for the caller to tell, from where the pattern's own search stands.
+     *
+     * @param text The text to scan
+     * @param listener Receives the match ends
+     * @return false if the scan stopped at a char the DFA does not handle, after reporting the ends before it
+     */
+    boolean findMatchEnds(CharSequence text, MatchEndListener listener) {
+        if (!patternSet) {
+            throw new IllegalStateException("Not a pattern set DFA");
+        }
+        StateCache cache = forwardCache;
+        int startContext = classContexts[endClass];
+        State state = cache.starts[startContext];
+        if (state == null) {
+            state = intern(false, new State(new int[0], startContext, true, 0, 0, endClass + 1));
+            cache.starts[startContext] = state;
+        }
+
+        int[] quietAt = new int[MAX_SET_SIZE];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int k = c < 128 ? asciiClasses[c] : classOf(c);
+            if (classNeedsCheck[k] && isUnsupported(c)) {
+                return false;
+            }
+            State next = state.next[k];
+            if (next == null) {
+                next = step(forward, state, k);
+            }
+            if (next.matches != 0 || next.alive != state.alive) {
+                reportMatchEnds(state, next, i, quietAt, listener);
+            }
+            state = next;
+        }
+
+        State next = state.next[endClass];
+        if (next == null) {
+            next = step(forward, state, endClass);
+        }
+        reportMatchEnds(state, next, text.length(), quietAt, listener);
+        return true;
+    }
+
+    /**
+     * Records which patterns start running at a position and reports the matches ending there
+     */
+    private static void reportMatchEnds(State state, State next, int position, int[] quietAt,
+                                        MatchEndListener listener) {
+        // Attempts started before the position were still running if the pattern was alive
+        long started = next.alive & ~state.alive;
+        while (started != 0) {
+            quietAt[Long.numberOfTrailingZeros(started)] = position;
+            started &= started - 1;
+        }
+        long ends = next.matches;
+        while (ends != 0) {
+            int pattern = Long.numberOfTrailingZeros(ends);
+            boolean running = (state.alive & (1L << pattern)) != 0;
+            listener.matchEnd(pattern, position, running ? quietAt[pattern] : position);
+            ends &= ends - 1;
+        }
+    }
+
+    /**
+     * Finds the first match in the region [from, to) of a text, as Matcher.find() would
+     * Chars outside the region are only looked at by anchors and word boundaries.
+     *
+     * @param text The text to search
+     * @param from Position the search starts at
+     * @param to End of the region matches have to fit in
+     * @return The match start in the upper and the match end in the lower 32 bits, NO_MATCH,
+     *         or GIVE_UP if the text contains chars the DFA does not handle
+     */
+    long find(CharSequence text, int from, int to) {
+        long end = findEnd(text, from, to);
+        if (end < 0) {
+            return end;
+        }
+        long start = findStart(text, from, (int) end);
+        if (start < 0) {
+            return GIVE_UP;
+        }
+        return (start << 32) | end;
+    }
+
+    /**
+     * Runs the forward DFA and returns where the leftmost-first match ends
+     */
+    private long findEnd(CharSequence text, int from, int to) {
+        int before = from == 0 ? endClass : classAt(text, from - 1);
+        if (before < 0) {
+            return GIVE_UP;
+        }
+
+        StateCache cache = forwardCache;
+        int startContext = classContexts[before];
+        State state = cache.starts[startContext];
+        if (state == null) {
+            state = intern(false, new State(new int[0], startContext, true, 0, 0, endClass + 1));
+            cache.starts[startContext] = state;
+        }
+
+        long matchEnd = NO_MATCH;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int k = c < 128 ? asciiClasses[c] : classOf(c);
+            if (classNeedsCheck[k] && isUnsupported(c)) {
+                return GIVE_UP;
+            }
+            State next = state.next[k];
+            if (next == null) {
+                next = step(forward, state, k);
+            }
+            if (next.matched) {
+                matchEnd = i;
+            }
+            if (next.dead) {
+                return matchEnd;
+            }
+            state = next;
+        }
+
+        // A match can still end at the region end; the char after it is only looked at
+        int after = to < text.length() ? classAt(text, to) : endClass;
+        if (after < 0) {
+            return GIVE_UP;
+        }
+        State next = state.next[after];
+        if (next == null) {
+            next = step(forward, state, after);
+        }
+        return next.matched ? to : matchEnd;
+    }
+
+    /**
+     * Runs the reverse DFA back from a match end and returns the leftmost position a match starts at
+     *
+     * @param text The text to search
+     * @param from Leftmost position the match may start at
+     * @param end The match end
+     * @return The start, NO_MATCH if no match in [from, end) ends there, or GIVE_UP
+     */
+    long findStart(CharSequence text, int from, int end) {
+        int after = end < text.length() ? classAt(text, end) : endClass;
+        if (after < 0) {
+            return GIVE_UP;
+        }
+
+        StateCache cache = reverseCache;
+        int startContext = classContexts[after];
+        State state = cache.starts[startContext];
+        if (state == null) {
+            state = intern(true, new State(new int[]{reverse.start}, startContext, false, 0, 0, endClass + 1));
+            cache.starts[startContext] = state;
+        }
+
+        long matchStart = NO_MATCH;
+        for (int i = end; i > from; i--) {
+            char c = text.charAt(i - 1);
+            int k = c < 128 ? asciiClasses[c] : classOf(c);
+            if (classNeedsCheck[k] && isUnsupported(c)) {
+                return GIVE_UP;
+            }
+            State next = state.next[k];
+            if (next == null) {
+                next = step(reverse, state, k);
+            }
+            if (next.matched) {
+                matchStart = i;
+            }
+            if (next.dead) {
+                return matchStart;
+            }
+            state = next;
+        }
+
+        int before = from > 0 ? classAt(text, from - 1) : endClass;
+        if (before < 0) {
+            return GIVE_UP;
+        }
+        State next = state.next[before];
+        if (next == null) {
+            next = step(reverse, state, before);
+        }
+        return next.matched ? from : matchStart;
+    }
+
+    /**
+     * Computes and caches the transition of a state on a char class
+     * The threads are followed through splits and assertions to the char and match
+     * instructions they wait at, in priority order; the char instructions accepting the class
+     * make up the next state. The forward program drops all threads after the first match,
+     * as backtracking never tries them, and stops starting new match attempts.
+     */
+    private State step(Program program, State state, int charClass) {
+        boolean reversed = program == reverse;
+        int inputContext = classContexts[charClass];
+        int before = reversed ? inputContext : state.context;
+        int after = reversed ? state.context : inputContext;
+
+        int size = program.op.length;
+        boolean[] visited = new boolean[size];
+        int[] stack = new int[size];
+        int[] order = new int[size];
+        int count = 0;
+        for (int t = 0; t <= state.threads.length; t++) {
+            int pc;
+            if (t < state.threads.length) {
+                pc = state.threads[t];
+            } else if (state.searching) {
+                pc = program.start;
+            } else {
+                break;
+            }
+
+            int top = 0;
+            stack[top++] = pc;
+            while (top > 0) {
+                pc = stack[--top];
+                if (visited[pc]) {
+                    continue;
+                }
+                visited[pc] = true;
+                switch (program.op[pc]) {
+                    case SPLIT:
+                        stack[top++] = program.alt[pc];
+                        stack[top++] = program.next[pc];
+                        break;
+                    case ASSERT:
+                        if (holds(program.assertions[pc], program.unixLines[pc], before, after)) {
+                            stack[top++] = program.next[pc];
+                        }
+                        break;
+                    default:
+                        order[count++] = pc;
+                        break;
+                }
+            }
+        }
+
+        long matches = 0;
+        boolean searching = state.searching;
+        boolean[] added = new boolean[size];
+        int[] threads = new int[count];
+        int threadCount = 0;
+        char input = charClass == endClass ? 0 : (char) classStarts[charClass];
+        for (int i = 0; i < count; i++) {
+            int pc = order[i];
+            if (program.op[pc] == MATCH) {
+                matches |= 1L << program.owners[pc];
+                if (!reversed && !patternSet) {
+                    searching = false;
+                    break;
+                }
+            } else if (charClass != endClass && program.sets[pc].contains(input) && !added[program.next[pc]]) {
+                added[program.next[pc]] = true;
+                threads[threadCount++] = program.next[pc];
+            }
+        }
+        threads = Arrays.copyOf(threads, threadCount);
+        long alive = 0;
+        if (reversed || patternSet) {
+            // Priorities do not matter when looking for the leftmost start or for every match end
+            Arrays.sort(threads);
+        }
+        if (patternSet) {
+            for (int pc : threads) {
+                alive |= 1L << program.owners[pc];
+            }
+        }
+
+        State next = intern(reversed, new State(threads, inputContext, searching, matches, alive, endClass + 1));
+        state.next[charClass] = next;
+        return next;
+    }
+
+    private State intern(boolean reversed, State state) {
+        StateCache cache = reversed ? reverseCache : forwardCache;
+        if (cache.states.size() >= MAX_CACHED_STATES) {
+            // Searches still holding states of the old cache keep working with them
+            cache = new StateCache();
+            if (reversed) {
+                reverseCache = cache;
+            } else {
+                forwardCache = cache;
+            }
+        }
+        State existing = cache.states.putIfAbsent(state, state);
+        return existing != null ? existing : state;
+    }
+
+    private static boolean holds(RegexNode.Assertion assertion, boolean unixLines, int before, int after) {
+        switch (assertion) {
+            case INPUT_START:
+                return before == AT_EDGE;
+            case INPUT_END:
+                return after == AT_EDGE;
+            case WORD_BOUNDARY:
+                return (before == WORD) != (after == WORD);
+            case NON_WORD_BOUNDARY:
+                return (before == WORD) == (after == WORD);
+            case LINE_START:
+                // ^ does not match at the end of input, nor between \r and \n
+                if (after == AT_EDGE) {
+                    return false;
+                }
+                if (unixLines) {
+                    return before == AT_EDGE || before == LINE_FEED;
+                }
+                return before == AT_EDGE || before == LINE_FEED || before == TERMINATOR
+                        || (before == CARRIAGE_RETURN && after != LINE_FEED);
+            case LINE_END:
+                if (unixLines) {
+                    return after == AT_EDGE || after == LINE_FEED;
+                }
+                return after == AT_EDGE || after == CARRIAGE_RETURN || after == TERMINATOR
+                        || (after == LINE_FEED && before != CARRIAGE_RETURN);
+            default:
+                throw new IllegalStateException("Unsupported assertion " + assertion);
+        }
+    }
+
+    private static int contextOf(char c) {
+        if (RegexParser.WORD_CHARS.contains(c)) {
+            return WORD;
+        }
+        switch (c) {
+            case '\n':
+                return LINE_FEED;
+            case '\r':
+                return CARRIAGE_RETURN;
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return TERMINATOR;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * Returns true for chars java.util.regex treats in ways the DFA does not model:
+     * surrogates, which it matches as whole code points, and combining marks, which count as
+     * word chars for word boundaries when they follow a letter or digit
+     */
+    private boolean isUnsupported(char c) {
+        return Character.isSurrogate(c)
+                || (checkMarks && Character.getType(c) == Character.NON_SPACING_MARK);
+    }
+
+    /**
+     * Gets the class of the char at a position, or -1 if the DFA cannot handle it
+     */
+    private int classAt(CharSequence text, int index) {
+        char c = text.charAt(index);
+        int k = classOf(c);
+        return classNeedsCheck[k] && isUnsupported(c) ? -1 : k;
+    }
+
+    private int classOf(char c) {
+        int index = Arrays.binarySearch(classStarts, c);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static void addBoundaries(TreeSet<Integer> boundaries, CharSet set) {
+        for (int i = 0; i < set.rangeCount(); i++) {
+            boundaries.add((int) set.rangeStart(i));
+            if (set.rangeEnd(i) < Character.MAX_VALUE) {
+                boundaries.add(set.rangeEnd(i) + 1);
+            }
+        }
+    }
+
+    /**
+     * Thompson NFA as parallel instruction arrays
+     */
+    private static final class Program {
+        final int[] op;
+        final int[] next;
+        final int[] alt;
+        final CharSet[] sets;
+        final RegexNode.Assertion[] assertions;
+        final boolean[] unixLines;
+        final int[] owners;
+        final int start;
+        final boolean usesAssertions;
+        final boolean usesWordBoundaries;
+
+        Program(ProgramBuilder builder, int start) {
+            int size = builder.size;
+            this.op = Arrays.copyOf(builder.op, size);
+            this.next = Arrays.copyOf(builder.next, size);
+            this.alt = Arrays.copyOf(builder.alt, size);
+            this.sets = Arrays.copyOf(builder.sets, size);
+            this.assertions = Arrays.copyOf(builder.assertions, size);
+            this.unixLines = Arrays.copyOf(builder.unixLines, size);
+            this.owners = Arrays.copyOf(builder.owners, size);
+            this.start = start;
+
+            boolean anyAssertion = false;
+            boolean wordBoundary = false;
+            for (RegexNode.Assertion assertion : assertions) {
+                if (assertion != null) {
+                    anyAssertion = true;
+                    wordBoundary |= assertion == RegexNode.Assertion.WORD_BOUNDARY
+                            || assertion == RegexNode.Assertion.NON_WORD_BOUNDARY;
+                }
+            }
+            this.usesAssertions = anyAssertion;
+            this.usesWordBoundaries = wordBoundary;
+        }
+    }
+
+    /**
+     * Compiles a syntax tree back to front, so every instruction is emitted after its successor
+     */
+    private static final class ProgramBuilder {
+        private final boolean reversed;
+        private int[] op = new int[64];
+        private int[] next = new int[64];
+        private int[] alt = new int[64];
+        private CharSet[] sets = new CharSet[64];
+        private RegexNode.Assertion[] assertions = new RegexNode.Assertion[64];
+        private boolean[] unixLines = new boolean[64];
+        private int[] owners = new int[64];
+        private int owner;
+        private int size;
+
+        ProgramBuilder(boolean reversed) {
+            this.reversed = reversed;
+        }
+
+        Program build(RegexNode root) {
+            int match = emit(MATCH, -1, -1);
+            return new Program(this, compile(root, match));
+        }
+
+        /**
+         * Compiles a set of patterns, each with its own match instruction, behind one start
+         */
+        Program buildSet(RegexNode[] roots) {
+            int[] entries = new int[roots.length];
+            for (int i = 0; i < roots.length; i++) {
+                owner = i;
+                entries[i] = compile(roots[i], emit(MATCH, -1, -1));
+            }
+            owner = -1;
+            int start = entries[roots.length - 1];
+            for (int i = roots.length - 2; i >= 0; i--) {
+                start = emit(SPLIT, entries[i], start);
+            }
+            return new Program(this, start);
+        }
+
+        /**
+         * Emits the instructions for a node and returns its entry point
+         *
+         * @param node The node to compile
+         * @param next Entry point of what follows the node
+         */
+        private int compile(RegexNode node, int next) {
+            switch (node.kind) {
+                case EMPTY:
+                    return next;
+                case CHAR_SET: {
+                    int pc = emit(CHAR, next, -1);
+                    sets[pc] = node.charSet;
+                    return pc;
+                }
+                case CONCAT: {
+                    int entry = next;
+                    int count = node.children.size();
+                    for (int i = 0; i < count; i++) {
+                        entry = compile(node.children.get(reversed ? i : count - 1 - i), entry);
+                    }
+                    return entry;
+                }
+                case ALTERNATION: {
+                    int count = node.children.size();
+                    int entry = compile(node.children.get(count - 1), next);
+                    for (int i = count - 2; i >= 0; i--) {
+                        int branch = compile(node.children.get(i), next);
+                        entry = emit(SPLIT, branch, entry);
+                    }
+                    return entry;
+                }
+                case GROUP:
+                    return compile(node.child(), next);
+                case REPEAT:
+                    return compileRepeat(node, next);
+                case ASSERTION: {
+                    if (node.assertion == RegexNode.Assertion.INPUT_END_BEFORE_TERMINATOR
+                            || node.assertion == RegexNode.Assertion.LAST_MATCH_END) {
+                        throw new Unsupported();
+                    }
+                    int pc = emit(ASSERT, next, -1);
+                    assertions[pc] = node.assertion;
+                    unixLines[pc] = node.unixLines;
+                    return pc;
+                }
+                default:
+                    throw new Unsupported();
+            }
+        }
+
+        private int compileRepeat(RegexNode node, int next) {
+            // Backtracking treats empty iterations specially, which NFA threads cannot mirror
+            if (node.quantifier == RegexNode.Quantifier.POSSESSIVE || node.child().minLength() == 0) {
+                throw new Unsupported();
+            }
+            boolean greedy = node.quantifier == RegexNode.Quantifier.GREEDY;
+
+            int entry = next;
+            if (node.max == RegexNode.UNBOUNDED) {
+                int loop = emit(SPLIT, -1, -1);
+                int body = compile(node.child(), loop);
+                setSplit(loop, greedy ? body : next, greedy ? next : body);
+                entry = loop;
+            } else {
+                // x{2,4} becomes xx(x(x)?)?
+                for (int i = node.min; i < node.max; i++) {
+                    int body = compile(node.child(), entry);
+                    entry = emit(SPLIT, greedy ? body : next, greedy ? next : body);
+                }
+            }
+            for (int i = 0; i < node.min; i++) {
+                entry = compile(node.child(), entry);
+            }
+            return entry;
+        }
+
+        private void setSplit(int pc, int first, int second) {
+            next[pc] = first;
+            alt[pc] = second;
+        }
+
+        private int emit(int instruction, int first, int second) {
+            if (size == MAX_PROGRAM_SIZE) {
+                throw new Unsupported();
+            }
+            if (size == op.length) {
+                int capacity = size * 2;
+                op = Arrays.copyOf(op, capacity);
+                next = Arrays.copyOf(next, capacity);
+                alt = Arrays.copyOf(alt, capacity);
+                sets = Arrays.copyOf(sets, capacity);
+                assertions = Arrays.copyOf(assertions, capacity);
+                unixLines = Arrays.copyOf(unixLines, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+            op[size] = instruction;
+            owners[size] = owner;
+            next[size] = first;
+            alt[size] = second;
+            return size++;
+        }
+    }
+
+    /**
+     * DFA state: the NFA threads alive after reading a char, plus what assertions can see of it
+     * States are immutable apart from their lazily filled transition table, so they can be
+     * shared between threads without locking; a racing thread at worst computes a transition twice.
+     */
+    private static final class State {
+        final int[] threads;
+        final int context;
+        final boolean searching;
+        final boolean matched;
+        final long matches;
+        final long alive;
+        final boolean dead;
+        final State[] next;
+        private final int hash;
+
+        /**
+         * @param threads Instructions waiting to continue, in priority order
+         * @param context What assertions see of the char that was read last
+         * @param searching True while new match attempts are still started at every position
+         * @param matches Bit of every pattern a match of which ended right before the char that was read last
+         * @param alive Bit of every pattern that has threads; only kept for pattern sets
+         * @param classCount Number of char classes including the end-of-input class
+         */
+        State(int[] threads, int context, boolean searching, long matches, long alive, int classCount) {
+            this.threads = threads;
+            this.context = context;
+            this.searching = searching;
+            this.matched = matches != 0;
+            this.matches = matches;
+            this.alive = alive;
+            this.dead = threads.length == 0 && !searching;
+            this.next = new State[classCount];
+            this.hash = ((Arrays.hashCode(threads) * 31 + context) * 31 + (searching ? 1 : 0)) * 31
+                    + Long.hashCode(matches);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State that = (State) o;
+            return context == that.context && searching == that.searching && matches == that.matches
+                    && Arrays.equals(threads, that.threads);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Interned states of one direction; replaced by an empty cache once it holds too many states
+     */
+    private static final class StateCache {
+        final ConcurrentHashMap<State, State> states = new ConcurrentHashMap<>();
+        final State[] starts = new State[CONTEXT_COUNT];
+    }
+
+    /**
+     * Signals a construct outside the supported subset
+     */
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.ibra.advancedtextprocessor.backend;
+
+/**
+ * Counters of a line filter that wrote its matching lines to a sink instead of returning them
+ */
+public final class LineFilterResult {
+    private final long lineCount;
+    private final long matchingLineCount;
+    private final long bytesRead;
+    private final long writtenLength;
+
+    LineFilterResult(long lineCount, long matchingLineCount, long bytesRead, long writtenLength) {
+        this.lineCount = lineCount;
+        this.matchingLineCount = matchingLineCount;
+        this.bytesRead = bytesRead;
+        this.writtenLength = writtenLength;
+    }
+
+    /**
+     * Gets the number of lines read from the input
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the number of lines that matched and were written
+     */
+    public long getMatchingLineCount() {
+        return matchingLineCount;
+    }
+
+    /**
+     * Gets the number of bytes read from the input file
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Gets the amount written to the sink: bytes for files and channels, chars for writers
+     */
+    public long getWrittenLength() {
+        return writtenLength;
+    }
+
+    @Override
+    public String toString() {
+        return "LineFilterResult[" + matchingLineCount + " of " + lineCount + " lines, "
+                + bytesRead + " bytes read, " + writtenLength + " written]";
+    }
+}
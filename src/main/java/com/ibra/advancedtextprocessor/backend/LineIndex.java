@@ -0,0 +1,161 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+
+/**
+ * Start offsets of the lines of a text, for turning char offsets into lines and columns
+ * The index is built in one pass over the text and then answers each lookup with a binary
+ * search, so match positions can be reported with line numbers without rescanning the text
+ * from its start. Lines end at line feeds; the line feed belongs to the line it ends, and a
+ * carriage return before it is counted as an ordinary char of that line.
+ *
+ * Lines and columns are counted from 0 like offsets. MatchInfo reports them counted from 1,
+ * the way editors and grep output show them. The text must not change while the index is used.
+ */
+public final class LineIndex {
+    private static final int BLOCK_SIZE = 8192;
+
+    private final int length;
+    // lineStarts[0] is 0; lineStarts[i] is the offset after the i-th line feed
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    private LineIndex(int length, int[] lineStarts, int lineCount) {
+        this.length = length;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Builds the line index of a text
+     *
+     * @param text The text to index; null is treated as the empty text
+     * @return The line index
+     */
+    public static LineIndex of(CharSequence text) {
+        if (text == null) {
+            return new LineIndex(0, new int[]{0}, 1);
+        }
+        int length = text.length();
+        // Room for lines of 64 chars on average; longer texts with shorter lines grow the array
+        int[] starts = new int[Math.max(16, length / 64)];
+        int count = 1;
+
+        if (text instanceof String) {
+            // String.indexOf is an intrinsic that compares many chars per instruction
+            String string = (String) text;
+            int newline = string.indexOf('\n');
+            while (newline >= 0) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = newline + 1;
+                newline = string.indexOf('\n', newline + 1);
+            }
+        } else {
+            char[] block = new char[Math.min(Math.max(length, 1), BLOCK_SIZE)];
+            for (int blockStart = 0; blockStart < length; blockStart += block.length) {
+                int blockLength = copyBlock(text, blockStart, length, block);
+                for (int i = 0; i < blockLength; i++) {
+                    if (block[i] == '\n') {
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, starts.length * 2);
+                        }
+                        starts[count++] = blockStart + i + 1;
+                    }
+                }
+            }
+        }
+        return new LineIndex(length, starts, count);
+    }
+
+    /**
+     * Gets the length of the indexed text
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of lines; a text ending in a line feed has an empty last line
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the line an offset lies on
+     *
+     * @param offset A char offset from 0 up to and including the text length
+     * @return The line, counted from 0
+     * @throws IndexOutOfBoundsException If the offset lies outside the text
+     */
+    public int getLine(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " outside text of length " + length);
+        }
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Gets the column of an offset, the number of chars between the start of its line and the offset
+     *
+     * @param offset A char offset from 0 up to and including the text length
+     * @return The column, counted from 0
+     * @throws IndexOutOfBoundsException If the offset lies outside the text
+     */
+    public int getColumn(int offset) {
+        return offset - lineStarts[getLine(offset)];
+    }
+
+    /**
+     * Gets the offset of the first char of a line
+     *
+     * @param line The line, counted from 0
+     * @throws IndexOutOfBoundsException If the text has no such line
+     */
+    public int getLineStart(int line) {
+        checkLine(line);
+        return lineStarts[line];
+    }
+
+    /**
+     * Gets the offset of the line feed ending a line, or the text length for the last line
+     *
+     * @param line The line, counted from 0
+     * @throws IndexOutOfBoundsException If the text has no such line
+     */
+    public int getLineEnd(int line) {
+        checkLine(line);
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : length;
+    }
+
+    private void checkLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        }
+    }
+
+    /**
+     * Copies the chars of a text from a position up to a limit into a block, as many as fit
+     *
+     * @return The number of chars copied
+     */
+    private static int copyBlock(CharSequence text, int start, int limit, char[] block) {
+        int end = Math.min(limit, start + block.length);
+        if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, block, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                block[i - start] = text.charAt(i);
+            }
+        }
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return "LineIndex[" + lineCount + " lines]";
+    }
+}
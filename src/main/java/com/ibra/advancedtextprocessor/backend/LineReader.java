@@ -0,0 +1,459 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the lines of a file or of a range of its bytes, finding the line ends in the encoded
+ * bytes before decoding
+ * Lines end at \n, \r or \r\n as with BufferedReader.readLine. The line ends are found with
+ * ByteScanner, and a line is only decoded when it is asked for. Lines that cannot contain a
+ * required literal are skipped in bulk without being decoded at all.
+ *
+ * Finding line ends in the bytes needs a charset in which the bytes of \n and \r never occur
+ * inside the encoding of another char: UTF-8 and single-byte charsets that agree with ASCII on
+ * them. Files in other charsets are read through a BufferedReader and never skipped.
+ */
+final class LineReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Fewest bytes worth skipping; shorter runs of lines are cheaper to read one by one */
+    private static final int MIN_SKIP = 256;
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] CRLF = {CR, LF};
+
+    private final FileInputStream in;
+    private final ByteBuffer source;
+    private final Charset charset;
+    private final boolean utf8;
+    private final ByteScanner scanner = ByteScanner.getDefault();
+    private final BufferedReader fallback;
+    private String fallbackLine;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+    // Where the next skip may search again after the last one found the literal close by
+    private int resumeSkipAt;
+    // Where the next block may be matched after the last one had matches close together
+    private int resumeMatchAt;
+    // The decoded block of lines being matched, and where in it the next line starts
+    private String blockText;
+    private MatchScanner blockScanner;
+    private boolean blockBytesPerChar;
+    private int blockEnd;
+    private int blockResume;
+    private int blockResumeChar;
+
+    /**
+     * Opens a file for reading its lines
+     *
+     * @param file The file to read
+     * @param charset The charset the file is encoded in
+     * @throws IOException If the file cannot be opened
+     */
+    LineReader(File file, Charset charset) throws IOException {
+        this.in = new FileInputStream(file);
+        this.source = null;
+        this.charset = charset;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (supports(charset)) {
+            this.buffer = new byte[BUFFER_SIZE];
+            this.fallback = null;
+        } else {
+            this.fallback = new BufferedReader(new InputStreamReader(in, charset));
+        }
+    }
+
+    /**
+     * Reads the lines of encoded bytes, such as a range of a memory-mapped file
+     * Line numbers count from the start of the bytes.
+     *
+     * @param bytes The bytes from their position to their limit
+     * @param charset The charset the bytes are encoded in; must be one the reader supports
+     */
+    LineReader(ByteBuffer bytes, Charset charset) {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("Lines in " + charset + " cannot be found in the encoded bytes");
+        }
+        this.in = null;
+        this.source = bytes;
+        this.charset = charset;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.fallback = null;
+    }
+
+    /**
+     * Check whether line ends and literals in a charset can be found in its encoded bytes
+     */
+    static boolean supports(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1
+                || charset.newDecoder().maxCharsPerByte() != 1) {
+            return false;
+        }
+        byte[] terminators = {LF, CR};
+        return Arrays.equals("\n\r".getBytes(charset), terminators)
+                && new String(terminators, charset).equals("\n\r");
+    }
+
+    /**
+     * Encodes a literal for searching the encoded bytes of a text in a charset
+     *
+     * @return The encoded literal, or null if an occurrence of its bytes would not always be an
+     *         occurrence of the literal in the decoded text
+     */
+    static byte[] encodeLiteral(String literal, Charset charset) {
+        if (literal == null || literal.isEmpty() || !supports(charset)
+                || literal.indexOf('\n') >= 0 || literal.indexOf('\r') >= 0
+                // Malformed input decodes to the replacement char
+                || literal.indexOf('\uFFFD') >= 0
+                || !charset.newEncoder().canEncode(literal)) {
+            return null;
+        }
+        return literal.getBytes(charset);
+    }
+
+    /**
+     * Advances to the next line
+     *
+     * @return false if there are no more lines
+     * @throws IOException If an I/O error occurs
+     */
+    boolean nextLine() throws IOException {
+        if (fallback != null) {
+            fallbackLine = fallback.readLine();
+            if (fallbackLine == null) {
+                return false;
+            }
+            lineNumber++;
+            return true;
+        }
+
+        int from = position;
+        while (true) {
+            int end = scanner.indexOfAny(buffer, from, limit, LF, CR);
+            // A \r at the end of the buffer may be the first half of \r\n
+            if (end >= 0 && (buffer[end] == LF || end + 1 < limit || eof)) {
+                lineStart = position;
+                lineEnd = end;
+                position = end + 1;
+                if (buffer[end] == CR && position < limit && buffer[position] == LF) {
+                    position++;
+                }
+                lineNumber++;
+                return true;
+            }
+            if (eof) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                lineNumber++;
+                return true;
+            }
+            from = (end >= 0 ? end : limit) - fill();
+        }
+    }
+
+    /**
+     * Gets the current line without its terminator; valid until the reader is advanced
+     */
+    String getLine() {
+        if (fallback != null) {
+            return fallbackLine;
+        }
+        return new String(buffer, lineStart, lineEnd - lineStart, charset);
+    }
+
+    /**
+     * Gets the bytes of the current line without its terminator; valid until the reader is advanced
+     * The bytes are the ones read from the file, so they are copied as they are. Lines read
+     * through the fallback reader are encoded again.
+     */
+    ByteBuffer getLineBytes() {
+        if (fallback != null) {
+            return ByteBuffer.wrap(fallbackLine.getBytes(charset));
+        }
+        return ByteBuffer.wrap(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * Gets the number of the current line, counted from 1
+     */
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Skips the lines up to the next one that may contain a literal, without decoding them
+     * Stops early at the end of the buffered bytes, so the lines after the skipped ones still
+     * need to be checked; only lines known not to contain the literal are skipped.
+     *
+     * @param needle The literal, encoded with encodeLiteral
+     * @return The number of chars in the skipped lines plus one for each line
+     * @throws IOException If an I/O error occurs
+     */
+    long skipLinesWithout(byte[] needle) throws IOException {
+        if (fallback != null) {
+            return 0;
+        }
+        if (position < resumeSkipAt) {
+            return 0;
+        }
+        if (!eof && limit - position < buffer.length / 2) {
+            fill();
+        }
+
+        int found = scanner.indexOf(buffer, position, limit, needle);
+        if (found >= 0 && found - position < MIN_SKIP) {
+            // Where the literal is frequent, searching before every line costs more than it saves
+            resumeSkipAt = found + MIN_SKIP;
+            return 0;
+        }
+        // Lines ending before the occurrence cannot contain the literal; without one, neither
+        // can lines ending before the last bytes, which may start an occurrence not read yet
+        int searched = found >= 0 ? found : eof ? limit : Math.max(position, limit - needle.length + 1);
+        int end = searched - 1;
+        while (end >= position && buffer[end] != LF) {
+            end--;
+        }
+        end++;
+        if (end - position < MIN_SKIP) {
+            return 0;
+        }
+
+        // The skipped range starts at a line start and ends after a \n, so it holds whole lines
+        return skipTo(end);
+    }
+
+    /**
+     * Skips the lines up to the next one a match of a pattern falls in, matching a decoded block
+     * of lines at a time
+     * Each block is decoded once and searched by one scanner; only the line a match starts in,
+     * or the line before a match starting between \r and \n, is stopped at. That line must
+     * still be checked on its own, as must the lines after the block when no match is found
+     * and the rest of a block whose matches are close together.
+     * A pattern that is not MatchReach.lineLocal may have matches in a line that the block
+     * search skips.
+     *
+     * @param pattern The pattern, with a match in every line that matches on its own
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of chars in the skipped lines plus one for each line
+     * @throws IOException If an I/O error occurs
+     * @throws MatchTimeoutException If the budget runs out
+     */
+    long skipLinesWithoutMatch(Pattern pattern, MatchBudget budget) throws IOException {
+        if (fallback != null || position < resumeMatchAt) {
+            return 0;
+        }
+        if (blockText == null || position != blockResume) {
+            if (!eof && limit - position < buffer.length / 2) {
+                fill();
+            }
+            int end = limit;
+            if (!eof) {
+                while (end > position && buffer[end - 1] != LF) {
+                    end--;
+                }
+            }
+            if (end - position < MIN_SKIP) {
+                blockText = null;
+                return 0;
+            }
+            blockText = new String(buffer, position, end - position, charset);
+            blockEnd = end;
+            blockResume = position;
+            blockResumeChar = 0;
+            // Each char is one byte in single-byte charsets and in ASCII text
+            blockBytesPerChar = !utf8 || scanner.indexOfNonAscii(buffer, position, end) < 0;
+            blockScanner = null;
+        }
+        // A match running on past the last line stopped at may hide matches in the lines after it
+        if (blockScanner == null || blockScanner.lastEnd() > blockResumeChar) {
+            blockScanner = MatchScanner.of(pattern, InterruptibleCharSequence.wrap(blockText, budget),
+                    blockResumeChar, blockText.length());
+        } else {
+            blockScanner.skipTo(blockResumeChar);
+        }
+        if (budget != null) {
+            budget.check();
+        }
+
+        int lineStart = blockText.length();
+        if (blockScanner.find()) {
+            lineStart = blockScanner.start();
+            if (lineStart > blockResumeChar && lineStart < blockText.length()
+                    && blockText.charAt(lineStart - 1) == CR && blockText.charAt(lineStart) == LF) {
+                lineStart--;
+            }
+            while (lineStart > blockResumeChar && blockText.charAt(lineStart - 1) != LF
+                    && blockText.charAt(lineStart - 1) != CR) {
+                lineStart--;
+            }
+        }
+        if (lineStart == blockText.length()) {
+            blockText = null;
+            return skipTo(blockEnd);
+        }
+
+        int start = blockBytesPerChar
+                ? blockResume + lineStart - blockResumeChar
+                : skipLineEnds(blockResume, countLineEnds(blockText, blockResumeChar, lineStart));
+        if (start - position < MIN_SKIP) {
+            // Where matches are frequent, matching the block before every line costs more than
+            // it saves, so the rest of the block is read line by line
+            resumeMatchAt = blockEnd;
+            blockText = null;
+            return skipTo(start);
+        }
+        // The block continues after the line stopped at once the caller has read it
+        int lineEnd = indexOfLineEnd(blockText, lineStart);
+        blockResumeChar = lineEnd < 0 ? blockText.length() : afterLineEnd(blockText, lineEnd);
+        blockResume = blockBytesPerChar
+                ? start + blockResumeChar - lineStart
+                : skipLineEnds(start, lineEnd < 0 ? 0 : 1);
+        return skipTo(start);
+    }
+
+    /**
+     * Skips whole lines up to a line start in the buffer or the end of the input, counting them
+     * and their chars
+     *
+     * @return The number of chars in the skipped lines plus one for each line
+     */
+    private long skipTo(int end) {
+        int lineFeeds = scanner.count(buffer, position, end, LF);
+        int carriageReturns = scanner.count(buffer, position, end, CR);
+        int lines = lineFeeds;
+        if (carriageReturns > 0) {
+            lines += carriageReturns - scanner.count(buffer, position, end, CRLF);
+        }
+        if (eof && end == limit && end > position && buffer[end - 1] != LF && buffer[end - 1] != CR) {
+            // The last line of the input has no terminator
+            lines++;
+        }
+        long chars = (utf8 ? scanner.countUtf8Chars(buffer, position, end) : end - position)
+                - lineFeeds - carriageReturns + lines;
+
+        lineNumber += lines;
+        position = end;
+        return chars;
+    }
+
+    /**
+     * Finds the start of the line that follows a number of line ends in the buffered bytes
+     */
+    private int skipLineEnds(int from, int lineEnds) {
+        int lineStart = from;
+        for (int i = 0; i < lineEnds; i++) {
+            int end = scanner.indexOfAny(buffer, lineStart, blockEnd, LF, CR);
+            lineStart = end + 1;
+            if (buffer[end] == CR && lineStart < blockEnd && buffer[lineStart] == LF) {
+                lineStart++;
+            }
+        }
+        return lineStart;
+    }
+
+    private static int countLineEnds(String text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == LF || c == CR && (i + 1 == to || text.charAt(i + 1) != LF)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int indexOfLineEnd(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == LF || c == CR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int afterLineEnd(String text, int lineEnd) {
+        int next = lineEnd + 1;
+        return text.charAt(lineEnd) == CR && next < text.length() && text.charAt(next) == LF ? next + 1 : next;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more behind them
+     *
+     * @return The number of bytes the unread ones moved towards the start
+     */
+    private int fill() throws IOException {
+        int shift = position;
+        if (shift > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= shift;
+            position = 0;
+            resumeSkipAt -= shift;
+            resumeMatchAt -= shift;
+            blockEnd -= shift;
+            blockResume -= shift;
+        }
+        if (limit == buffer.length) {
+            // A line longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+        return shift;
+    }
+
+    private int read(byte[] target, int offset, int length) throws IOException {
+        if (source == null) {
+            return in.read(target, offset, length);
+        }
+        if (!source.hasRemaining()) {
+            return -1;
+        }
+        int read = Math.min(length, source.remaining());
+        source.get(target, offset, read);
+        return read;
+    }
+
+    /**
+     * Gets the number of bytes read from the file or range so far, including bytes buffered ahead
+     */
+    long getBytesRead() throws IOException {
+        return source != null ? source.position() : in.getChannel().position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fallback != null) {
+            fallback.close();
+        } else if (in != null) {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+
+/**
+ * Required-literal prefilter for a regex pattern
+ * Holds a literal that occurs in every match together with the maximum number of chars a
+ * match can contain before that literal. A Boyer-Moore-Horspool search for the literal tells
+ * the matcher where the next match can start at the earliest, or that no further match exists.
+ */
+final class LiteralPrefilter {
+    private static final int TABLE_SIZE = 256;
+
+    private final String needle;
+    private final boolean foldCase;
+    private final int maxPrefix;
+    private final int[] shift;
+
+    private LiteralPrefilter(String literal, boolean foldCase, int maxPrefix) {
+        this.foldCase = foldCase;
+        this.maxPrefix = maxPrefix;
+        this.shift = new int[TABLE_SIZE];
+
+        StringBuilder folded = new StringBuilder(literal.length());
+        for (int i = 0; i < literal.length(); i++) {
+            folded.append(fold(literal.charAt(i)));
+        }
+        this.needle = folded.toString();
+
+        int length = needle.length();
+        Arrays.fill(shift, length);
+        for (int i = 0; i < length - 1; i++) {
+            shift[needle.charAt(i) & (TABLE_SIZE - 1)] = length - 1 - i;
+        }
+    }
+
+    /**
+     * Builds the prefilter for a pattern
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     * @return The prefilter, or null if the pattern has no usable required literal
+     */
+    static LiteralPrefilter forPattern(String pattern, int flags) {
+        RegexNode root = RegexParser.parse(pattern, flags);
+        if (root == null || root.containsAssertion(RegexNode.Assertion.LAST_MATCH_END)) {
+            return null;
+        }
+
+        Candidate best = extract(root);
+        if (best == null) {
+            return null;
+        }
+        return new LiteralPrefilter(best.literal, best.foldCase, best.prefix);
+    }
+
+    /**
+     * Gets the string a pattern matches if it matches that string and nothing else
+     * Every occurrence of the string is then a match, so matches can be counted by searching
+     * for the string alone. Patterns made of literal chars and groups qualify; case folding,
+     * assertions and lookaround do not.
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     * @return The string, or null if the pattern is not a plain literal
+     */
+    static String exactLiteral(String pattern, int flags) {
+        RegexNode root = RegexParser.parse(pattern, flags);
+        StringBuilder literal = new StringBuilder();
+        if (root == null || !appendExactLiteral(root, literal) || literal.length() == 0) {
+            return null;
+        }
+        return literal.toString();
+    }
+
+    private static boolean appendExactLiteral(RegexNode node, StringBuilder literal) {
+        switch (node.kind) {
+            case CHAR_SET: {
+                int c = node.charSet.singleChar();
+                if (c < 0) {
+                    return false;
+                }
+                literal.appendCodePoint(c);
+                return true;
+            }
+            case EMPTY:
+            case GROUP:
+            case ATOMIC:
+            case CONCAT:
+                for (RegexNode child : node.children) {
+                    if (!appendExactLiteral(child, literal)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    String getNeedle() {
+        return needle;
+    }
+
+    boolean isFoldCase() {
+        return foldCase;
+    }
+
+    /**
+     * Gets the maximum number of chars before the literal inside a match, or RegexNode.UNBOUNDED
+     */
+    int getMaxPrefix() {
+        return maxPrefix;
+    }
+
+    /**
+     * Gets the earliest position a match can start, given the next occurrence of the literal
+     *
+     * @param literalPosition Position of the first occurrence of the literal at or after from
+     * @param from The position the next search would start at
+     * @return The position to start the matcher at
+     */
+    int candidateStart(int literalPosition, int from) {
+        if (maxPrefix == RegexNode.UNBOUNDED) {
+            return from;
+        }
+        return Math.max(from, literalPosition - maxPrefix);
+    }
+
+    /**
+     * Finds the next occurrence of the literal, folding ASCII case when required
+     */
+    int indexOf(CharSequence text, int from) {
+        int length = needle.length();
+        int limit = text.length() - length;
+
+        if (!foldCase && text instanceof String) {
+            return ((String) text).indexOf(needle, from);
+        }
+
+        char last = needle.charAt(length - 1);
+        int i = Math.max(from, 0);
+        while (i <= limit) {
+            char c = fold(text.charAt(i + length - 1));
+            if (c == last) {
+                int j = length - 2;
+                while (j >= 0 && fold(text.charAt(i + j)) == needle.charAt(j)) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[c & (TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        return foldCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Finds the best required literal of a node, or null if it has none
+     */
+    private static Candidate extract(RegexNode node) {
+        switch (node.kind) {
+            case CHAR_SET: {
+                int c = literalChar(node);
+                return c < 0 ? null : new Candidate(String.valueOf((char) c), node.charSet.isAsciiCasePair(), 0);
+            }
+            case GROUP:
+            case ATOMIC:
+                return extract(node.child());
+            case REPEAT:
+                // The first iteration starts where the repetition starts
+                return node.min >= 1 ? extract(node.child()) : null;
+            case CONCAT:
+                return extractFromConcat(node);
+            default:
+                return null;
+        }
+    }
+
+    private static Candidate extractFromConcat(RegexNode node) {
+        Candidate best = null;
+        StringBuilder run = new StringBuilder();
+        boolean runFoldCase = false;
+        int runPrefix = 0;
+        int prefix = 0;
+
+        for (RegexNode child : node.children) {
+            int c = literalChar(child);
+            if (c >= 0) {
+                if (run.length() == 0) {
+                    runPrefix = prefix;
+                }
+                run.append((char) c);
+                runFoldCase |= child.charSet.isAsciiCasePair();
+                prefix = addLength(prefix, 1);
+                continue;
+            }
+            if (child.isZeroWidth()) {
+                // Assertions consume nothing, so the literal run continues across them
+                continue;
+            }
+
+            if (run.length() > 0) {
+                best = better(best, new Candidate(run.toString(), runFoldCase, runPrefix));
+                run.setLength(0);
+                runFoldCase = false;
+            }
+
+            Candidate inner = extract(child);
+            if (inner != null) {
+                best = better(best, new Candidate(inner.literal, inner.foldCase, addLength(prefix, inner.prefix)));
+            }
+            prefix = addLength(prefix, child.maxLength());
+        }
+
+        if (run.length() > 0) {
+            best = better(best, new Candidate(run.toString(), runFoldCase, runPrefix));
+        }
+        return best;
+    }
+
+    /**
+     * Gets the char matched by a single-char node, lower-cased for ASCII case pairs, or -1
+     */
+    private static int literalChar(RegexNode node) {
+        if (node.kind != RegexNode.Kind.CHAR_SET) {
+            return -1;
+        }
+        int single = node.charSet.singleChar();
+        if (single >= 0) {
+            return single;
+        }
+        if (node.charSet.isAsciiCasePair()) {
+            return node.charSet.rangeStart(1);
+        }
+        return -1;
+    }
+
+    private static int addLength(int a, int b) {
+        if (a == RegexNode.UNBOUNDED || b == RegexNode.UNBOUNDED) {
+            return RegexNode.UNBOUNDED;
+        }
+        long sum = (long) a + b;
+        return sum > Integer.MAX_VALUE ? RegexNode.UNBOUNDED : (int) sum;
+    }
+
+    private static Candidate better(Candidate current, Candidate other) {
+        if (current == null) {
+            return other;
+        }
+        if (other.literal.length() != current.literal.length()) {
+            return other.literal.length() > current.literal.length() ? other : current;
+        }
+        if (other.prefix == RegexNode.UNBOUNDED) {
+            return current;
+        }
+        return current.prefix == RegexNode.UNBOUNDED || other.prefix < current.prefix ? other : current;
+    }
+
+    private static class Candidate {
+        final String literal;
+        final boolean foldCase;
+        final int prefix;
+
+        Candidate(String literal, boolean foldCase, int prefix) {
+            this.literal = literal;
+            this.foldCase = foldCase;
+            this.prefix = prefix;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Text of a file mapped into memory, read through CharSequence views instead of being copied onto the heap
+ * Ranges of the file are mapped with FileChannel.map. ISO-8859-1 text, and ASCII text in
+ * charsets that agree with ASCII such as UTF-8, is read straight from the mapped bytes, one byte
+ * per char. Other text is decoded the first time its view is read. Views keep every byte of
+ * the file as it is, including line endings and malformed input, which decodes to U+FFFD.
+ *
+ * One view covers at most MAX_VIEW_LENGTH bytes, because a CharSequence is indexed by int.
+ * Larger files are processed in ranges of whole lines; see splitAtLines. Views stay readable
+ * after the file is closed.
+ */
+public final class MappedTextFile implements Closeable {
+    /** Most bytes a single view can cover */
+    public static final long MAX_VIEW_LENGTH = Integer.MAX_VALUE;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final Charset charset;
+    private final boolean latin1;
+    private final boolean asciiCompatible;
+
+    private MappedTextFile(FileChannel channel, Charset charset) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.charset = charset;
+        this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        this.asciiCompatible = agreesWithAscii(charset);
+    }
+
+    /**
+     * Opens a file encoded in the platform default charset
+     *
+     * @param file The file to open
+     * @return The mapped file; close it when done
+     * @throws IOException If the file cannot be opened
+     */
+    public static MappedTextFile open(File file) throws IOException {
+        return open(file, Charset.defaultCharset());
+    }
+
+    /**
+     * Opens a file encoded in a given charset
+     *
+     * @param file The file to open
+     * @param charset The charset the file is encoded in
+     * @return The mapped file; close it when done
+     * @throws IOException If the file cannot be opened
+     */
+    public static MappedTextFile open(File file, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedTextFile(channel, charset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the size of the file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the text of the whole file
+     *
+     * @throws IOException If the file is larger than MAX_VIEW_LENGTH or cannot be mapped
+     */
+    public CharSequence getText() throws IOException {
+        return getText(0, size);
+    }
+
+    /**
+     * Gets the text of a byte range of the file
+     * The range should start and end between two chars, such as after a line feed; a char cut
+     * in half at either end decodes to U+FFFD.
+     *
+     * @param from Offset of the first byte
+     * @param to Offset after the last byte
+     * @return A view of the text
+     * @throws IOException If the range is larger than MAX_VIEW_LENGTH or cannot be mapped
+     */
+    public CharSequence getText(long from, long to) throws IOException {
+        ByteBuffer bytes = getBytes(from, to);
+        if (latin1 || (asciiCompatible && isAscii(bytes))) {
+            return new ByteText(bytes, 0, bytes.limit());
+        }
+        return new DecodedText(bytes, charset);
+    }
+
+    /**
+     * Maps a byte range of the file without decoding it
+     *
+     * @param from Offset of the first byte
+     * @param to Offset after the last byte
+     * @return The mapped bytes, from position 0
+     * @throws IOException If the range is larger than MAX_VIEW_LENGTH or cannot be mapped
+     */
+    ByteBuffer getBytes(long from, long to) throws IOException {
+        if (from < 0 || to < from || to > size) {
+            throw new IndexOutOfBoundsException("Range " + from + "-" + to + " outside file of size " + size);
+        }
+        if (to - from > MAX_VIEW_LENGTH) {
+            throw new IOException("Range of " + (to - from) + " bytes is too large for one text view");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    /**
+     * Splits the file into ranges of whole lines
+     * Every range but the last ends right after a line feed; the last one ends at the end of
+     * the file. A range is only longer than maxLength if a single line is.
+     *
+     * @param maxLength The most bytes a range should hold
+     * @return The range boundaries: range i covers the bytes from bounds[i] up to bounds[i + 1]
+     * @throws IOException If an I/O error occurs
+     */
+    public long[] splitAtLines(long maxLength) throws IOException {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Range length must be positive");
+        }
+        long[] bounds = new long[16];
+        int count = 1;
+        long start = 0;
+        while (size - start > maxLength) {
+            long end = lineEndBefore(start + maxLength, start);
+            if (end < 0) {
+                end = lineEndAfter(start + maxLength);
+            }
+            if (count + 1 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = end;
+            start = end;
+        }
+        if (start < size || count == 1) {
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count + 1);
+            }
+            bounds[count++] = size;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Gets the offset after the last line feed before a position, or -1 if there is none after a start
+     */
+    private long lineEndBefore(long position, long start) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long blockEnd = position;
+        while (blockEnd > start) {
+            long blockStart = Math.max(start, blockEnd - BLOCK_SIZE);
+            readFully(block, blockStart, (int) (blockEnd - blockStart));
+            for (int i = block.limit() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the offset after the first line feed at or after a position, or the file size if there is none
+     */
+    private long lineEndAfter(long position) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        ByteScanner scanner = ByteScanner.getDefault();
+        for (long blockStart = position; blockStart < size; blockStart += BLOCK_SIZE) {
+            int length = (int) Math.min(BLOCK_SIZE, size - blockStart);
+            readFully(block, blockStart, length);
+            int found = scanner.indexOf(block.array(), 0, length, (byte) '\n');
+            if (found >= 0) {
+                return blockStart + found + 1;
+            }
+        }
+        return size;
+    }
+
+    private void readFully(ByteBuffer block, long position, int length) throws IOException {
+        block.clear().limit(length);
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                throw new IOException("File shrank while being read");
+            }
+        }
+    }
+
+    /**
+     * Check whether all mapped bytes are ASCII
+     */
+    private static boolean isAscii(ByteBuffer bytes) {
+        ByteScanner scanner = ByteScanner.getDefault();
+        byte[] block = new byte[Math.min(BLOCK_SIZE, bytes.limit())];
+        for (int start = 0; start < bytes.limit(); start += block.length) {
+            int length = Math.min(block.length, bytes.limit() - start);
+            bytes.get(start, block, 0, length);
+            if (scanner.indexOfNonAscii(block, 0, length) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a charset encodes every ASCII char as the single byte of the same value
+     */
+    private static boolean agreesWithAscii(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            return true;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.charAt(i) != i) {
+                return false;
+            }
+        }
+        return charset.canEncode() && Arrays.equals(decoded.getBytes(charset), ascii);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedTextFile[" + size + " bytes, " + charset + "]";
+    }
+
+    /**
+     * Mapped bytes read as chars of the same value
+     */
+    private static final class ByteText implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        ByteText(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            Objects.checkIndex(index, length);
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length);
+            return new ByteText(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            bytes.get(offset, copy, 0, length);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Mapped bytes decoded on first use
+     */
+    private static final class DecodedText implements CharSequence {
+        private final ByteBuffer bytes;
+        private final Charset charset;
+        private volatile CharBuffer chars;
+
+        DecodedText(ByteBuffer bytes, Charset charset) {
+            this.bytes = bytes;
+            this.charset = charset;
+        }
+
+        private CharBuffer decoded() {
+            CharBuffer decoded = chars;
+            if (decoded == null) {
+                try {
+                    decoded = charset.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .decode(bytes.duplicate());
+                } catch (CharacterCodingException e) {
+                    // Not thrown when malformed input is replaced
+                    throw new UncheckedIOException(e);
+                }
+                chars = decoded;
+            }
+            return decoded;
+        }
+
+        @Override
+        public int length() {
+            return decoded().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return decoded().get(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return decoded().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return decoded().toString();
+        }
+    }
+}
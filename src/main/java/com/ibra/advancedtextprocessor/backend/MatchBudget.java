@@ -0,0 +1,91 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget and cancellation token for a matching operation
+ * A budget can be passed to the TextProcessor and FileProcessor operations; once its deadline
+ * has passed or cancel() was called, the running operation stops with a MatchTimeoutException.
+ * One budget can be shared by several operations, e.g. all files of a batch.
+ */
+public class MatchBudget {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final long deadline;
+    private final long timeoutMillis;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a budget without deadline that only ends when it is cancelled
+     */
+    public MatchBudget() {
+        this.deadline = NO_DEADLINE;
+        this.timeoutMillis = -1;
+    }
+
+    /**
+     * Creates a budget that runs out after the given time
+     *
+     * @param timeout The time allowed, starting now
+     * @param unit The unit of the timeout
+     */
+    public MatchBudget(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * Cancels every operation running with this budget
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Check whether the budget has run out or was cancelled
+     *
+     * @return True if operations using this budget should stop
+     */
+    public boolean isExhausted() {
+        return cancelled || (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Gets the timeout in milliseconds, or -1 if the budget has no deadline
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Throws a MatchTimeoutException without progress information if the budget is exhausted
+     *
+     * @throws MatchTimeoutException If the budget has run out or was cancelled
+     */
+    public void check() {
+        if (isExhausted()) {
+            throw exhausted(0, 0);
+        }
+    }
+
+    /**
+     * Creates the exception reporting that this budget ran out
+     *
+     * @param completedCount Number of results completed before the budget ran out
+     * @param processedLength Number of input chars completely processed
+     * @return The exception to throw
+     */
+    MatchTimeoutException exhausted(long completedCount, long processedLength) {
+        String message = cancelled
+                ? "Operation cancelled"
+                : "Operation exceeded its time budget of " + timeoutMillis + " ms";
+        return new MatchTimeoutException(message, cancelled, completedCount, processedLength);
+    }
+}
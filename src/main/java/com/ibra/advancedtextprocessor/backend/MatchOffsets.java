@@ -0,0 +1,86 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+import java.util.regex.MatchResult;
+
+/**
+ * Packed result set holding only the offsets of matches and their groups
+ * Each match occupies 2 * (groupCount + 1) consecutive ints in one array: the start and end of
+ * the whole match followed by the start and end of each group, -1 for groups that did not
+ * take part in the match.
+ */
+public class MatchOffsets {
+    private final int groupCount;
+    private final int stride;
+    private int[] data;
+    private int size;
+
+    /**
+     * Creates an empty result set
+     *
+     * @param groupCount Number of capturing groups recorded per match
+     */
+    public MatchOffsets(int groupCount) {
+        if (groupCount < 0) {
+            throw new IllegalArgumentException("Group count must not be negative");
+        }
+        this.groupCount = groupCount;
+        this.stride = 2 * (groupCount + 1);
+        this.data = new int[stride * 16];
+    }
+
+    void add(MatchResult match) {
+        if ((size + 1) * stride > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, (size + 1) * stride));
+        }
+        int base = size * stride;
+        for (int i = 0; i <= groupCount; i++) {
+            data[base + 2 * i] = match.start(i);
+            data[base + 2 * i + 1] = match.end(i);
+        }
+        size++;
+    }
+
+    /**
+     * Gets the number of matches
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public int getStart(int match) {
+        return getGroupStart(match, 0);
+    }
+
+    public int getEnd(int match) {
+        return getGroupEnd(match, 0);
+    }
+
+    public int getGroupStart(int match, int group) {
+        return data[index(match, group)];
+    }
+
+    public int getGroupEnd(int match, int group) {
+        return data[index(match, group) + 1];
+    }
+
+    /**
+     * Gets a copy of the packed offsets, 2 * (groupCount + 1) ints per match
+     *
+     * @return The packed offsets
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size * stride);
+    }
+
+    private int index(int match, int group) {
+        if (match < 0 || match >= size || group < 0 || group > groupCount) {
+            throw new IndexOutOfBoundsException("Match " + match + ", group " + group);
+        }
+        return match * stride + 2 * group;
+    }
+}
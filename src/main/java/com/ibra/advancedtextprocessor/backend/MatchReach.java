@@ -0,0 +1,201 @@
+package com.ibra.advancedtextprocessor.backend;
+
+/**
+ * How far around its start position a match attempt of a pattern may read
+ * Used to decide which part of a text can change the matches when only a window of it is
+ * looked at, either because the text is streamed or because only part of it was edited.
+ */
+final class MatchReach {
+    /** Chars kept before the search position for patterns the analyzer cannot bound */
+    static final int DEFAULT_CONTEXT = 1024;
+
+    /** Chars assertions such as $ and \b look at after the last char of a match */
+    static final int ASSERTION_LOOKAHEAD = 2;
+
+    /** Chars an attempt may read before its start position, for lookbehind and \b */
+    final int context;
+
+    /** Chars an attempt may read from its start position, or RegexNode.UNBOUNDED */
+    final int reach;
+
+    /** True if no attempt reads past a line feed, apart from assertions peeking after it */
+    final boolean lineBounded;
+
+    /** True if the pattern uses \G, whose position moves whenever the matcher is reset */
+    final boolean usesLastMatchEnd;
+
+    /**
+     * True if a line has a match on its own only where searching it among the lines around it
+     * finds one: no attempt reads a \n or \r, and the assertions used see a line terminator
+     * next to a line the way they see the start or end of the line alone
+     */
+    final boolean lineLocal;
+
+    private MatchReach(int context, int reach, boolean lineBounded, boolean usesLastMatchEnd, boolean lineLocal) {
+        this.context = context;
+        this.reach = reach;
+        this.lineBounded = lineBounded;
+        this.usesLastMatchEnd = usesLastMatchEnd;
+        this.lineLocal = lineLocal;
+    }
+
+    /**
+     * Analyzes a pattern; patterns RegexParser does not understand get the most cautious bounds
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     */
+    static MatchReach of(String pattern, int flags) {
+        RegexNode root = RegexParser.parse(pattern, flags);
+        if (root == null) {
+            return new MatchReach(DEFAULT_CONTEXT, RegexNode.UNBOUNDED, false, pattern.contains("\\G"), false);
+        }
+
+        int lookbehind = lookaroundLength(root, false);
+        int lookahead = lookaroundLength(root, true);
+        int maxLength = root.maxLength();
+        int context = lookbehind == RegexNode.UNBOUNDED ? DEFAULT_CONTEXT : lookbehind + 1;
+        int reach = maxLength == RegexNode.UNBOUNDED || lookahead == RegexNode.UNBOUNDED
+                ? RegexNode.UNBOUNDED
+                : maxLength + lookahead + ASSERTION_LOOKAHEAD;
+        return new MatchReach(context, reach, !matchesLineFeed(root), usesLastMatchEnd(root), isLineLocal(root));
+    }
+
+    boolean isBounded() {
+        return reach != RegexNode.UNBOUNDED;
+    }
+
+    /**
+     * Gets the first position whose attempt may read text at or after the given offset
+     * Attempts at earlier positions only read text before the offset, so they give the same
+     * result whatever follows it. Returns 0 if no attempt can be ruled out.
+     *
+     * @param text The text; only the part before the offset is looked at
+     * @param offset The first position that may differ
+     */
+    int firstAffectedStart(CharSequence text, int offset) {
+        if (reach != RegexNode.UNBOUNDED) {
+            return Math.max(0, offset - reach);
+        }
+        if (lineBounded) {
+            // An attempt stops at the first line feed from its start
+            for (int i = Math.min(offset, text.length()) - 1 - ASSERTION_LOOKAHEAD; i >= 0; i--) {
+                if (text.charAt(i) == '\n') {
+                    return i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Check whether an attempt at a position reads nothing before the given offset
+     *
+     * @param text The text; only the part between the offset and the position is looked at
+     * @param position The start position of the attempt
+     * @param offset The first position that reads the same text again
+     */
+    boolean readsNothingBefore(CharSequence text, int position, int offset) {
+        if (position - context >= offset) {
+            return true;
+        }
+        if (lineBounded) {
+            // Lookbehind and \b stop at the last line feed before the position
+            for (int i = position - 1; i >= offset; i--) {
+                if (text.charAt(i) == '\n') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sums the maximum lengths of all lookahead or all lookbehind groups in a pattern
+     */
+    private static int lookaroundLength(RegexNode node, boolean lookahead) {
+        long total = 0;
+        if (node.kind == RegexNode.Kind.LOOKAROUND && node.lookahead == lookahead) {
+            int length = node.child().maxLength();
+            if (length == RegexNode.UNBOUNDED) {
+                return RegexNode.UNBOUNDED;
+            }
+            total += length;
+        }
+        for (RegexNode child : node.children) {
+            int length = lookaroundLength(child, lookahead);
+            if (length == RegexNode.UNBOUNDED) {
+                return RegexNode.UNBOUNDED;
+            }
+            total += length;
+        }
+        return total > Integer.MAX_VALUE / 2 ? RegexNode.UNBOUNDED : (int) total;
+    }
+
+    /**
+     * Returns true if any char set of the pattern, including those in lookaround, contains a line feed
+     */
+    private static boolean matchesLineFeed(RegexNode node) {
+        if (node.kind == RegexNode.Kind.CHAR_SET && node.charSet.contains('\n')) {
+            return true;
+        }
+        for (RegexNode child : node.children) {
+            if (matchesLineFeed(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if no char set of the pattern contains \n or \r and it has no lookaround and
+     * no assertion other than \b, \B and the line anchors of MULTILINE without UNIX_LINES
+     */
+    private static boolean isLineLocal(RegexNode node) {
+        switch (node.kind) {
+            case CHAR_SET:
+                if (node.charSet.contains('\n') || node.charSet.contains('\r')) {
+                    return false;
+                }
+                break;
+            case LOOKAROUND:
+                return false;
+            case ASSERTION:
+                switch (node.assertion) {
+                    case LINE_START:
+                    case LINE_END:
+                        // With UNIX_LINES a lone \r ends a line for the reader but not for the anchors
+                        if (node.unixLines) {
+                            return false;
+                        }
+                        break;
+                    case WORD_BOUNDARY:
+                    case NON_WORD_BOUNDARY:
+                        break;
+                    default:
+                        return false;
+                }
+                break;
+            default:
+                break;
+        }
+        for (RegexNode child : node.children) {
+            if (!isLineLocal(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean usesLastMatchEnd(RegexNode node) {
+        if (node.kind == RegexNode.Kind.ASSERTION && node.assertion == RegexNode.Assertion.LAST_MATCH_END) {
+            return true;
+        }
+        for (RegexNode child : node.children) {
+            if (usesLastMatchEnd(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
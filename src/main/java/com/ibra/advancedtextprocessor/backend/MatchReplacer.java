@@ -0,0 +1,21 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.IOException;
+import java.util.regex.MatchResult;
+
+/**
+ * Computes the replacement for a match and writes it straight into the output
+ * Used for replacements a replacement string cannot express, such as hashing an email address
+ * or masking all but the last four digits of a number.
+ */
+@FunctionalInterface
+public interface MatchReplacer {
+    /**
+     * Appends the replacement for a match
+     *
+     * @param match The match to replace; it is only valid during the call
+     * @param out The output to append the replacement to
+     * @throws IOException If the output cannot be written
+     */
+    void appendReplacement(MatchResult match, Appendable out) throws IOException;
+}
@@ -0,0 +1,227 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a Matcher through a text the same way repeated Matcher.find() calls would
+ * When the pattern has a required literal and the prefilter is enabled, the regex engine
+ * is restarted at the earliest position a match can start instead of walking every position.
+ * When the pattern is in the subset the lazy DFA supports and the DFA engine is enabled, the
+ * DFA finds the match bounds in linear time and the Matcher is only run inside those bounds
+ * when the groups of a match are asked for.
+ */
+final class MatchScanner implements MatchResult {
+    private final Matcher matcher;
+    private final CharSequence text;
+    private final LiteralPrefilter prefilter;
+    private LazyDfa dfa;
+    private final int regionEnd;
+    private int nextFrom;
+    private int matchStart = -1;
+    private int matchEnd = -1;
+    private boolean matcherSynced = true;
+    private int lastEnd;
+    private int literalPosition = -1;
+    private boolean exhausted;
+    private boolean repositioned;
+
+    private MatchScanner(Matcher matcher, CharSequence text, LiteralPrefilter prefilter, LazyDfa dfa,
+                         int from, int to) {
+        this.matcher = matcher;
+        this.text = text;
+        this.prefilter = prefilter;
+        this.dfa = dfa;
+        this.regionEnd = to;
+        this.nextFrom = from;
+    }
+
+    /**
+     * Creates a scanner for a pattern over a text
+     *
+     * @param pattern The compiled pattern
+     * @param text The text to scan
+     * @return The scanner, using the literal prefilter and the DFA when they are enabled and applicable
+     */
+    static MatchScanner of(Pattern pattern, CharSequence text) {
+        return of(pattern, text, 0, text.length());
+    }
+
+    /**
+     * Creates a scanner that only searches the region [from, to) of a text
+     * The region has transparent, non-anchoring bounds: lookaround, word boundaries and
+     * line anchors see the chars outside it, so every match found is one the whole-text
+     * scan would find when started at the same position, as long as it fits the region.
+     *
+     * @param pattern The compiled pattern
+     * @param text The text to scan
+     * @param from Start of the region
+     * @param to End of the region
+     * @return The scanner
+     */
+    static MatchScanner of(Pattern pattern, CharSequence text, int from, int to) {
+        LiteralPrefilter prefilter = TextProcessor.isLiteralPrefilterEnabled()
+                ? PatternCache.getShared().prefilterFor(pattern)
+                : null;
+        LazyDfa dfa = TextProcessor.isDfaEngineEnabled()
+                ? PatternCache.getShared().dfaFor(pattern)
+                : null;
+        Matcher matcher = pattern.matcher(text)
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false)
+                .region(from, to);
+        return new MatchScanner(matcher, text, prefilter, dfa, from, to);
+    }
+
+    /**
+     * Finds the next match, with the same results as Matcher.find()
+     *
+     * @return true if a match was found; its details are available through the MatchResult methods
+     */
+    boolean find() {
+        if (prefilter == null && dfa == null && !repositioned) {
+            if (!matcher.find()) {
+                exhausted = true;
+                return false;
+            }
+            return advance(matcher.start(), matcher.end());
+        }
+        if (exhausted || nextFrom > regionEnd) {
+            return false;
+        }
+
+        int candidate = nextFrom;
+        if (prefilter != null) {
+            // The last literal occurrence found is reused until the search moves past it
+            if (literalPosition < nextFrom) {
+                literalPosition = prefilter.indexOf(text, nextFrom);
+                if (literalPosition < 0) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            candidate = prefilter.candidateStart(literalPosition, nextFrom);
+            if (candidate > regionEnd) {
+                exhausted = true;
+                return false;
+            }
+        }
+
+        if (dfa != null) {
+            long found = dfa.find(text, candidate, regionEnd);
+            if (found == LazyDfa.NO_MATCH) {
+                exhausted = true;
+                return false;
+            }
+            if (found != LazyDfa.GIVE_UP) {
+                matcherSynced = false;
+                return advance((int) (found >>> 32), (int) found);
+            }
+            // The text contains chars only java.util.regex handles correctly
+            dfa = null;
+        }
+
+        if (!matcher.region(candidate, regionEnd).find()) {
+            exhausted = true;
+            return false;
+        }
+        matcherSynced = true;
+        return advance(matcher.start(), matcher.end());
+    }
+
+    private boolean advance(int start, int end) {
+        matchStart = start;
+        matchEnd = end;
+        lastEnd = end;
+        // Matcher.find() never returns the same empty match twice
+        nextFrom = end == start ? end + 1 : end;
+        return true;
+    }
+
+    /**
+     * Makes the next search start at a later position, skipping matches that would start before it
+     * The search then behaves like Matcher.find(int) within the region, so \G matches at the new position.
+     *
+     * @param position The position the next search starts at, at the earliest
+     */
+    void skipTo(int position) {
+        if (position > nextFrom) {
+            nextFrom = position;
+            repositioned = true;
+        }
+    }
+
+    /**
+     * Gets the position the next search starts at, at the earliest
+     */
+    int nextFrom() {
+        return nextFrom;
+    }
+
+    /**
+     * Gets the end of the last match found, up to which the text has been completely scanned
+     */
+    int lastEnd() {
+        return lastEnd;
+    }
+
+    /**
+     * Gets the underlying matcher holding the state of the last match
+     * After a DFA match the matcher is run once, anchored to the match bounds, to find the groups.
+     */
+    Matcher matcher() {
+        if (!matcherSynced) {
+            // Backtracking from the match start takes the path find() took there
+            if (!matcher.region(matchStart, regionEnd).lookingAt() || matcher.end() != matchEnd) {
+                throw new IllegalStateException("DFA match " + matchStart + "-" + matchEnd
+                        + " is not a match of " + matcher.pattern());
+            }
+            matcherSynced = true;
+        }
+        return matcher;
+    }
+
+    @Override
+    public int start() {
+        checkMatch();
+        return matchStart;
+    }
+
+    @Override
+    public int start(int group) {
+        return group == 0 ? start() : matcher().start(group);
+    }
+
+    @Override
+    public int end() {
+        checkMatch();
+        return matchEnd;
+    }
+
+    @Override
+    public int end(int group) {
+        return group == 0 ? end() : matcher().end(group);
+    }
+
+    @Override
+    public String group() {
+        return text.subSequence(start(), end()).toString();
+    }
+
+    @Override
+    public String group(int group) {
+        return group == 0 ? group() : matcher().group(group);
+    }
+
+    @Override
+    public int groupCount() {
+        return matcher.groupCount();
+    }
+
+    private void checkMatch() {
+        if (matchStart < 0) {
+            throw new IllegalStateException("No match available");
+        }
+    }
+}
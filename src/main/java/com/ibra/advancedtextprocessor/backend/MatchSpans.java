@@ -0,0 +1,87 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Arrays;
+
+/**
+ * Packed list of match spans for rendering highlights over an unchanged text
+ * Each span occupies three consecutive ints in one array: its start offset, its length and the
+ * id of the pattern that produced it. Spans are ordered by start offset; spans of different
+ * patterns may overlap.
+ */
+public class MatchSpans {
+    private static final int STRIDE = 3;
+
+    private int[] data;
+    private int size;
+
+    /**
+     * Creates an empty span list
+     */
+    public MatchSpans() {
+        this.data = new int[STRIDE * 16];
+    }
+
+    /**
+     * Creates a span list from packed (start, length, pattern id) triples
+     *
+     * @param packed The packed spans, ordered by start offset
+     */
+    public MatchSpans(int[] packed) {
+        if (packed == null || packed.length % STRIDE != 0) {
+            throw new IllegalArgumentException("Spans must be packed as (start, length, pattern id) triples");
+        }
+        this.data = packed.clone();
+        this.size = packed.length / STRIDE;
+    }
+
+    void add(int start, int end, int patternId) {
+        if ((size + 1) * STRIDE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        int base = size * STRIDE;
+        data[base] = start;
+        data[base + 1] = end - start;
+        data[base + 2] = patternId;
+        size++;
+    }
+
+    /**
+     * Gets the number of spans
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int span) {
+        return data[index(span)];
+    }
+
+    public int getLength(int span) {
+        return data[index(span) + 1];
+    }
+
+    public int getEnd(int span) {
+        int base = index(span);
+        return data[base] + data[base + 1];
+    }
+
+    public int getPatternId(int span) {
+        return data[index(span) + 2];
+    }
+
+    /**
+     * Gets a copy of the packed spans, three ints per span
+     *
+     * @return The packed (start, length, pattern id) triples
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size * STRIDE);
+    }
+
+    private int index(int span) {
+        if (span < 0 || span >= size) {
+            throw new IndexOutOfBoundsException("Span " + span);
+        }
+        return span * STRIDE;
+    }
+}
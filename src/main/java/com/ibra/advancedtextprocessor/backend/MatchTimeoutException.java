@@ -0,0 +1,56 @@
+package com.ibra.advancedtextprocessor.backend;
+
+/**
+ * Thrown when an operation runs out of its MatchBudget or the budget is cancelled
+ * The exception records how far the operation got: the number of completed results (matches,
+ * matching lines, files or replacements, depending on the operation) and the number of input
+ * chars that were completely processed before it stopped.
+ */
+public class MatchTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean cancelled;
+    private final long completedCount;
+    private final long processedLength;
+
+    public MatchTimeoutException(String message, boolean cancelled, long completedCount, long processedLength) {
+        super(message);
+        this.cancelled = cancelled;
+        this.completedCount = completedCount;
+        this.processedLength = processedLength;
+    }
+
+    /**
+     * Check whether the operation stopped because its budget was cancelled rather than timing out
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the number of results the operation completed before it stopped
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Gets the number of input chars the operation completely processed before it stopped
+     */
+    public long getProcessedLength() {
+        return processedLength;
+    }
+
+    /**
+     * Creates a copy of this exception with the progress of the operation that was interrupted
+     *
+     * @param completedCount Number of results completed before the budget ran out
+     * @param processedLength Number of input chars completely processed
+     * @return The exception carrying the given progress
+     */
+    public MatchTimeoutException withProgress(long completedCount, long processedLength) {
+        MatchTimeoutException copy = new MatchTimeoutException(getMessage(), cancelled, completedCount, processedLength);
+        copy.setStackTrace(getStackTrace());
+        return copy;
+    }
+}
@@ -0,0 +1,470 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches a whole set of PatternEntry objects against a text
+ * Pure literal entries are matched together by one Aho-Corasick pass per case mode. The regex
+ * entries the lazy DFA supports are run together by one pattern set DFA pass, which reports
+ * where matches of each entry end; only around those ends does the entry's own MatchScanner
+ * resolve the match Matcher.find() returns. Entries outside the DFA subset, such as those with
+ * backreferences, scan the text on their own. Per entry, the reported matches are exactly those
+ * TextProcessor.findMatches would return.
+ */
+public class MultiPatternMatcher {
+    private final List<PatternEntry> entries = new ArrayList<>();
+    private final List<String> invalidPatterns = new ArrayList<>();
+    private final List<RegexSlot> regexSlots = new ArrayList<>();
+    private final List<RegexSlot> separateSlots = new ArrayList<>();
+    private final List<PatternSet> patternSets = new ArrayList<>();
+    private final AhoCorasick caseSensitiveLiterals;
+    private final AhoCorasick caseInsensitiveLiterals;
+
+    /**
+     * Creates a matcher for the given pattern entries
+     * Entries whose pattern does not compile are skipped and reported by getInvalidPatterns()
+     *
+     * @param patternEntries The entries to match, in priority order
+     */
+    public MultiPatternMatcher(List<PatternEntry> patternEntries) {
+        List<String> sensitiveWords = new ArrayList<>();
+        List<Integer> sensitiveIds = new ArrayList<>();
+        List<String> insensitiveWords = new ArrayList<>();
+        List<Integer> insensitiveIds = new ArrayList<>();
+
+        for (PatternEntry entry : patternEntries) {
+            if (entry == null || entry.getPattern() == null || entry.getPattern().isEmpty()) {
+                continue;
+            }
+
+            Pattern compiled;
+            try {
+                compiled = PatternCache.getShared().compile(entry.getPattern(), entry.getFlags());
+            } catch (PatternSyntaxException e) {
+                invalidPatterns.add(entry.getName());
+                continue;
+            }
+
+            int id = entries.size();
+            entries.add(entry);
+
+            String literal = toLiteral(entry.getPattern());
+            if (literal == null) {
+                regexSlots.add(new RegexSlot(id, compiled, entry.getFlags()));
+            } else if (entry.isCaseInsensitive()) {
+                insensitiveWords.add(literal);
+                insensitiveIds.add(id);
+            } else {
+                sensitiveWords.add(literal);
+                sensitiveIds.add(id);
+            }
+        }
+
+        groupPatternSets();
+
+        caseSensitiveLiterals = sensitiveWords.isEmpty()
+                ? null : new AhoCorasick(sensitiveWords, sensitiveIds, false);
+        caseInsensitiveLiterals = insensitiveWords.isEmpty()
+                ? null : new AhoCorasick(insensitiveWords, insensitiveIds, true);
+    }
+
+    /**
+     * Puts the regex entries the DFA supports into pattern sets of at most MAX_SET_SIZE entries
+     */
+    private void groupPatternSets() {
+        List<RegexSlot> supported = new ArrayList<>();
+        for (RegexSlot slot : regexSlots) {
+            if (slot.dfa != null) {
+                supported.add(slot);
+            } else {
+                separateSlots.add(slot);
+            }
+        }
+
+        for (int from = 0; from < supported.size(); from += LazyDfa.MAX_SET_SIZE) {
+            List<RegexSlot> slots = supported.subList(from, Math.min(supported.size(), from + LazyDfa.MAX_SET_SIZE));
+            String[] patterns = new String[slots.size()];
+            int[] flags = new int[slots.size()];
+            for (int i = 0; i < slots.size(); i++) {
+                patterns[i] = slots.get(i).pattern.pattern();
+                flags[i] = slots.get(i).flags;
+            }
+            LazyDfa dfa = slots.size() > 1 ? LazyDfa.forPatterns(patterns, flags) : null;
+            if (dfa == null) {
+                // A single entry or too large a combined program gains nothing over its own scan
+                separateSlots.addAll(slots);
+            } else {
+                patternSets.add(new PatternSet(slots.toArray(new RegexSlot[0]), dfa));
+            }
+        }
+    }
+
+    /**
+     * Gets the entries that take part in matching, in the order used for pattern ids
+     *
+     * @return List of valid pattern entries
+     */
+    public List<PatternEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Gets the names of entries that were skipped because their pattern is invalid
+     *
+     * @return List of invalid pattern names
+     */
+    public List<String> getInvalidPatterns() {
+        return Collections.unmodifiableList(invalidPatterns);
+    }
+
+    /**
+     * Finds the matches of all entries, ordered by start position and then by entry order
+     *
+     * @param text The text to search in
+     * @return List of matches tagged with the entry they belong to
+     */
+    public List<MultiMatch> findAll(CharSequence text) {
+        List<MultiMatch> matches = new ArrayList<>();
+        if (text == null || text.length() == 0 || entries.isEmpty()) {
+            return matches;
+        }
+
+        if (caseSensitiveLiterals != null) {
+            caseSensitiveLiterals.scan(text, matches);
+        }
+        if (caseInsensitiveLiterals != null) {
+            caseInsensitiveLiterals.scan(text, matches);
+        }
+        if (TextProcessor.isDfaEngineEnabled()) {
+            for (PatternSet set : patternSets) {
+                set.scan(text, matches);
+            }
+            scanRegexEntries(text, separateSlots, matches);
+        } else {
+            scanRegexEntries(text, regexSlots, matches);
+        }
+
+        matches.sort((a, b) -> a.start != b.start
+                ? Integer.compare(a.start, b.start)
+                : Integer.compare(a.patternIndex, b.patternIndex));
+        return matches;
+    }
+
+    /**
+     * Finds the matches of all entries as spans whose pattern id is the entry index
+     *
+     * @param text The text to search in
+     * @return The match spans ordered by start offset, then by entry index
+     */
+    public MatchSpans findSpans(CharSequence text) {
+        MatchSpans spans = new MatchSpans();
+        for (MultiMatch match : findAll(text)) {
+            spans.add(match.start, match.end, match.patternIndex);
+        }
+        return spans;
+    }
+
+    /**
+     * Finds the matches of all entries and groups the matched strings by entry name
+     *
+     * @param text The text to search in
+     * @return Map of pattern names to their match lists, in entry order
+     */
+    public Map<String, List<String>> findAllByPattern(CharSequence text) {
+        Map<String, List<String>> results = new LinkedHashMap<>();
+        for (PatternEntry entry : entries) {
+            results.put(entry.getName(), new ArrayList<>());
+        }
+
+        for (MultiMatch match : findAll(text)) {
+            results.get(entries.get(match.patternIndex).getName())
+                    .add(text.subSequence(match.start, match.end).toString());
+        }
+        return results;
+    }
+
+    /**
+     * Scans the text once per regex entry; findAll orders the matches afterwards
+     */
+    private void scanRegexEntries(CharSequence text, List<RegexSlot> slots, List<MultiMatch> matches) {
+        for (RegexSlot slot : slots) {
+            MatchScanner scanner = MatchScanner.of(slot.pattern, text);
+            while (scanner.find()) {
+                addMatch(slot, scanner, matches);
+            }
+        }
+    }
+
+    private void addMatch(RegexSlot slot, MatchScanner scanner, List<MultiMatch> matches) {
+        matches.add(new MultiMatch(slot.patternIndex, entries.get(slot.patternIndex).getName(),
+                scanner.start(), scanner.end()));
+    }
+
+    /**
+     * Returns the literal text of a pattern that contains no regex operators, or null otherwise
+     */
+    static String toLiteral(String pattern) {
+        StringBuilder literal = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= pattern.length()) {
+                    return null;
+                }
+                char escaped = pattern.charAt(++i);
+                // Escaped letters and digits are classes, anchors or back references
+                if (Character.isLetterOrDigit(escaped)) {
+                    return null;
+                }
+                literal.append(escaped);
+            } else if ("^$.|?*+()[]{}".indexOf(c) >= 0 || Character.isSurrogate(c)) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.length() == 0 ? null : literal.toString();
+    }
+
+    /**
+     * Class to store a match together with the entry it belongs to
+     */
+    public static class MultiMatch {
+        private final int patternIndex;
+        private final String patternName;
+        private final int start;
+        private final int end;
+
+        public MultiMatch(int patternIndex, String patternName, int start, int end) {
+            this.patternIndex = patternIndex;
+            this.patternName = patternName;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getPatternIndex() {
+            return patternIndex;
+        }
+
+        public String getPatternName() {
+            return patternName;
+        }
+
+        public int getStartPosition() {
+            return start;
+        }
+
+        public int getEndPosition() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return patternName + ", pos: " + start + "-" + end;
+        }
+    }
+
+    private static class RegexSlot {
+        final int patternIndex;
+        final Pattern pattern;
+        final int flags;
+        final LazyDfa dfa;
+
+        RegexSlot(int patternIndex, Pattern pattern, int flags) {
+            this.patternIndex = patternIndex;
+            this.pattern = pattern;
+            this.flags = flags;
+            this.dfa = PatternCache.getShared().dfaFor(pattern);
+        }
+    }
+
+    /**
+     * Regex entries run together by one pattern set DFA
+     */
+    private class PatternSet {
+        private final RegexSlot[] slots;
+        private final LazyDfa dfa;
+
+        PatternSet(RegexSlot[] slots, LazyDfa dfa) {
+            this.slots = slots;
+            this.dfa = dfa;
+        }
+
+        /**
+         * Scans the text once for all entries of the set
+         * At every match end the set DFA reports for an entry, the entry's reverse DFA checks
+         * whether a match ending there starts where the entry's next Matcher.find() may begin.
+         * If so, the entry's scanner finds that match, starting no earlier than the report says
+         * a match can start, so it never scans the text since its last match again.
+         */
+        void scan(CharSequence text, List<MultiMatch> matches) {
+            MatchScanner[] scanners = new MatchScanner[slots.length];
+            boolean[] exhausted = new boolean[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                scanners[i] = MatchScanner.of(slots[i].pattern, text);
+            }
+
+            boolean completed = dfa.findMatchEnds(text, (pattern, end, startsFrom) -> {
+                MatchScanner scanner = scanners[pattern];
+                while (!exhausted[pattern]) {
+                    int from = Math.max(scanner.nextFrom(), startsFrom);
+                    if (from > end || slots[pattern].dfa.findStart(text, from, end) == LazyDfa.NO_MATCH) {
+                        return;
+                    }
+                    scanner.skipTo(from);
+                    if (!scanner.find()) {
+                        exhausted[pattern] = true;
+                        return;
+                    }
+                    addMatch(slots[pattern], scanner, matches);
+                }
+            });
+
+            if (!completed) {
+                // The text has chars only java.util.regex handles; the scanners go on by themselves
+                for (int i = 0; i < slots.length; i++) {
+                    while (!exhausted[i] && scanners[i].find()) {
+                        addMatch(slots[i], scanners[i], matches);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over chars with a dense transition table for ASCII input
+     * Case folding follows Pattern.CASE_INSENSITIVE, which only folds ASCII letters.
+     */
+    private class AhoCorasick {
+        private static final int ASCII = 128;
+
+        private final boolean foldCase;
+        private final int[][] asciiNext;
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final int[] fail;
+        private final int[][] outputs;
+        private final int[] wordLengths;
+        private final int[] wordPatterns;
+
+        AhoCorasick(List<String> words, List<Integer> patternIds, boolean foldCase) {
+            this.foldCase = foldCase;
+            this.wordLengths = new int[words.size()];
+            this.wordPatterns = new int[words.size()];
+
+            List<List<Integer>> nodeOutputs = new ArrayList<>();
+            children.add(new HashMap<>());
+            nodeOutputs.add(new ArrayList<>());
+
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                wordLengths[w] = word.length();
+                wordPatterns[w] = patternIds.get(w);
+
+                int node = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = fold(word.charAt(i));
+                    Integer next = children.get(node).get(c);
+                    if (next == null) {
+                        next = children.size();
+                        children.add(new HashMap<>());
+                        nodeOutputs.add(new ArrayList<>());
+                        children.get(node).put(c, next);
+                    }
+                    node = next;
+                }
+                nodeOutputs.get(node).add(w);
+            }
+
+            int nodeCount = children.size();
+            fail = new int[nodeCount];
+            asciiNext = new int[nodeCount][ASCII];
+
+            // Breadth-first construction of failure links and the ASCII transition table
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ASCII; c++) {
+                Integer child = children.get(0).get((char) c);
+                asciiNext[0][c] = child == null ? 0 : child;
+                if (child != null) {
+                    queue.add(child);
+                }
+            }
+            for (Map.Entry<Character, Integer> edge : children.get(0).entrySet()) {
+                if (edge.getKey() >= ASCII) {
+                    queue.add(edge.getValue());
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                nodeOutputs.get(node).addAll(nodeOutputs.get(fail[node]));
+
+                for (int c = 0; c < ASCII; c++) {
+                    Integer child = children.get(node).get((char) c);
+                    if (child == null) {
+                        asciiNext[node][c] = asciiNext[fail[node]][c];
+                    } else {
+                        asciiNext[node][c] = child;
+                    }
+                }
+                for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                    int child = edge.getValue();
+                    fail[child] = step(fail[node], edge.getKey());
+                    queue.add(child);
+                }
+            }
+
+            outputs = new int[nodeCount][];
+            for (int i = 0; i < nodeCount; i++) {
+                outputs[i] = nodeOutputs.get(i).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        void scan(CharSequence text, List<MultiMatch> matches) {
+            // Matcher.find semantics: matches of the same entry never overlap
+            int[] nextAllowedStart = new int[entries.size()];
+            int node = 0;
+
+            for (int i = 0; i < text.length(); i++) {
+                node = step(node, fold(text.charAt(i)));
+                int[] found = outputs[node];
+                for (int w : found) {
+                    int start = i + 1 - wordLengths[w];
+                    int pattern = wordPatterns[w];
+                    if (start >= nextAllowedStart[pattern]) {
+                        nextAllowedStart[pattern] = i + 1;
+                        matches.add(new MultiMatch(pattern, entries.get(pattern).getName(), start, i + 1));
+                    }
+                }
+            }
+        }
+
+        private int step(int node, char c) {
+            if (c < ASCII) {
+                return asciiNext[node][c];
+            }
+            while (true) {
+                Integer next = children.get(node).get(c);
+                if (next != null) {
+                    return next;
+                }
+                if (node == 0) {
+                    return 0;
+                }
+                node = fail[node];
+            }
+        }
+
+        private char fold(char c) {
+            return foldCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+}
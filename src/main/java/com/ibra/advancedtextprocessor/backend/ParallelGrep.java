@@ -0,0 +1,597 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parallel version of FileProcessor.grepFiles and FileProcessor.filterFileByLinePattern
+ * The files are cut into units of work: small files are one unit each, and files larger than
+ * the range length are split into byte ranges of whole lines that are read from memory-mapped
+ * buffers. Units are read and scanned on an executor, at most parallelism of them at a time,
+ * and their matching lines are written in file and line order, exactly as the sequential
+ * methods return them. The first unit not completely written yet writes its lines straight to
+ * the output; the units after it collect theirs in buffers that are written and released in
+ * order as the units before them finish. Line numbers in a range count from its start until
+ * its turn comes, when the line counts of the ranges before it are known and added. Together
+ * the buffers hold about maxPendingLength chars at most, or bytes when the lines go to a channel:
+ * a unit that would grow them beyond it waits until earlier buffers are released or its own turn
+ * to write comes.
+ *
+ * The calling thread scans the unit whose turn it is itself when no worker has started it yet,
+ * so a grep always finishes, even on an executor whose threads are all busy. Files are only
+ * split in charsets whose line ends can be found in the encoded bytes, see LineReader.
+ */
+public class ParallelGrep {
+    public static final long DEFAULT_MAX_PENDING_LENGTH = 32L << 20;
+    public static final long DEFAULT_RANGE_LENGTH = 32L << 20;
+
+    /** Chars a buffer grows by before they are counted against the limit */
+    private static final int RESERVE_LENGTH = 8192;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final long maxPendingLength;
+    private final long rangeLength;
+
+    /**
+     * Creates a parallel grep on the common pool, with one unit per processor in flight
+     */
+    public ParallelGrep() {
+        this(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PENDING_LENGTH);
+    }
+
+    /**
+     * Creates a parallel grep that splits files into ranges of the default length
+     *
+     * @param executor The executor to scan the units on
+     * @param parallelism Most units scanned at the same time
+     * @param maxPendingLength Most chars of results held in buffers while waiting to be written
+     */
+    public ParallelGrep(Executor executor, int parallelism, long maxPendingLength) {
+        this(executor, parallelism, maxPendingLength, DEFAULT_RANGE_LENGTH);
+    }
+
+    /**
+     * Creates a parallel grep
+     *
+     * @param executor The executor to scan the units on
+     * @param parallelism Most units scanned at the same time
+     * @param maxPendingLength Most chars of results held in buffers while waiting to be written
+     * @param rangeLength Most bytes of a file scanned as one unit, unless a single line is longer
+     */
+    public ParallelGrep(Executor executor, int parallelism, long maxPendingLength, long rangeLength) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (maxPendingLength < 0) {
+            throw new IllegalArgumentException("Pending length must not be negative");
+        }
+        if (rangeLength < 1 || rangeLength > MappedTextFile.MAX_VIEW_LENGTH) {
+            throw new IllegalArgumentException("Range length must be between 1 and " + MappedTextFile.MAX_VIEW_LENGTH);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxPendingLength = maxPendingLength;
+        this.rangeLength = rangeLength;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getMaxPendingLength() {
+        return maxPendingLength;
+    }
+
+    public long getRangeLength() {
+        return rangeLength;
+    }
+
+    /**
+     * Searches for a pattern in multiple files
+     *
+     * @param inputFiles List of input files
+     * @param patternStr The regex pattern to search for
+     * @param flags Regex flags
+     * @return String containing all matching lines from all files, as grepFiles returns it
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public String grep(List<File> inputFiles, String patternStr, int flags) throws IOException {
+        StringWriter out = new StringWriter();
+        grep(inputFiles, patternStr, flags, -1, out, null);
+        return out.toString();
+    }
+
+    /**
+     * Searches for a regex or fuzzy pattern in multiple files, writing the matching lines to a writer
+     * The writer is flushed but not closed. When a file cannot be read or the budget runs out,
+     * the lines before the failing unit and those it found itself have been written.
+     *
+     * @param inputFiles List of input files
+     * @param patternStr The regex pattern, or the literal text of at most 64 chars for a fuzzy search
+     * @param flags Regex flags; a fuzzy search only uses Pattern.CASE_INSENSITIVE
+     * @param maxEditDistance The maximum number of edits for a fuzzy search, or -1 for a regex search
+     * @param out The writer to write the matching lines to
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of matching lines written
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public long grep(List<File> inputFiles, String patternStr, int flags, int maxEditDistance, Writer out,
+                     MatchBudget budget)
+            throws IOException {
+        Pattern pattern = null;
+        FuzzyMatcher fuzzyMatcher = null;
+        if (maxEditDistance < 0) {
+            pattern = PatternCache.getShared().compile(patternStr, flags);
+        } else {
+            fuzzyMatcher = new FuzzyMatcher(patternStr, maxEditDistance, (flags & Pattern.CASE_INSENSITIVE) != 0);
+        }
+        return run(inputFiles, pattern, flags, fuzzyMatcher, true, out, budget).matchingLines;
+    }
+
+    /**
+     * Filters a file line by line, applying a regex filter
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @return A string containing only the lines that match the pattern, as filterFileByLinePattern returns it
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public String filter(File file, String patternStr, int flags) throws IOException {
+        StringWriter out = new StringWriter();
+        filter(file, patternStr, flags, out, null);
+        return out.toString();
+    }
+
+    /**
+     * Filters a file line by line, writing the matching lines to a writer
+     * Each line is written with a line feed after it. The writer is flushed but not closed.
+     *
+     * @param file The file to process
+     * @param patternStr The regex pattern to filter lines
+     * @param flags Regex flags
+     * @param out The writer to write the matching lines to
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The line and match counters; the written length is in chars
+     * @throws IOException If an I/O error occurs
+     * @throws PatternSyntaxException If the pattern is invalid
+     * @throws MatchTimeoutException If the budget runs out; carries the number of matching lines so far
+     */
+    public LineFilterResult filter(File file, String patternStr, int flags, Writer out, MatchBudget budget)
+            throws IOException {
+        Pattern pattern = PatternCache.getShared().compile(patternStr, flags);
+        Run run = run(List.of(file), pattern, flags, null, false, out, budget);
+        return new LineFilterResult(run.lineCount, run.matchingLines, run.bytesRead, run.writtenLength);
+    }
+
+    /**
+     * Filters a file line by line, copying the bytes of the matching lines to a channel
+     * Each line is followed by a line feed, as FileProcessor.filterFileByLinePattern writes it to
+     * a channel. Only for charsets LineReader.supports, whose line bytes can be copied as they are.
+     *
+     * @param out The channel to write the matching lines to; it is not closed
+     * @return The line and match counters; the written length is in bytes
+     */
+    LineFilterResult filter(File file, String patternStr, int flags, WritableByteChannel out, MatchBudget budget)
+            throws IOException {
+        Pattern pattern = PatternCache.getShared().compile(patternStr, flags);
+        FileProcessor.ChannelLineSink sink = new FileProcessor.ChannelLineSink(out, Charset.defaultCharset());
+        Run run;
+        try {
+            run = run(List.of(file), pattern, flags, null, false, null, sink, budget);
+        } finally {
+            sink.finish();
+        }
+        return new LineFilterResult(run.lineCount, run.matchingLines, run.bytesRead, run.writtenLength);
+    }
+
+    private Run run(List<File> inputFiles, Pattern pattern, int flags, FuzzyMatcher fuzzyMatcher, boolean numbered,
+                    Writer out, MatchBudget budget)
+            throws IOException {
+        BufferedWriter writer = new BufferedWriter(out, WRITE_BUFFER_SIZE);
+        try {
+            return run(inputFiles, pattern, flags, fuzzyMatcher, numbered, writer, null, budget);
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Greps the units of the files, writing the lines to a writer or, as their bytes, to a channel sink
+     */
+    private Run run(List<File> inputFiles, Pattern pattern, int flags, FuzzyMatcher fuzzyMatcher, boolean numbered,
+                    Writer writer, FileProcessor.ChannelLineSink channel, MatchBudget budget)
+            throws IOException {
+        Charset charset = Charset.defaultCharset();
+        byte[] needle = pattern != null ? FileProcessor.requiredLiteral(pattern, charset) : null;
+        boolean matchBlocks = FileProcessor.matchesLineBlocks(pattern, flags);
+
+        Run run = new Run(pattern, fuzzyMatcher, needle, matchBlocks, charset, numbered, budget, writer, channel);
+        run.execute(split(inputFiles, charset));
+        return run;
+    }
+
+    /**
+     * Cuts files into units: whole files, or ranges of whole lines of the files longer than the range length
+     * A file that cannot be split is left whole, so reading it fails in its turn.
+     */
+    private List<Unit> split(List<File> inputFiles, Charset charset) {
+        List<Unit> units = new ArrayList<>(inputFiles.size());
+        boolean splittable = LineReader.supports(charset);
+        for (File file : inputFiles) {
+            long[] bounds = null;
+            if (splittable && file.length() > rangeLength) {
+                try (MappedTextFile mapped = MappedTextFile.open(file, charset)) {
+                    bounds = mapped.splitAtLines(rangeLength);
+                } catch (IOException e) {
+                    // Reported when the file is read as a whole
+                }
+            }
+            if (bounds == null || bounds.length <= 2) {
+                units.add(new Unit(file, 0, -1));
+            } else {
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    units.add(new Unit(file, bounds[i], bounds[i + 1]));
+                }
+            }
+        }
+        return units;
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelGrep[" + parallelism + " units, " + maxPendingLength + " pending chars, "
+                + rangeLength + " bytes per range]";
+    }
+
+    /**
+     * A whole file, or a byte range of whole lines of it
+     */
+    private static final class Unit {
+        final File file;
+        final long from;
+        /** End of the range, or -1 for the whole file */
+        final long to;
+
+        Unit(File file, long from, long to) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * State of one grep over a list of units
+     */
+    private final class Run {
+        private final Pattern pattern;
+        private final FuzzyMatcher fuzzyMatcher;
+        private final byte[] needle;
+        private final boolean matchBlocks;
+        private final Charset charset;
+        private final boolean numbered;
+        private final MatchBudget budget;
+        private final Writer writer;
+        private final FileProcessor.ChannelLineSink channel;
+        private final AtomicLong pendingLength = new AtomicLong();
+        private final Object pendingLock = new Object();
+        private volatile boolean stopped;
+
+        long matchingLines;
+        long processedLength;
+        long lineCount;
+        long bytesRead;
+        long writtenLength;
+
+        Run(Pattern pattern, FuzzyMatcher fuzzyMatcher, byte[] needle, boolean matchBlocks, Charset charset,
+            boolean numbered, MatchBudget budget, Writer writer, FileProcessor.ChannelLineSink channel) {
+            this.pattern = pattern;
+            this.fuzzyMatcher = fuzzyMatcher;
+            this.needle = needle;
+            this.matchBlocks = matchBlocks;
+            this.charset = charset;
+            this.numbered = numbered;
+            this.budget = budget;
+            this.writer = writer;
+            this.channel = channel;
+        }
+
+        void execute(List<Unit> units) throws IOException {
+            UnitTask[] tasks = new UnitTask[units.size()];
+            int submitted = 0;
+            long fileLines = 0;
+            try {
+                for (int turn = 0; turn < tasks.length; turn++) {
+                    while (submitted < tasks.length && submitted < turn + parallelism) {
+                        tasks[submitted] = new UnitTask(units.get(submitted));
+                        try {
+                            executor.execute(tasks[submitted]);
+                        } catch (RejectedExecutionException e) {
+                            // Run by this thread when its turn comes
+                        }
+                        submitted++;
+                    }
+
+                    UnitTask task = tasks[turn];
+                    tasks[turn] = null;
+                    if (task.unit.from == 0) {
+                        fileLines = 0;
+                    }
+                    task.takeTurn(fileLines);
+                    task.run();
+                    task.awaitDone();
+                    task.writeBuffer();
+                    task.release();
+
+                    if (task.failure instanceof MatchTimeoutException) {
+                        throw ((MatchTimeoutException) task.failure).withProgress(
+                                matchingLines + task.progress[0], processedLength + task.progress[1]);
+                    }
+                    rethrow(task.failure);
+                    matchingLines += task.progress[0];
+                    processedLength += task.progress[1];
+                    fileLines += task.lineCount;
+                    lineCount += task.lineCount;
+                    bytesRead += task.bytesRead;
+                    writtenLength += task.writtenLength;
+                }
+            } finally {
+                stopped = true;
+                wakeWaiting();
+            }
+        }
+
+        private void rethrow(Throwable failure) throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+
+        private void wakeWaiting() {
+            synchronized (pendingLock) {
+                pendingLock.notifyAll();
+            }
+        }
+
+        /**
+         * Scans one unit into its buffer, or straight into the writer once it is the unit's turn
+         */
+        private final class UnitTask implements Runnable {
+            private final Unit unit;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+            // Matching lines, each followed by a line feed, and their numbers within the unit; the
+            // lines for a channel are kept as their bytes instead
+            private final StringBuilder buffer = new StringBuilder();
+            private long[] lineNumbers = new long[16];
+            private byte[] bytes = new byte[0];
+            private int byteLength;
+            private int bufferedLines;
+            private final long[] progress = new long[2];
+            private volatile boolean turn;
+            // Set before the turn starts
+            private long firstLine;
+            // Only used by the thread scanning the unit, and by the caller once it is done
+            private boolean writing;
+            private long reservedLength;
+            private long lineCount;
+            private long bytesRead;
+            private long writtenLength;
+            // Guarded by this
+            private boolean done;
+            private Throwable failure;
+
+            UnitTask(Unit unit) {
+                this.unit = unit;
+            }
+
+            @Override
+            public void run() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                Throwable error = null;
+                try {
+                    if (!stopped) {
+                        try (LineReader reader = open()) {
+                            FileProcessor.grepLines(reader, pattern, fuzzyMatcher, needle, matchBlocks, budget,
+                                    progress, this::write);
+                            lineCount = reader.getLineNumber();
+                            bytesRead = reader.getBytesRead();
+                        }
+                    }
+                } catch (Throwable e) {
+                    error = e;
+                }
+                synchronized (this) {
+                    failure = error;
+                    done = true;
+                    notifyAll();
+                }
+            }
+
+            private LineReader open() throws IOException {
+                if (unit.to < 0) {
+                    return new LineReader(unit.file, charset);
+                }
+                try (MappedTextFile mapped = MappedTextFile.open(unit.file, charset)) {
+                    return new LineReader(mapped.getBytes(unit.from, unit.to), charset);
+                }
+            }
+
+            private long write(LineReader reader, String line) throws IOException {
+                if (stopped) {
+                    throw new InterruptedIOException("Grep stopped");
+                }
+                if (!writing && turn) {
+                    writeBuffer();
+                    release();
+                    writing = true;
+                }
+                if (channel != null) {
+                    writtenLength += writing ? channel.write(reader, line) : bufferBytes(reader.getLineBytes());
+                } else {
+                    writtenLength += line.length() + 1;
+                    if (writing) {
+                        writeLine(reader.getLineNumber(), line);
+                    } else {
+                        bufferLine(reader.getLineNumber(), line);
+                    }
+                }
+                if (!writing && bufferedLength() - reservedLength >= RESERVE_LENGTH) {
+                    reserve();
+                }
+                return 0;
+            }
+
+            private void bufferLine(long lineNumber, String line) {
+                buffer.append(line).append('\n');
+                if (numbered) {
+                    if (bufferedLines == lineNumbers.length) {
+                        lineNumbers = Arrays.copyOf(lineNumbers, bufferedLines * 2);
+                    }
+                    lineNumbers[bufferedLines] = lineNumber;
+                }
+                bufferedLines++;
+            }
+
+            /**
+             * Buffers the bytes of a line and a line feed
+             *
+             * @return The number of bytes buffered
+             */
+            private int bufferBytes(ByteBuffer line) {
+                int length = line.remaining() + 1;
+                if (bytes.length - byteLength < length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, byteLength + length));
+                }
+                line.get(bytes, byteLength, length - 1);
+                bytes[byteLength + length - 1] = '\n';
+                byteLength += length;
+                return length;
+            }
+
+            private int bufferedLength() {
+                return channel != null ? byteLength : buffer.length();
+            }
+
+            private void writeLine(long lineNumber, CharSequence line) throws IOException {
+                if (numbered) {
+                    FileProcessor.appendGrepLine(writer, unit.file, firstLine + lineNumber, line);
+                } else {
+                    writer.append(line).append('\n');
+                }
+            }
+
+            /**
+             * Writes the buffered lines, numbered from the start of the file
+             */
+            void writeBuffer() throws IOException {
+                if (channel != null) {
+                    channel.write(bytes, 0, byteLength);
+                    return;
+                }
+                if (!numbered) {
+                    writer.append(buffer);
+                    return;
+                }
+                int start = 0;
+                for (int i = 0; i < bufferedLines; i++) {
+                    int end = buffer.indexOf("\n", start);
+                    writeLine(lineNumbers[i], buffer.subSequence(start, end));
+                    start = end + 1;
+                }
+            }
+
+            /**
+             * Counts the new part of the buffer against the limit, waiting while it is exceeded
+             */
+            private void reserve() throws IOException {
+                long added = bufferedLength() - reservedLength;
+                reservedLength = bufferedLength();
+                if (pendingLength.addAndGet(added) <= maxPendingLength) {
+                    return;
+                }
+                synchronized (pendingLock) {
+                    while (!turn && !stopped && pendingLength.get() > maxPendingLength) {
+                        try {
+                            pendingLock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting to buffer results");
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Empties the buffer after it was written and wakes the units waiting for room
+             */
+            void release() {
+                if (reservedLength > 0) {
+                    pendingLength.addAndGet(-reservedLength);
+                    reservedLength = 0;
+                    wakeWaiting();
+                }
+                buffer.setLength(0);
+                buffer.trimToSize();
+                bufferedLines = 0;
+                bytes = new byte[0];
+                byteLength = 0;
+            }
+
+            /**
+             * Lets the unit write straight to the writer from its next matching line on
+             *
+             * @param linesBefore The number of lines of the file before the unit
+             */
+            void takeTurn(long linesBefore) {
+                firstLine = linesBefore;
+                turn = true;
+                wakeWaiting();
+            }
+
+            synchronized void awaitDone() throws InterruptedIOException {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for " + unit.file.getName());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parallel version of the TextProcessor matching operations for very large in-memory texts
+ * The text is split into chunks that are scanned on a ForkJoinPool. Each chunk matcher may read
+ * up to overlap chars past the end of its chunk, so a match starting in the chunk is always
+ * found whole, and runs with transparent, non-anchoring bounds so ^, $, \b and lookaround
+ * (including MULTILINE line anchors) see the real neighbouring chars at a chunk boundary.
+ * The chunk results are merged in order: where a match of one chunk runs into the next, the
+ * merge rescans from the end of that match until it lines up with the next chunk's matches
+ * again, so the results are exactly those of the sequential TextProcessor methods.
+ *
+ * Fallback: the scheme needs an upper bound on the match length. Patterns whose maximum match
+ * length is unbounded (e.g. using * or +), longer than the overlap, or cannot be determined
+ * (back references, \G, constructs the analyzer does not know) are scanned sequentially,
+ * as are texts shorter than two chunks.
+ *
+ * The text must not be modified while a call is running.
+ */
+public class ParallelMatcher {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    public static final int DEFAULT_OVERLAP = 4096;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int overlap;
+
+    /**
+     * Creates a parallel matcher on the common pool with the default chunk size and overlap
+     */
+    public ParallelMatcher() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, DEFAULT_OVERLAP);
+    }
+
+    /**
+     * Creates a parallel matcher on the common pool
+     *
+     * @param chunkSize Number of chars scanned by each task
+     * @param overlap Number of chars a task may read past the end of its chunk
+     */
+    public ParallelMatcher(int chunkSize, int overlap) {
+        this(ForkJoinPool.commonPool(), chunkSize, overlap);
+    }
+
+    /**
+     * Creates a parallel matcher
+     *
+     * @param pool The pool to run the chunk tasks on
+     * @param chunkSize Number of chars scanned by each task
+     * @param overlap Number of chars a task may read past the end of its chunk
+     */
+    public ParallelMatcher(ForkJoinPool pool, int chunkSize, int overlap) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool must not be null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        if (overlap < 0) {
+            throw new IllegalArgumentException("Overlap must not be negative");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Check whether a pattern can be matched in parallel chunks with this matcher's overlap
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     * @return True if the pattern has a known maximum match length that fits in the overlap
+     */
+    public boolean supportsParallel(String pattern, int flags) {
+        return chunkOverlap(pattern, flags) >= 0;
+    }
+
+    /**
+     * Find all matches of a pattern in a text
+     *
+     * @param text The text to search in
+     * @param pattern The regex pattern to match
+     * @param flags Regex pattern flags
+     * @return List of matched strings, as TextProcessor.findMatches would return them
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public List<String> findMatches(CharSequence text, String pattern, int flags) {
+        if (text == null || text.length() == 0 || pattern == null || pattern.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return collect(text, pattern, flags, MatchResult::group).values;
+    }
+
+    /**
+     * Get detailed information about matches
+     *
+     * @param text The text to search in
+     * @param pattern The regex pattern to match
+     * @param flags Regex pattern flags
+     * @return List of match information, as TextProcessor.getDetailedMatches would return it
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public List<TextProcessor.MatchInfo> getDetailedMatches(CharSequence text, String pattern, int flags) {
+        if (text == null || text.length() == 0 || pattern == null || pattern.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return collect(text, pattern, flags, match -> TextProcessor.toMatchInfo(match, text)).values;
+    }
+
+    /**
+     * Highlight matches in the text by surrounding them with prefix and suffix
+     *
+     * @param text The text to search in
+     * @param pattern The regex pattern to match
+     * @param prefix The prefix to add before each match
+     * @param suffix The suffix to add after each match
+     * @param flags Regex pattern flags
+     * @return Text with highlighted matches
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public String highlightMatches(CharSequence text, String pattern, String prefix, String suffix, int flags) {
+        if (text == null) {
+            return null;
+        }
+        if (pattern == null || pattern.isEmpty() || prefix == null || suffix == null) {
+            return text.toString();
+        }
+
+        MatchList<Void> matches = collect(text, pattern, flags, null);
+        StringBuilder result = new StringBuilder(text.length()
+                + matches.size() * (prefix.length() + suffix.length()));
+        int lastEnd = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            int start = matches.start(i);
+            int end = matches.end(i);
+            result.append(text, lastEnd, start);
+            result.append(prefix);
+            result.append(text, start, end);
+            result.append(suffix);
+            lastEnd = end;
+        }
+        result.append(text, lastEnd, text.length());
+        return result.toString();
+    }
+
+    /**
+     * Gets the overlap to use for a pattern, or -1 if it has to be scanned sequentially
+     */
+    private int chunkOverlap(String pattern, int flags) {
+        RegexNode root = RegexParser.parse(pattern, flags);
+        if (root == null || root.containsAssertion(RegexNode.Assertion.LAST_MATCH_END)) {
+            return -1;
+        }
+        int maxLength = root.maxLength();
+        return maxLength == RegexNode.UNBOUNDED || maxLength > overlap ? -1 : overlap;
+    }
+
+    private <T> MatchList<T> collect(CharSequence text, String pattern, int flags, Function<MatchResult, T> extractor) {
+        Pattern compiledPattern = PatternCache.getShared().compile(pattern, flags);
+        int length = text.length();
+
+        if (length < 2L * chunkSize || chunkOverlap(pattern, flags) < 0) {
+            MatchList<T> matches = new MatchList<>(extractor != null);
+            MatchScanner scanner = MatchScanner.of(compiledPattern, text);
+            while (scanner.find()) {
+                matches.add(scanner, extractor);
+            }
+            return matches;
+        }
+
+        List<ForkJoinTask<MatchList<T>>> tasks = new ArrayList<>();
+        for (int start = 0; start < length; start += chunkSize) {
+            int chunkStart = start;
+            int chunkEnd = (int) Math.min(length, (long) start + chunkSize);
+            tasks.add(pool.submit(() -> scanChunk(text, compiledPattern, chunkStart, chunkEnd, extractor)));
+        }
+
+        MatchList<T> merged = new MatchList<>(extractor != null);
+        int resume = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            int chunkStart = i * chunkSize;
+            int chunkEnd = (int) Math.min(length, (long) chunkStart + chunkSize);
+            resume = merge(merged, tasks.get(i).join(), text, compiledPattern, chunkStart, chunkEnd, resume, extractor);
+        }
+        return merged;
+    }
+
+    /**
+     * Finds the matches starting in [chunkStart, chunkEnd), or at the end of the text for the last chunk
+     */
+    private <T> MatchList<T> scanChunk(CharSequence text, Pattern pattern, int chunkStart, int chunkEnd,
+                                       Function<MatchResult, T> extractor) {
+        MatchList<T> matches = new MatchList<>(extractor != null);
+        int limit = startLimit(text, chunkEnd);
+        MatchScanner scanner = MatchScanner.of(pattern, text, chunkStart, regionEnd(text, chunkEnd));
+        while (scanner.find() && scanner.start() < limit) {
+            matches.add(scanner, extractor);
+        }
+        return matches;
+    }
+
+    /**
+     * Appends the matches of one chunk that the sequential scan would also find
+     * A scan started at position p finds the same match from any position between p and the
+     * start of that match, because a match attempt only depends on the position it starts at.
+     * So the chunk's matches can be taken over as soon as the sequential resume position falls
+     * in such a gap; while it lies inside one of the chunk's matches, the merge finds the next
+     * match itself.
+     *
+     * @return The position the sequential scan resumes at after this chunk
+     */
+    private <T> int merge(MatchList<T> merged, MatchList<T> chunk, CharSequence text, Pattern pattern,
+                          int chunkStart, int chunkEnd, int resume, Function<MatchResult, T> extractor) {
+        int limit = startLimit(text, chunkEnd);
+        int index = 0;
+
+        while (resume < limit) {
+            while (index < chunk.size() && chunk.start(index) < resume) {
+                index++;
+            }
+            int gapStart = index == 0 ? chunkStart : nextSearch(chunk.start(index - 1), chunk.end(index - 1));
+            if (resume >= gapStart) {
+                for (int i = index; i < chunk.size(); i++) {
+                    merged.addFrom(chunk, i);
+                    resume = nextSearch(chunk.start(i), chunk.end(i));
+                }
+                break;
+            }
+
+            MatchScanner scanner = MatchScanner.of(pattern, text, resume, regionEnd(text, chunkEnd));
+            if (!scanner.find() || scanner.start() >= limit) {
+                break;
+            }
+            merged.add(scanner, extractor);
+            resume = nextSearch(scanner.start(), scanner.end());
+        }
+
+        // No further match starts before the end of the chunk
+        return Math.max(resume, chunkEnd);
+    }
+
+    private int regionEnd(CharSequence text, int chunkEnd) {
+        return (int) Math.min(text.length(), (long) chunkEnd + overlap);
+    }
+
+    private static int startLimit(CharSequence text, int chunkEnd) {
+        // An empty match at the very end of the text belongs to the last chunk
+        return chunkEnd == text.length() ? chunkEnd + 1 : chunkEnd;
+    }
+
+    /**
+     * Position Matcher.find() continues from after a match
+     */
+    private static int nextSearch(int start, int end) {
+        return end == start ? end + 1 : end;
+    }
+
+    /**
+     * Match bounds packed into an int array, with an optional extracted value per match
+     */
+    private static class MatchList<T> {
+        private final List<T> values;
+        private int[] bounds = new int[16];
+        private int size;
+
+        MatchList(boolean withValues) {
+            this.values = withValues ? new ArrayList<>() : null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int start(int index) {
+            return bounds[2 * index];
+        }
+
+        int end(int index) {
+            return bounds[2 * index + 1];
+        }
+
+        void add(MatchResult match, Function<MatchResult, T> extractor) {
+            addBounds(match.start(), match.end());
+            if (values != null) {
+                values.add(extractor.apply(match));
+            }
+        }
+
+        void addFrom(MatchList<T> other, int index) {
+            addBounds(other.start(index), other.end(index));
+            if (values != null) {
+                values.add(other.values.get(index));
+            }
+        }
+
+        private void addBounds(int start, int end) {
+            if (2 * size + 2 > bounds.length) {
+                int[] grown = new int[bounds.length * 2];
+                System.arraycopy(bounds, 0, grown, 0, 2 * size);
+                bounds = grown;
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            size++;
+        }
+    }
+}
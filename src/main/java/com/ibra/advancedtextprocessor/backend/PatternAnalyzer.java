@@ -0,0 +1,430 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Static analyzer that estimates the worst-case matching cost of a regex pattern
+ * The pattern is parsed into a syntax tree and checked for the shapes that make a
+ * backtracking engine such as java.util.regex blow up on non-matching input:
+ * - an unbounded quantifier nested in another quantifier, where one iteration of the outer
+ *   quantifier can end or start in the middle of the inner one, e.g. (a+)+ or (\w+\s?)*
+ * - alternatives under a quantifier that can match the same input, e.g. (a|aa)* or (\w|\d)+
+ * - adjacent unbounded quantifiers over overlapping chars, e.g. \d+\d+ or .*.*
+ * The checks are heuristics on the pattern structure: they can report patterns whose input
+ * never triggers the worst case, but catch the common catastrophic-backtracking shapes.
+ */
+public class PatternAnalyzer {
+
+    /**
+     * Worst-case cost of one match attempt as a function of the input length
+     */
+    public enum CostClass {
+        LINEAR, POLYNOMIAL, EXPONENTIAL, UNKNOWN
+    }
+
+    /**
+     * Analyzes a pattern
+     *
+     * @param pattern The regex pattern to analyze
+     * @param flags Regex pattern flags
+     * @return The analysis; invalid patterns are reported through isValid()
+     */
+    public static PatternAnalysis analyze(String pattern, int flags) {
+        if (pattern == null || pattern.isEmpty()) {
+            return PatternAnalysis.invalid("Pattern is empty");
+        }
+
+        try {
+            PatternCache.getShared().compile(pattern, flags);
+        } catch (PatternSyntaxException e) {
+            return PatternAnalysis.invalid(e.getMessage());
+        }
+
+        RegexNode root = RegexParser.parse(pattern, flags);
+        if (root == null) {
+            return new PatternAnalysis(true, null, CostClass.UNKNOWN, -1, -1,
+                    List.of("Pattern uses constructs the analyzer does not support"));
+        }
+
+        List<String> warnings = new ArrayList<>();
+        CostClass cost = inspect(root, false, warnings);
+        if (root.contains(RegexNode.Kind.BACK_REFERENCE)) {
+            warnings.add("Back references force backtracking; their cost cannot be bounded statically");
+        }
+        return new PatternAnalysis(true, null, cost, root.minLength(), root.maxLength(), warnings);
+    }
+
+    /**
+     * Analyzes a pattern entry using its own flags
+     *
+     * @param entry The pattern entry to analyze
+     * @return The analysis
+     */
+    public static PatternAnalysis analyze(PatternEntry entry) {
+        return analyze(entry.getPattern(), entry.getFlags());
+    }
+
+    /**
+     * Walks the tree and returns the worst cost class found below a node
+     *
+     * @param atomic True if the node is inside an atomic group, where nothing backtracks
+     */
+    private static CostClass inspect(RegexNode node, boolean atomic, List<String> warnings) {
+        CostClass cost = CostClass.LINEAR;
+        boolean childAtomic = atomic || node.kind == RegexNode.Kind.ATOMIC
+                || (node.kind == RegexNode.Kind.REPEAT && node.quantifier == RegexNode.Quantifier.POSSESSIVE);
+
+        for (RegexNode child : node.children) {
+            cost = worse(cost, inspect(child, childAtomic, warnings));
+        }
+        if (childAtomic) {
+            return cost;
+        }
+
+        if (node.kind == RegexNode.Kind.REPEAT && (node.max == RegexNode.UNBOUNDED || node.max > 1)) {
+            cost = worse(cost, inspectRepeat(node, warnings));
+        } else if (node.kind == RegexNode.Kind.CONCAT) {
+            cost = worse(cost, inspectConcat(node, warnings));
+        }
+        return cost;
+    }
+
+    private static CostClass inspectRepeat(RegexNode repeat, List<String> warnings) {
+        RegexNode body = repeat.child();
+        boolean unbounded = repeat.max == RegexNode.UNBOUNDED;
+        CostClass nestedCost = unbounded ? CostClass.EXPONENTIAL : CostClass.POLYNOMIAL;
+        CostClass cost = CostClass.LINEAR;
+
+        // An iteration boundary that can fall inside an inner repetition makes the split ambiguous
+        CharSet bodyFirst = firstSet(body);
+        CharSet bodyLast = lastSet(body);
+        List<RegexNode> atEnd = new ArrayList<>();
+        List<RegexNode> atStart = new ArrayList<>();
+        edgeRepeats(body, false, atEnd);
+        edgeRepeats(body, true, atStart);
+
+        boolean nested = false;
+        for (RegexNode inner : atEnd) {
+            nested |= firstSet(inner.child()).intersects(bodyFirst);
+        }
+        for (RegexNode inner : atStart) {
+            nested |= lastSet(inner.child()).intersects(bodyLast);
+        }
+        if (nested) {
+            warn(warnings, "Nested quantifier: an unbounded repetition inside a repeated group can split "
+                    + "the same input in many ways");
+            cost = nestedCost;
+        }
+
+        List<RegexNode> alternations = new ArrayList<>();
+        collectAlternations(body, alternations);
+        for (RegexNode alternation : alternations) {
+            if (hasOverlappingBranches(alternation)) {
+                warn(warnings, "Overlapping alternation under a quantifier: several alternatives can match the same input");
+                cost = worse(cost, nestedCost);
+                break;
+            }
+        }
+        return cost;
+    }
+
+    private static CostClass inspectConcat(RegexNode concat, List<String> warnings) {
+        List<RegexNode> children = concat.children;
+        for (int i = 0; i < children.size(); i++) {
+            List<RegexNode> left = new ArrayList<>();
+            edgeRepeats(children.get(i), false, left);
+            if (left.isEmpty()) {
+                continue;
+            }
+
+            // Compare with the repetitions that can directly follow, skipping optional parts;
+            // both must be able to take the same iteration for the split to be ambiguous
+            for (int j = i + 1; j < children.size(); j++) {
+                RegexNode next = children.get(j);
+                List<RegexNode> right = new ArrayList<>();
+                edgeRepeats(next, true, right);
+                for (RegexNode first : left) {
+                    for (RegexNode second : right) {
+                        if (firstSet(first.child()).intersects(firstSet(second.child()))
+                                && lastSet(first.child()).intersects(lastSet(second.child()))) {
+                            warn(warnings, "Adjacent quantifiers over overlapping characters: the input "
+                                    + "can be divided between them in many ways");
+                            return CostClass.POLYNOMIAL;
+                        }
+                    }
+                }
+                if (next.minLength() > 0) {
+                    break;
+                }
+            }
+        }
+        return CostClass.LINEAR;
+    }
+
+    /**
+     * Collects the unbounded, backtracking repetitions a node can start (or end) with
+     */
+    private static void edgeRepeats(RegexNode node, boolean start, List<RegexNode> result) {
+        switch (node.kind) {
+            case REPEAT:
+                if (node.quantifier == RegexNode.Quantifier.POSSESSIVE) {
+                    return;
+                }
+                if (node.max == RegexNode.UNBOUNDED && node.child().maxLength() != 0) {
+                    result.add(node);
+                }
+                if (node.max != 0) {
+                    edgeRepeats(node.child(), start, result);
+                }
+                return;
+            case GROUP:
+                edgeRepeats(node.child(), start, result);
+                return;
+            case ALTERNATION:
+                for (RegexNode child : node.children) {
+                    edgeRepeats(child, start, result);
+                }
+                return;
+            case CONCAT: {
+                List<RegexNode> children = node.children;
+                for (int k = 0; k < children.size(); k++) {
+                    RegexNode child = children.get(start ? k : children.size() - 1 - k);
+                    edgeRepeats(child, start, result);
+                    if (child.minLength() > 0) {
+                        return;
+                    }
+                }
+                return;
+            }
+            default:
+                // Atomic groups do not give back what they matched
+        }
+    }
+
+    private static void collectAlternations(RegexNode node, List<RegexNode> result) {
+        if (node.kind == RegexNode.Kind.ATOMIC
+                || (node.kind == RegexNode.Kind.REPEAT && node.quantifier == RegexNode.Quantifier.POSSESSIVE)) {
+            return;
+        }
+        if (node.kind == RegexNode.Kind.ALTERNATION) {
+            result.add(node);
+        }
+        for (RegexNode child : node.children) {
+            collectAlternations(child, result);
+        }
+    }
+
+    /**
+     * Returns true if two alternatives may match the same input
+     * Alternatives that both start with a run of single chars are told apart by the first
+     * position where their char sets are disjoint.
+     */
+    private static boolean hasOverlappingBranches(RegexNode alternation) {
+        List<RegexNode> branches = alternation.children;
+        for (int i = 0; i < branches.size(); i++) {
+            for (int j = i + 1; j < branches.size(); j++) {
+                if (mayOverlap(branches.get(i), branches.get(j))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean mayOverlap(RegexNode a, RegexNode b) {
+        if (a.minLength() == 0 || b.minLength() == 0) {
+            // An empty alternative under a quantifier is handled by the engine's empty-loop check
+            return false;
+        }
+        if (!firstSet(a).intersects(firstSet(b))) {
+            return false;
+        }
+        List<CharSet> prefixA = fixedPrefix(a);
+        List<CharSet> prefixB = fixedPrefix(b);
+        int common = Math.min(prefixA.size(), prefixB.size());
+        for (int k = 1; k < common; k++) {
+            if (!prefixA.get(k).intersects(prefixB.get(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the char sets of the single-char nodes a node starts with
+     */
+    private static List<CharSet> fixedPrefix(RegexNode node) {
+        List<CharSet> prefix = new ArrayList<>();
+        appendFixedPrefix(node, prefix);
+        return prefix;
+    }
+
+    private static boolean appendFixedPrefix(RegexNode node, List<CharSet> prefix) {
+        switch (node.kind) {
+            case CHAR_SET:
+                prefix.add(node.charSet);
+                return true;
+            case GROUP:
+                return appendFixedPrefix(node.child(), prefix);
+            case CONCAT:
+                for (RegexNode child : node.children) {
+                    if (!appendFixedPrefix(child, prefix)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the chars a match of the node can start with
+     */
+    static CharSet firstSet(RegexNode node) {
+        return edgeSet(node, true);
+    }
+
+    /**
+     * Gets the chars a match of the node can end with
+     */
+    static CharSet lastSet(RegexNode node) {
+        return edgeSet(node, false);
+    }
+
+    private static CharSet edgeSet(RegexNode node, boolean start) {
+        switch (node.kind) {
+            case CHAR_SET:
+                return node.charSet;
+            case GROUP:
+            case ATOMIC:
+                return edgeSet(node.child(), start);
+            case REPEAT:
+                return node.max == 0 ? CharSet.EMPTY : edgeSet(node.child(), start);
+            case ALTERNATION: {
+                CharSet result = CharSet.EMPTY;
+                for (RegexNode child : node.children) {
+                    result = result.union(edgeSet(child, start));
+                }
+                return result;
+            }
+            case CONCAT: {
+                CharSet result = CharSet.EMPTY;
+                List<RegexNode> children = node.children;
+                for (int k = 0; k < children.size(); k++) {
+                    RegexNode child = children.get(start ? k : children.size() - 1 - k);
+                    result = result.union(edgeSet(child, start));
+                    if (child.minLength() > 0) {
+                        break;
+                    }
+                }
+                return result;
+            }
+            case BACK_REFERENCE:
+                return CharSet.ALL;
+            default:
+                return CharSet.EMPTY;
+        }
+    }
+
+    private static void warn(List<String> warnings, String warning) {
+        if (!warnings.contains(warning)) {
+            warnings.add(warning);
+        }
+    }
+
+    private static CostClass worse(CostClass a, CostClass b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * Result of analyzing a pattern
+     */
+    public static class PatternAnalysis {
+        private final boolean valid;
+        private final String errorMessage;
+        private final CostClass costClass;
+        private final int minLength;
+        private final int maxLength;
+        private final List<String> warnings;
+
+        PatternAnalysis(boolean valid, String errorMessage, CostClass costClass,
+                        int minLength, int maxLength, List<String> warnings) {
+            this.valid = valid;
+            this.errorMessage = errorMessage;
+            this.costClass = costClass;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.warnings = Collections.unmodifiableList(new ArrayList<>(warnings));
+        }
+
+        static PatternAnalysis invalid(String errorMessage) {
+            return new PatternAnalysis(false, errorMessage, CostClass.UNKNOWN, -1, -1, List.of());
+        }
+
+        /**
+         * Check whether the pattern compiles
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Gets the compile error of an invalid pattern, or null
+         */
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public CostClass getCostClass() {
+            return costClass;
+        }
+
+        /**
+         * Check whether the pattern can backtrack catastrophically
+         *
+         * @return True for polynomial and exponential worst-case cost
+         */
+        public boolean isDangerous() {
+            return costClass == CostClass.POLYNOMIAL || costClass == CostClass.EXPONENTIAL;
+        }
+
+        /**
+         * Gets the minimum number of chars a match consumes, or -1 if unknown
+         */
+        public int getMinLength() {
+            return minLength;
+        }
+
+        /**
+         * Gets the maximum number of chars a match consumes, or -1 if unbounded or unknown
+         */
+        public int getMaxLength() {
+            return maxLength;
+        }
+
+        /**
+         * Check whether the analyzer understood the pattern well enough to report lengths
+         */
+        public boolean isLengthKnown() {
+            return valid && costClass != CostClass.UNKNOWN;
+        }
+
+        public List<String> getWarnings() {
+            return warnings;
+        }
+
+        @Override
+        public String toString() {
+            if (!valid) {
+                return "Invalid pattern: " + errorMessage;
+            }
+            String max = maxLength == RegexNode.UNBOUNDED ? "unbounded" : String.valueOf(maxLength);
+            return "Cost: " + costClass + ", length: " + minLength + ".." + max
+                    + (warnings.isEmpty() ? "" : ", warnings: " + warnings);
+        }
+    }
+}
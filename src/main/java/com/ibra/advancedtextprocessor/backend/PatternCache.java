@@ -0,0 +1,241 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Thread-safe, size-bounded LRU cache of compiled regex patterns keyed by (pattern, flags)
+ * Shared by TextProcessor, FileProcessor and PatternManager so that the same pattern
+ * is only compiled once per process
+ */
+public class PatternCache {
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final PatternCache SHARED = new PatternCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * Analysis of every compiled pattern, by pattern instance
+     * Pattern.flags() includes the flags of inline groups such as (?i) at the top level, so the
+     * analysis is built from the flags the pattern was compiled with. It stays available after
+     * the pattern is evicted, for as long as the pattern itself is in use.
+     */
+    private static final Map<Pattern, Analysis> ANALYSES = new WeakHashMap<>();
+
+    /** Inline flags that Pattern.flags() may have folded into the compile flags */
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?-?[idmsuxU]");
+
+    private final LinkedHashMap<Key, Pattern> entries;
+    private int maxSize;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a new cache holding at most maxSize compiled patterns
+     *
+     * @param maxSize Maximum number of patterns kept in the cache
+     */
+    public PatternCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets the cache used by all TextProcessor and FileProcessor operations
+     *
+     * @return The shared pattern cache
+     */
+    public static PatternCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the compiled pattern for the given source and flags, compiling it on a miss
+     *
+     * @param pattern The regex pattern to compile
+     * @param flags Regex pattern flags
+     * @return The compiled pattern
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public Pattern compile(String pattern, int flags) {
+        Key key = new Key(pattern, flags);
+
+        synchronized (this) {
+            Pattern cached = entries.get(key);
+            if (cached != null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+
+        // Compile outside the lock; invalid patterns throw and are never cached
+        Pattern compiled = Pattern.compile(pattern, flags);
+        Analysis analysis = new Analysis(pattern, flags);
+
+        synchronized (this) {
+            Pattern existing = entries.putIfAbsent(key, compiled);
+            if (existing != null) {
+                return existing;
+            }
+            evictOverflow();
+        }
+        synchronized (ANALYSES) {
+            ANALYSES.put(compiled, analysis);
+        }
+        return compiled;
+    }
+
+    /**
+     * Gets the required-literal prefilter extracted when the pattern was compiled
+     * Patterns no cache compiled are analysed on the spot, unless they use inline flags.
+     *
+     * @param pattern The compiled pattern
+     * @return The prefilter, or null if the pattern has no usable required literal
+     */
+    LiteralPrefilter prefilterFor(Pattern pattern) {
+        Analysis analysis = analysisOf(pattern);
+        return analysis != null ? analysis.prefilter : null;
+    }
+
+    /**
+     * Gets the analysis of a pattern, analysing patterns no cache compiled on first use
+     *
+     * @return The analysis, or null if the flags the pattern was compiled with are unknown
+     */
+    private static Analysis analysisOf(Pattern pattern) {
+        synchronized (ANALYSES) {
+            Analysis analysis = ANALYSES.get(pattern);
+            if (analysis != null) {
+                return analysis;
+            }
+        }
+        if ((pattern.flags() & Pattern.LITERAL) == 0 && INLINE_FLAGS.matcher(pattern.pattern()).find()) {
+            return null;
+        }
+        Analysis analysis = new Analysis(pattern.pattern(), pattern.flags());
+        synchronized (ANALYSES) {
+            Analysis existing = ANALYSES.putIfAbsent(pattern, analysis);
+            return existing != null ? existing : analysis;
+        }
+    }
+
+    /**
+     * Gets the lazy DFA built when the pattern was compiled
+     * Patterns no cache compiled get a DFA built on first use, unless they use inline flags.
+     *
+     * @param pattern The compiled pattern
+     * @return The DFA, or null if the pattern is outside the subset the DFA supports
+     */
+    LazyDfa dfaFor(Pattern pattern) {
+        Analysis analysis = analysisOf(pattern);
+        return analysis != null ? analysis.dfa : null;
+    }
+
+    /**
+     * Changes the maximum number of cached patterns, evicting the least recently used ones if needed
+     *
+     * @param maxSize The new maximum size
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        evictOverflow();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Removes all cached patterns and resets the counters
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PatternCache[size=" + entries.size() + "/" + maxSize
+                + ", hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + "]";
+    }
+
+    private void evictOverflow() {
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Data derived from a pattern's source and the flags it was compiled with
+     * Holds no reference to the pattern, so the pattern can be collected once unused.
+     */
+    private static final class Analysis {
+        private final LiteralPrefilter prefilter;
+        private final LazyDfa dfa;
+
+        Analysis(String pattern, int flags) {
+            this.prefilter = LiteralPrefilter.forPattern(pattern, flags);
+            this.dfa = LazyDfa.forPattern(pattern, flags);
+        }
+    }
+
+    /**
+     * Cache key combining the pattern source and its compile flags
+     */
+    private static final class Key {
+        private final String pattern;
+        private final int flags;
+
+        Key(String pattern, int flags) {
+            this.pattern = Objects.requireNonNull(pattern);
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return flags == that.flags && pattern.equals(that.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pattern.hashCode() + flags;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ibra.advancedtextprocessor.backend;
 
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 /**
  * Represents a saved regex pattern with a name and additional metadata
@@ -50,6 +51,22 @@ public class PatternEntry {
         this.caseInsensitive = caseInsensitive;
     }
 
+    /**
+     * Gets the regex flags corresponding to this entry's options
+     *
+     * @return Combination of Pattern.MULTILINE and Pattern.CASE_INSENSITIVE
+     */
+    public int getFlags() {
+        int flags = 0;
+        if (multiline) {
+            flags |= Pattern.MULTILINE;
+        }
+        if (caseInsensitive) {
+            flags |= Pattern.CASE_INSENSITIVE;
+        }
+        return flags;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 /**
@@ -15,6 +14,19 @@ import java.util.stream.Collectors;
 public class PatternManager {
     private List<PatternEntry> patterns;
     private static final String DEFAULT_PATTERNS_FILE = "saved_patterns.dat";
+    private SafetyPolicy safetyPolicy = SafetyPolicy.WARN;
+
+    /**
+     * What addPattern and updatePattern do with patterns that PatternAnalyzer reports as dangerous
+     */
+    public enum SafetyPolicy {
+        /** Accept dangerous patterns silently */
+        ALLOW,
+        /** Accept dangerous patterns and log a warning */
+        WARN,
+        /** Refuse dangerous patterns */
+        REJECT
+    }
 
     /**
      * Creates a new PatternManager with an empty pattern list
@@ -32,8 +44,25 @@ public class PatternManager {
         this.patterns = new ArrayList<>(patterns);
     }
 
+    public SafetyPolicy getSafetyPolicy() {
+        return safetyPolicy;
+    }
+
+    /**
+     * Sets how catastrophic-backtracking patterns are treated when they are added or updated
+     *
+     * @param safetyPolicy The policy to apply
+     */
+    public void setSafetyPolicy(SafetyPolicy safetyPolicy) {
+        if (safetyPolicy == null) {
+            throw new IllegalArgumentException("Safety policy must not be null");
+        }
+        this.safetyPolicy = safetyPolicy;
+    }
+
     /**
      * Adds a new pattern entry
+     * Invalid patterns are refused; dangerous ones are handled according to the safety policy
      *
      * @param entry The pattern entry to add
      * @return true if the pattern was added successfully
@@ -50,9 +79,7 @@ public class PatternManager {
         }
 
         // Validate the pattern
-        try {
-            TextProcessor.isValidPattern(entry.getPattern());
-        } catch (Exception e) {
+        if (!isAcceptable(entry)) {
             return false;
         }
 
@@ -60,6 +87,30 @@ public class PatternManager {
         return true;
     }
 
+    /**
+     * Check a pattern against the analyzer and the safety policy
+     *
+     * @param entry The pattern entry to check
+     * @return true if the pattern compiles and the policy accepts its cost
+     */
+    private boolean isAcceptable(PatternEntry entry) {
+        PatternAnalyzer.PatternAnalysis analysis = PatternAnalyzer.analyze(entry);
+        if (!analysis.isValid()) {
+            return false;
+        }
+        if (!analysis.isDangerous() || safetyPolicy == SafetyPolicy.ALLOW) {
+            return true;
+        }
+
+        if (safetyPolicy == SafetyPolicy.REJECT) {
+            System.err.println("Rejected dangerous pattern '" + entry.getName() + "': " + analysis.getWarnings());
+            return false;
+        }
+        System.err.println("Warning: pattern '" + entry.getName() + "' may backtrack catastrophically: "
+                + analysis.getWarnings());
+        return true;
+    }
+
     /**
      * Removes a pattern entry by name
      *
@@ -93,9 +144,7 @@ public class PatternManager {
         }
 
         // Validate the new pattern
-        try {
-            TextProcessor.isValidPattern(newEntry.getPattern());
-        } catch (Exception e) {
+        if (!isAcceptable(newEntry)) {
             return false;
         }
 
@@ -369,6 +418,7 @@ public class PatternManager {
 
     /**
      * Applies all patterns to a text and returns all matches organized by pattern
+     * A MultiPatternMatcher finds the literal patterns and the DFA supported regex patterns in one pass each
      *
      * @param text The text to process
      * @return Map of pattern names to their match lists
@@ -378,25 +428,13 @@ public class PatternManager {
             return new HashMap<>();
         }
 
-        Map<String, List<String>> results = new HashMap<>();
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        Map<String, List<String>> results = new HashMap<>(matcher.findAllByPattern(text));
 
-        for (PatternEntry entry : patterns) {
-            try {
-                int flags = 0;
-                if (entry.isMultiline()) {
-                    flags |= java.util.regex.Pattern.MULTILINE;
-                }
-                if (entry.isCaseInsensitive()) {
-                    flags |= java.util.regex.Pattern.CASE_INSENSITIVE;
-                }
-
-                List<String> matches = TextProcessor.findMatches(text, entry.getPattern(), flags);
-                results.put(entry.getName(), matches);
-            } catch (PatternSyntaxException e) {
-                // Skip invalid patterns but log the error
-                System.err.println("Invalid pattern '" + entry.getName() + "': " + e.getMessage());
-                results.put(entry.getName(), new ArrayList<>());
-            }
+        // Skip invalid patterns but log the error
+        for (String invalidName : matcher.getInvalidPatterns()) {
+            System.err.println("Invalid pattern '" + invalidName + "'");
+            results.put(invalidName, new ArrayList<>());
         }
 
         return results;
@@ -0,0 +1,245 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node of the syntax tree produced by RegexParser
+ * Lengths are measured in UTF-16 chars; UNBOUNDED marks an unlimited maximum.
+ */
+final class RegexNode {
+    static final int UNBOUNDED = -1;
+
+    enum Kind {
+        EMPTY, CHAR_SET, CONCAT, ALTERNATION, REPEAT, GROUP, ASSERTION, BACK_REFERENCE, LOOKAROUND, ATOMIC
+    }
+
+    enum Assertion {
+        /** ^ without MULTILINE, or \A */
+        INPUT_START,
+        /** ^ with MULTILINE */
+        LINE_START,
+        /** \z */
+        INPUT_END,
+        /** $ without MULTILINE, or \Z */
+        INPUT_END_BEFORE_TERMINATOR,
+        /** $ with MULTILINE */
+        LINE_END,
+        WORD_BOUNDARY,
+        NON_WORD_BOUNDARY,
+        /** \G */
+        LAST_MATCH_END
+    }
+
+    enum Quantifier {
+        GREEDY, LAZY, POSSESSIVE
+    }
+
+    final Kind kind;
+    final List<RegexNode> children;
+    final CharSet charSet;
+    final boolean foldCase;
+    final int min;
+    final int max;
+    final Quantifier quantifier;
+    final int groupIndex;
+    final Assertion assertion;
+    final boolean unixLines;
+    final boolean lookahead;
+    final boolean negative;
+
+    private RegexNode(Kind kind, List<RegexNode> children, CharSet charSet, boolean foldCase,
+                      int min, int max, Quantifier quantifier, int groupIndex,
+                      Assertion assertion, boolean unixLines, boolean lookahead, boolean negative) {
+        this.kind = kind;
+        this.children = children;
+        this.charSet = charSet;
+        this.foldCase = foldCase;
+        this.min = min;
+        this.max = max;
+        this.quantifier = quantifier;
+        this.groupIndex = groupIndex;
+        this.assertion = assertion;
+        this.unixLines = unixLines;
+        this.lookahead = lookahead;
+        this.negative = negative;
+    }
+
+    static RegexNode empty() {
+        return new RegexNode(Kind.EMPTY, Collections.emptyList(), null, false,
+                0, 0, null, -1, null, false, false, false);
+    }
+
+    /**
+     * A set of chars; foldCase marks a pattern literal matched with ASCII case folding
+     */
+    static RegexNode charSet(CharSet set, boolean foldCase) {
+        return new RegexNode(Kind.CHAR_SET, Collections.emptyList(), set, foldCase,
+                0, 0, null, -1, null, false, false, false);
+    }
+
+    static RegexNode concat(List<RegexNode> children) {
+        return new RegexNode(Kind.CONCAT, List.copyOf(children), null, false,
+                0, 0, null, -1, null, false, false, false);
+    }
+
+    static RegexNode alternation(List<RegexNode> children) {
+        return new RegexNode(Kind.ALTERNATION, List.copyOf(children), null, false,
+                0, 0, null, -1, null, false, false, false);
+    }
+
+    static RegexNode repeat(RegexNode child, int min, int max, Quantifier quantifier) {
+        return new RegexNode(Kind.REPEAT, List.of(child), null, false,
+                min, max, quantifier, -1, null, false, false, false);
+    }
+
+    /**
+     * A group; groupIndex is -1 for non-capturing groups
+     */
+    static RegexNode group(RegexNode child, int groupIndex) {
+        return new RegexNode(Kind.GROUP, List.of(child), null, false,
+                0, 0, null, groupIndex, null, false, false, false);
+    }
+
+    static RegexNode assertion(Assertion assertion, boolean unixLines) {
+        return new RegexNode(Kind.ASSERTION, Collections.emptyList(), null, false,
+                0, 0, null, -1, assertion, unixLines, false, false);
+    }
+
+    static RegexNode backReference(int groupIndex) {
+        return new RegexNode(Kind.BACK_REFERENCE, Collections.emptyList(), null, false,
+                0, 0, null, groupIndex, null, false, false, false);
+    }
+
+    static RegexNode lookaround(RegexNode child, boolean lookahead, boolean negative) {
+        return new RegexNode(Kind.LOOKAROUND, List.of(child), null, false,
+                0, 0, null, -1, null, false, lookahead, negative);
+    }
+
+    static RegexNode atomic(RegexNode child) {
+        return new RegexNode(Kind.ATOMIC, List.of(child), null, false,
+                0, 0, null, -1, null, false, false, false);
+    }
+
+    RegexNode child() {
+        return children.get(0);
+    }
+
+    /**
+     * Returns true if the node consumes no input
+     */
+    boolean isZeroWidth() {
+        return kind == Kind.EMPTY || kind == Kind.ASSERTION || kind == Kind.LOOKAROUND;
+    }
+
+    /**
+     * Minimum number of chars a match of this node consumes
+     */
+    int minLength() {
+        switch (kind) {
+            case CHAR_SET:
+                return 1;
+            case CONCAT: {
+                long total = 0;
+                for (RegexNode child : children) {
+                    total += child.minLength();
+                }
+                return (int) Math.min(total, Integer.MAX_VALUE);
+            }
+            case ALTERNATION: {
+                int best = Integer.MAX_VALUE;
+                for (RegexNode child : children) {
+                    best = Math.min(best, child.minLength());
+                }
+                return children.isEmpty() ? 0 : best;
+            }
+            case REPEAT:
+                return (int) Math.min((long) min * child().minLength(), Integer.MAX_VALUE);
+            case GROUP:
+            case ATOMIC:
+                return child().minLength();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Maximum number of chars a match of this node consumes, or UNBOUNDED
+     */
+    int maxLength() {
+        switch (kind) {
+            case CHAR_SET:
+                return charSet.matchesSupplementary() ? 2 : 1;
+            case CONCAT: {
+                long total = 0;
+                for (RegexNode child : children) {
+                    int length = child.maxLength();
+                    if (length == UNBOUNDED) {
+                        return UNBOUNDED;
+                    }
+                    total += length;
+                }
+                return total > Integer.MAX_VALUE ? UNBOUNDED : (int) total;
+            }
+            case ALTERNATION: {
+                int best = 0;
+                for (RegexNode child : children) {
+                    int length = child.maxLength();
+                    if (length == UNBOUNDED) {
+                        return UNBOUNDED;
+                    }
+                    best = Math.max(best, length);
+                }
+                return best;
+            }
+            case REPEAT: {
+                int length = child().maxLength();
+                if (length == 0) {
+                    return 0;
+                }
+                if (length == UNBOUNDED || max == UNBOUNDED) {
+                    return UNBOUNDED;
+                }
+                long total = (long) length * max;
+                return total > Integer.MAX_VALUE ? UNBOUNDED : (int) total;
+            }
+            case GROUP:
+            case ATOMIC:
+                return child().maxLength();
+            case BACK_REFERENCE:
+                return UNBOUNDED;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns true if this node or any descendant has the given kind
+     */
+    boolean contains(Kind wanted) {
+        if (kind == wanted) {
+            return true;
+        }
+        for (RegexNode child : children) {
+            if (child.contains(wanted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this node or any descendant is the given assertion
+     */
+    boolean containsAssertion(Assertion wanted) {
+        if (kind == Kind.ASSERTION && assertion == wanted) {
+            return true;
+        }
+        for (RegexNode child : children) {
+            if (child.containsAssertion(wanted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,552 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Parser for the java.util.regex syntax into a RegexNode tree
+ * Covers the constructs used by typical search patterns; anything else makes
+ * parse() return null so callers fall back to plain java.util.regex behaviour.
+ * Patterns are expected to have been compiled successfully before being parsed.
+ */
+final class RegexParser {
+    private static final int SUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.MULTILINE
+            | Pattern.DOTALL | Pattern.UNIX_LINES | Pattern.UNICODE_CASE | Pattern.LITERAL;
+
+    static final CharSet DIGITS = CharSet.range('0', '9');
+    static final CharSet WORD_CHARS = CharSet.ofRanges('a', 'z', 'A', 'Z', '_', '_', '0', '9');
+    static final CharSet SPACES = CharSet.ofRanges('\t', '\r', ' ', ' ');
+    static final CharSet HORIZONTAL_SPACES = CharSet.ofRanges(' ', ' ', '\t', '\t', 0xA0, 0xA0,
+            0x1680, 0x1680, 0x180e, 0x180e, 0x2000, 0x200a, 0x202f, 0x202f, 0x205f, 0x205f, 0x3000, 0x3000);
+    static final CharSet VERTICAL_SPACES = CharSet.ofRanges('\n', '\r', 0x85, 0x85, 0x2028, 0x2029);
+    static final CharSet LINE_TERMINATORS = CharSet.ofRanges('\n', '\n', '\r', '\r',
+            0x85, 0x85, 0x2028, 0x2029);
+
+    private final String pattern;
+    private int pos;
+    private int flags;
+    private int groupCount;
+    private final Map<String, Integer> namedGroups = new HashMap<>();
+
+    private RegexParser(String pattern, int flags) {
+        this.pattern = pattern;
+        this.flags = flags;
+    }
+
+    /**
+     * Parses a pattern compiled with the given flags
+     *
+     * @param pattern The regex pattern
+     * @param flags Regex pattern flags
+     * @return The syntax tree, or null if the pattern uses unsupported constructs or flags
+     */
+    static RegexNode parse(String pattern, int flags) {
+        if (pattern == null || (flags & ~SUPPORTED_FLAGS) != 0) {
+            return null;
+        }
+
+        RegexParser parser = new RegexParser(pattern, flags);
+        try {
+            if ((flags & Pattern.LITERAL) != 0) {
+                return parser.parseLiteralPattern();
+            }
+            RegexNode root = parser.parseAlternation();
+            if (parser.pos != pattern.length()) {
+                return null;
+            }
+            return root;
+        } catch (Unsupported | IndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private RegexNode parseLiteralPattern() {
+        List<RegexNode> items = new ArrayList<>();
+        for (int i = 0; i < pattern.length(); i++) {
+            items.add(literal(pattern.charAt(i)));
+        }
+        return items.size() == 1 ? items.get(0) : RegexNode.concat(items);
+    }
+
+    private RegexNode parseAlternation() {
+        List<RegexNode> branches = new ArrayList<>();
+        branches.add(parseConcat());
+        while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+            pos++;
+            branches.add(parseConcat());
+        }
+        return branches.size() == 1 ? branches.get(0) : RegexNode.alternation(branches);
+    }
+
+    private RegexNode parseConcat() {
+        List<RegexNode> items = new ArrayList<>();
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            if (c == '\\' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) == 'Q') {
+                pos += 2;
+                parseQuoted(items);
+                continue;
+            }
+            RegexNode atom = parseAtom();
+            if (atom == null) {
+                continue;   // inline flag group such as (?i)
+            }
+            items.add(parseQuantifiers(atom));
+        }
+        if (items.isEmpty()) {
+            return RegexNode.empty();
+        }
+        return items.size() == 1 ? items.get(0) : RegexNode.concat(items);
+    }
+
+    private void parseQuoted(List<RegexNode> items) {
+        int end = pattern.indexOf("\\E", pos);
+        if (end < 0) {
+            end = pattern.length();
+        }
+        for (int i = pos; i < end; i++) {
+            items.add(literal(pattern.charAt(i)));
+        }
+        pos = Math.min(pattern.length(), end + 2);
+        // A quantifier after \E applies to the last quoted char
+        if (!items.isEmpty() && pos < pattern.length() && "*+?{".indexOf(pattern.charAt(pos)) >= 0) {
+            RegexNode last = items.remove(items.size() - 1);
+            items.add(parseQuantifiers(last));
+        }
+    }
+
+    private RegexNode parseQuantifiers(RegexNode atom) {
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            int min;
+            int max;
+            if (c == '*') {
+                min = 0;
+                max = RegexNode.UNBOUNDED;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                max = RegexNode.UNBOUNDED;
+                pos++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                pos++;
+            } else if (c == '{') {
+                int close = pattern.indexOf('}', pos);
+                if (close < 0) {
+                    throw new Unsupported();
+                }
+                String body = pattern.substring(pos + 1, close);
+                int comma = body.indexOf(',');
+                if (comma < 0) {
+                    min = Integer.parseInt(body);
+                    max = min;
+                } else {
+                    min = Integer.parseInt(body.substring(0, comma));
+                    String upper = body.substring(comma + 1);
+                    max = upper.isEmpty() ? RegexNode.UNBOUNDED : Integer.parseInt(upper);
+                }
+                pos = close + 1;
+            } else {
+                break;
+            }
+
+            RegexNode.Quantifier quantifier = RegexNode.Quantifier.GREEDY;
+            if (pos < pattern.length() && pattern.charAt(pos) == '?') {
+                quantifier = RegexNode.Quantifier.LAZY;
+                pos++;
+            } else if (pos < pattern.length() && pattern.charAt(pos) == '+') {
+                quantifier = RegexNode.Quantifier.POSSESSIVE;
+                pos++;
+            }
+            atom = RegexNode.repeat(atom, min, max, quantifier);
+        }
+        return atom;
+    }
+
+    private RegexNode parseAtom() {
+        char c = pattern.charAt(pos);
+        switch (c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                pos++;
+                return RegexNode.charSet(parseClass(), false);
+            case '.':
+                pos++;
+                return RegexNode.charSet(dot(), false);
+            case '^':
+                pos++;
+                return RegexNode.assertion(has(Pattern.MULTILINE)
+                        ? RegexNode.Assertion.LINE_START : RegexNode.Assertion.INPUT_START, has(Pattern.UNIX_LINES));
+            case '$':
+                pos++;
+                return RegexNode.assertion(has(Pattern.MULTILINE)
+                        ? RegexNode.Assertion.LINE_END : RegexNode.Assertion.INPUT_END_BEFORE_TERMINATOR,
+                        has(Pattern.UNIX_LINES));
+            case '\\':
+                pos++;
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new Unsupported();
+            default:
+                pos++;
+                return literal(c);
+        }
+    }
+
+    private RegexNode parseGroup() {
+        pos++;   // '('
+        int savedFlags = flags;
+        RegexNode result;
+
+        if (pattern.startsWith("?:", pos)) {
+            pos += 2;
+            result = RegexNode.group(parseAlternation(), -1);
+        } else if (pattern.startsWith("?=", pos) || pattern.startsWith("?!", pos)) {
+            boolean negative = pattern.charAt(pos + 1) == '!';
+            pos += 2;
+            result = RegexNode.lookaround(parseAlternation(), true, negative);
+        } else if (pattern.startsWith("?<=", pos) || pattern.startsWith("?<!", pos)) {
+            boolean negative = pattern.charAt(pos + 2) == '!';
+            pos += 3;
+            result = RegexNode.lookaround(parseAlternation(), false, negative);
+        } else if (pattern.startsWith("?<", pos)) {
+            int close = pattern.indexOf('>', pos);
+            String name = pattern.substring(pos + 2, close);
+            pos = close + 1;
+            int index = ++groupCount;
+            namedGroups.put(name, index);
+            result = RegexNode.group(parseAlternation(), index);
+        } else if (pattern.startsWith("?>", pos)) {
+            pos += 2;
+            result = RegexNode.atomic(parseAlternation());
+        } else if (pattern.startsWith("?", pos)) {
+            pos++;
+            boolean scoped = parseInlineFlags();
+            if (!scoped) {
+                // (?flags) applies to the rest of the enclosing group
+                expect(')');
+                return null;
+            }
+            result = RegexNode.group(parseAlternation(), -1);
+        } else {
+            int index = ++groupCount;
+            result = RegexNode.group(parseAlternation(), index);
+        }
+
+        expect(')');
+        flags = savedFlags;
+        return result;
+    }
+
+    /**
+     * Parses inline flags after "(?" and returns true if they introduce a scoped group "(?i:...)"
+     */
+    private boolean parseInlineFlags() {
+        boolean enable = true;
+        while (true) {
+            char c = pattern.charAt(pos);
+            if (c == ')') {
+                return false;
+            }
+            if (c == ':') {
+                pos++;
+                return true;
+            }
+            pos++;
+            int flag;
+            switch (c) {
+                case '-':
+                    enable = false;
+                    continue;
+                case 'i':
+                    flag = Pattern.CASE_INSENSITIVE;
+                    break;
+                case 'm':
+                    flag = Pattern.MULTILINE;
+                    break;
+                case 's':
+                    flag = Pattern.DOTALL;
+                    break;
+                case 'd':
+                    flag = Pattern.UNIX_LINES;
+                    break;
+                case 'u':
+                    flag = Pattern.UNICODE_CASE;
+                    break;
+                default:
+                    throw new Unsupported();
+            }
+            flags = enable ? flags | flag : flags & ~flag;
+        }
+    }
+
+    private RegexNode parseEscape() {
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case 'b':
+                if (pos < pattern.length() && pattern.charAt(pos) == '{') {
+                    throw new Unsupported();
+                }
+                return RegexNode.assertion(RegexNode.Assertion.WORD_BOUNDARY, false);
+            case 'B':
+                return RegexNode.assertion(RegexNode.Assertion.NON_WORD_BOUNDARY, false);
+            case 'A':
+                return RegexNode.assertion(RegexNode.Assertion.INPUT_START, false);
+            case 'z':
+                return RegexNode.assertion(RegexNode.Assertion.INPUT_END, false);
+            case 'Z':
+                return RegexNode.assertion(RegexNode.Assertion.INPUT_END_BEFORE_TERMINATOR, has(Pattern.UNIX_LINES));
+            case 'G':
+                return RegexNode.assertion(RegexNode.Assertion.LAST_MATCH_END, false);
+            case 'k': {
+                int close = pattern.indexOf('>', pos);
+                Integer index = namedGroups.get(pattern.substring(pos + 1, close));
+                if (index == null) {
+                    throw new Unsupported();
+                }
+                pos = close + 1;
+                return RegexNode.backReference(index);
+            }
+            default:
+                break;
+        }
+
+        if (c >= '1' && c <= '9') {
+            int reference = c - '0';
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos))) {
+                int extended = reference * 10 + (pattern.charAt(pos) - '0');
+                if (extended > groupCount) {
+                    break;
+                }
+                reference = extended;
+                pos++;
+            }
+            return RegexNode.backReference(reference);
+        }
+
+        CharSet predefined = predefinedClass(c);
+        if (predefined != null) {
+            return RegexNode.charSet(predefined, false);
+        }
+        return literal(escapedChar(c));
+    }
+
+    /**
+     * Parses the body of a character class; the opening '[' has been consumed
+     */
+    private CharSet parseClass() {
+        boolean negated = false;
+        if (pattern.charAt(pos) == '^') {
+            negated = true;
+            pos++;
+        }
+
+        CharSet set = CharSet.EMPTY;
+        boolean first = true;
+        while (true) {
+            char c = pattern.charAt(pos);
+            if (c == ']' && !first) {
+                pos++;
+                break;
+            }
+            first = false;
+
+            if (c == '[') {
+                pos++;
+                set = set.union(parseClass());
+                continue;
+            }
+            if (c == '&' && pattern.startsWith("&&", pos)) {
+                throw new Unsupported();
+            }
+
+            char low;
+            pos++;
+            if (c == '\\') {
+                char escape = pattern.charAt(pos++);
+                CharSet predefined = predefinedClass(escape);
+                if (predefined != null) {
+                    set = set.union(predefined);
+                    continue;
+                }
+                if (Character.isDigit(escape) && escape != '0') {
+                    throw new Unsupported();
+                }
+                low = escapedChar(escape);
+            } else {
+                low = c;
+            }
+            if (Character.isSurrogate(low)) {
+                throw new Unsupported();
+            }
+
+            if (pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                char d = pattern.charAt(pos++);
+                if (d == '[') {
+                    throw new Unsupported();
+                }
+                char high = d == '\\' ? escapedChar(pattern.charAt(pos++)) : d;
+                if (Character.isSurrogate(high) || high < low) {
+                    throw new Unsupported();
+                }
+                set = set.union(CharSet.range(low, high));
+            } else {
+                set = set.union(CharSet.of(low));
+            }
+        }
+
+        if (has(Pattern.CASE_INSENSITIVE)) {
+            if (has(Pattern.UNICODE_CASE)) {
+                throw new Unsupported();
+            }
+            set = set.withAsciiCaseFolding();
+        }
+        return negated ? set.complement() : set;
+    }
+
+    private CharSet predefinedClass(char c) {
+        switch (c) {
+            case 'd':
+                return DIGITS;
+            case 'D':
+                return DIGITS.complement();
+            case 'w':
+                return WORD_CHARS;
+            case 'W':
+                return WORD_CHARS.complement();
+            case 's':
+                return SPACES;
+            case 'S':
+                return SPACES.complement();
+            case 'h':
+                return HORIZONTAL_SPACES;
+            case 'H':
+                return HORIZONTAL_SPACES.complement();
+            case 'v':
+                return VERTICAL_SPACES;
+            case 'V':
+                return VERTICAL_SPACES.complement();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Resolves a single-char escape (the backslash has been consumed, c is the char after it)
+     */
+    private char escapedChar(char c) {
+        switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return '\u0007';
+            case 'e':
+                return '\u001B';
+            case 'c':
+                return (char) (pattern.charAt(pos++) ^ 64);
+            case '0': {
+                int value = 0;
+                int digits = 0;
+                int maxDigits = pattern.charAt(pos) <= '3' ? 3 : 2;
+                while (digits < maxDigits && pos < pattern.length()
+                        && pattern.charAt(pos) >= '0' && pattern.charAt(pos) <= '7') {
+                    value = value * 8 + (pattern.charAt(pos++) - '0');
+                    digits++;
+                }
+                return (char) value;
+            }
+            case 'x': {
+                int value;
+                if (pattern.charAt(pos) == '{') {
+                    int close = pattern.indexOf('}', pos);
+                    value = Integer.parseInt(pattern.substring(pos + 1, close), 16);
+                    pos = close + 1;
+                } else {
+                    value = Integer.parseInt(pattern.substring(pos, pos + 2), 16);
+                    pos += 2;
+                }
+                if (value > Character.MAX_VALUE) {
+                    throw new Unsupported();
+                }
+                return (char) value;
+            }
+            case 'u': {
+                int value = Integer.parseInt(pattern.substring(pos, pos + 4), 16);
+                pos += 4;
+                return (char) value;
+            }
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw new Unsupported();
+                }
+                return c;
+        }
+    }
+
+    private CharSet dot() {
+        if (has(Pattern.DOTALL)) {
+            return CharSet.ALL;
+        }
+        if (has(Pattern.UNIX_LINES)) {
+            return CharSet.of('\n').complement();
+        }
+        return LINE_TERMINATORS.complement();
+    }
+
+    private RegexNode literal(char c) {
+        if (Character.isSurrogate(c)) {
+            throw new Unsupported();
+        }
+        if (has(Pattern.CASE_INSENSITIVE)) {
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (has(Pattern.UNICODE_CASE) && (letter || c >= 128)) {
+                throw new Unsupported();
+            }
+            if (letter) {
+                return RegexNode.charSet(CharSet.of(c).withAsciiCaseFolding(), true);
+            }
+        }
+        return RegexNode.charSet(CharSet.of(c), false);
+    }
+
+    private void expect(char c) {
+        if (pos >= pattern.length() || pattern.charAt(pos) != c) {
+            throw new Unsupported();
+        }
+        pos++;
+    }
+
+    private boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Signals a construct outside the supported subset
+     */
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Ordered set of replacement rules applied to a text in a single left-to-right pass
+ * At every position the match that starts first wins; among matches starting at the same
+ * position the rule added first wins. After a replacement the scan continues behind the
+ * replaced text, so matches of any rule that overlap it are dropped and replaced text is never
+ * matched again. An empty match inserts its replacement and the char at its position is copied,
+ * as Matcher.replaceAll does. With a single rule the result equals TextProcessor.replaceAll.
+ */
+public class ReplacementRuleSet {
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Creates an empty rule set
+     */
+    public ReplacementRuleSet() {
+    }
+
+    /**
+     * Creates a rule set from a list of rules, in priority order
+     *
+     * @param rules The rules to apply
+     */
+    public ReplacementRuleSet(List<Rule> rules) {
+        // Not through addRule, which subclasses may override before they are initialized
+        for (Rule rule : rules) {
+            this.rules.add(requireRule(rule));
+        }
+    }
+
+    /**
+     * Adds a rule with a lower priority than all rules added before
+     *
+     * @param pattern The regex pattern to match
+     * @param flags Regex pattern flags
+     * @param replacement The replacement string, which may refer to groups as $1 or ${name}
+     * @return This rule set
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public ReplacementRuleSet addRule(String pattern, int flags, String replacement) {
+        return addRule(new Rule(pattern, flags, replacement));
+    }
+
+    /**
+     * Adds a rule with a lower priority than all rules added before
+     *
+     * @param rule The rule to add
+     * @return This rule set
+     */
+    public ReplacementRuleSet addRule(Rule rule) {
+        rules.add(requireRule(rule));
+        return this;
+    }
+
+    private static Rule requireRule(Rule rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("Rule must not be null");
+        }
+        return rule;
+    }
+
+    /**
+     * Gets the rules in priority order
+     *
+     * @return Unmodifiable list of rules
+     */
+    public List<Rule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Applies all rules to a text
+     *
+     * @param text The text to process
+     * @return The text with all replacements made
+     */
+    public String apply(CharSequence text) {
+        return apply(text, null);
+    }
+
+    /**
+     * Applies all rules to a text within a time budget
+     *
+     * @param text The text to process
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The text with all replacements made
+     * @throws MatchTimeoutException If the budget runs out; carries the number of replacements made so far
+     */
+    public String apply(CharSequence text, MatchBudget budget) {
+        if (text == null) {
+            return null;
+        }
+        if (rules.isEmpty()) {
+            return text.toString();
+        }
+        if (budget != null) {
+            budget.check();
+        }
+
+        CharSequence guarded = InterruptibleCharSequence.wrap(text, budget);
+        MatchScanner[] scanners = new MatchScanner[rules.size()];
+        boolean[] pending = new boolean[rules.size()];
+        StringBuilder result = new StringBuilder(text.length());
+        int position = 0;
+        long count = 0;
+
+        try {
+            for (int i = 0; i < scanners.length; i++) {
+                scanners[i] = MatchScanner.of(rules.get(i).compiled, guarded);
+                pending[i] = scanners[i].find();
+            }
+
+            while (true) {
+                int winner = -1;
+                for (int i = 0; i < scanners.length; i++) {
+                    if (pending[i] && scanners[i].start() < position) {
+                        // Overlaps the last replacement; search again behind it
+                        scanners[i].skipTo(position);
+                        pending[i] = scanners[i].find();
+                    }
+                    if (pending[i] && (winner < 0 || scanners[i].start() < scanners[winner].start())) {
+                        winner = i;
+                    }
+                }
+                if (winner < 0) {
+                    break;
+                }
+
+                MatchScanner match = scanners[winner];
+                result.append(text, position, match.start());
+                rules.get(winner).appendReplacement(result, text, match);
+                count++;
+                position = match.end();
+                if (match.start() == match.end() && position < text.length()) {
+                    result.append(text.charAt(position));
+                    position++;
+                }
+                pending[winner] = match.find();
+            }
+        } catch (MatchTimeoutException e) {
+            throw e.withProgress(count, position);
+        }
+
+        result.append(text, position, text.length());
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplacementRuleSet" + rules;
+    }
+
+    /**
+     * A pattern with the replacement for its matches
+     */
+    public static class Rule {
+        private final String pattern;
+        private final int flags;
+        private final String replacement;
+        private final Pattern compiled;
+        private final ReplacementTemplate template;
+
+        /**
+         * Creates a rule
+         *
+         * @param pattern The regex pattern to match
+         * @param flags Regex pattern flags
+         * @param replacement The replacement string, using the Matcher.replaceAll syntax
+         * @throws PatternSyntaxException If the pattern is invalid
+         * @throws IllegalArgumentException If the replacement refers to an unknown group name
+         * @throws IndexOutOfBoundsException If the replacement refers to a group number the pattern does not have
+         */
+        public Rule(String pattern, int flags, String replacement) {
+            if (pattern == null || pattern.isEmpty()) {
+                throw new IllegalArgumentException("Pattern must not be empty");
+            }
+            if (replacement == null) {
+                throw new IllegalArgumentException("Replacement must not be null");
+            }
+            this.pattern = pattern;
+            this.flags = flags;
+            this.replacement = replacement;
+            this.compiled = PatternCache.getShared().compile(pattern, flags);
+            this.template = new ReplacementTemplate(replacement, compiled);
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public String getReplacement() {
+            return replacement;
+        }
+
+        /**
+         * Gets the parsed replacement
+         */
+        public ReplacementTemplate getTemplate() {
+            return template;
+        }
+
+        /**
+         * Appends the replacement for a match, expanding group references like Matcher.appendReplacement
+         */
+        void appendReplacement(StringBuilder result, CharSequence text, MatchResult match) {
+            template.appendTo(result, text, match);
+        }
+
+        @Override
+        public String toString() {
+            return "Rule[" + pattern + " -> " + replacement + "]";
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Replacement string in the Matcher.replaceAll syntax, parsed once for a pattern
+ * The replacement is split into literal segments and the group references between them:
+ * $n and ${name} refer to groups, a backslash escapes the next char. Matcher.appendReplacement
+ * parses the replacement again for every match and copies each group into a new String; a
+ * template appends the literal segments and copies the group chars straight from the searched
+ * text into the output. Invalid references are reported when the template is created, with the
+ * exceptions Matcher.appendReplacement throws for them. Instances are immutable and thread-safe.
+ */
+public final class ReplacementTemplate {
+    private final String replacement;
+    // literals[i] is appended before groups[i]; the last literal follows the last group
+    private final String[] literals;
+    private final int[] groups;
+
+    /**
+     * Parses a replacement string for the matches of a pattern
+     *
+     * @param replacement The replacement string, which may refer to groups as $1 or ${name}
+     * @param pattern The pattern whose groups the replacement refers to
+     * @throws IllegalArgumentException If the replacement refers to an unknown group name or ends in an escape
+     * @throws IndexOutOfBoundsException If the replacement refers to a group number the pattern does not have
+     */
+    public ReplacementTemplate(String replacement, Pattern pattern) {
+        if (replacement == null || pattern == null) {
+            throw new IllegalArgumentException("Replacement and pattern must not be null");
+        }
+        this.replacement = replacement;
+
+        int groupCount = pattern.matcher("").groupCount();
+        List<String> literalList = new ArrayList<>();
+        List<Integer> groupList = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                literal.append(replacement.charAt(i++));
+            } else if (c == '$') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                int group;
+                if (replacement.charAt(i) == '{') {
+                    int close = replacement.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    String name = replacement.substring(i + 1, close);
+                    Map<String, Integer> namedGroups = pattern.namedGroups();
+                    if (!namedGroups.containsKey(name)) {
+                        throw new IllegalArgumentException("No group with name {" + name + "}");
+                    }
+                    group = namedGroups.get(name);
+                    i = close + 1;
+                } else {
+                    group = replacement.charAt(i++) - '0';
+                    if (group < 0 || group > 9) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    if (group > groupCount) {
+                        throw new IndexOutOfBoundsException("No group " + group);
+                    }
+                    // Take further digits as long as they still name an existing group
+                    while (i < replacement.length()) {
+                        int digit = replacement.charAt(i) - '0';
+                        if (digit < 0 || digit > 9 || group * 10 + digit > groupCount) {
+                            break;
+                        }
+                        group = group * 10 + digit;
+                        i++;
+                    }
+                }
+                literalList.add(literal.toString());
+                groupList.add(group);
+                literal.setLength(0);
+            } else {
+                literal.append(c);
+            }
+        }
+        literalList.add(literal.toString());
+
+        this.literals = literalList.toArray(new String[0]);
+        this.groups = new int[groupList.size()];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = groupList.get(g);
+        }
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Returns true if the replacement refers to no groups, so every match gets the same text
+     */
+    public boolean isLiteral() {
+        return groups.length == 0;
+    }
+
+    /**
+     * Appends the replacement for a match to a buffer
+     *
+     * @param out The buffer to append to
+     * @param text The searched text the match offsets refer to
+     * @param match The match to replace
+     */
+    public void appendTo(StringBuilder out, CharSequence text, MatchResult match) {
+        for (int i = 0; i < groups.length; i++) {
+            out.append(literals[i]);
+            int start = match.start(groups[i]);
+            if (start >= 0) {
+                out.append(text, start, match.end(groups[i]));
+            }
+        }
+        out.append(literals[groups.length]);
+    }
+
+    /**
+     * Appends the replacement for a match to any output
+     *
+     * @param out The output to append to
+     * @param text The searched text the match offsets refer to
+     * @param match The match to replace
+     * @throws IOException If the output cannot be written
+     */
+    public void appendTo(Appendable out, CharSequence text, MatchResult match) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendTo((StringBuilder) out, text, match);
+            return;
+        }
+        for (int i = 0; i < groups.length; i++) {
+            out.append(literals[i]);
+            int start = match.start(groups[i]);
+            if (start >= 0) {
+                out.append(text, start, match.end(groups[i]));
+            }
+        }
+        out.append(literals[groups.length]);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplacementTemplate[" + replacement + "]";
+    }
+}
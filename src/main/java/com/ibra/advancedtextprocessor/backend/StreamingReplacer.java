@@ -0,0 +1,290 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Replaces all matches of a pattern while streaming the text from a Reader to a Writer
+ * The text is read into a sliding window and matched with the window end as the input end.
+ * Whenever Matcher.hitEnd() reports that more input could change the result, the window is
+ * extended before the match is used, so the output equals Matcher.replaceAll on the whole text.
+ * Text before the search position is written out and dropped from the window, keeping only the
+ * few chars lookbehind and word boundaries look at.
+ *
+ * Memory stays bounded when the pattern has a known maximum match length, or cannot match a
+ * line feed, in which case the window never grows beyond one line. For other patterns the
+ * window grows while a match is pending, up to the distance to the next match in the worst case.
+ * Patterns using \G are matched against the whole input, since every window reset would move the
+ * position \G matches at. Lookbehind longer than the kept context may differ from replaceAll, as
+ * may patterns RegexParser does not understand if their lookbehind reaches more than
+ * MatchReach.DEFAULT_CONTEXT chars back.
+ */
+public class StreamingReplacer {
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final ReplacementRuleSet.Rule rule;
+    private final Pattern pattern;
+    private final int chunkSize;
+    private final int context;
+    private final int reach;
+    private final boolean lineBounded;
+    private final boolean wholeInput;
+
+    /**
+     * Creates a streaming replacer
+     *
+     * @param patternStr The regex pattern to match
+     * @param flags Regex pattern flags
+     * @param replacement The replacement string, using the Matcher.replaceAll syntax
+     * @throws PatternSyntaxException If the pattern is invalid
+     */
+    public StreamingReplacer(String patternStr, int flags, String replacement) {
+        this(patternStr, flags, replacement, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a streaming replacer that reads the input in chunks of the given size
+     */
+    StreamingReplacer(String patternStr, int flags, String replacement, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.rule = new ReplacementRuleSet.Rule(patternStr, flags, replacement);
+        this.pattern = PatternCache.getShared().compile(patternStr, flags);
+        this.chunkSize = chunkSize;
+
+        MatchReach analysis = MatchReach.of(patternStr, flags);
+        this.wholeInput = analysis.usesLastMatchEnd;
+        this.context = analysis.context;
+        this.reach = wholeInput ? RegexNode.UNBOUNDED : analysis.reach;
+        this.lineBounded = !wholeInput && analysis.lineBounded;
+    }
+
+    /**
+     * Gets the maximum number of chars a match attempt reads from its start, or -1 if unbounded
+     * Patterns with a bounded reach are replaced in constant memory.
+     */
+    public int getReach() {
+        return reach;
+    }
+
+    /**
+     * Check whether no match of the pattern can span a line feed
+     */
+    public boolean isLineBounded() {
+        return lineBounded;
+    }
+
+    /**
+     * Replaces all matches in a character stream
+     *
+     * @param in The text to read; it is read to the end but not closed
+     * @param out Where the replaced text is written; it is not closed or flushed
+     * @return The number of replacements made
+     * @throws IOException If reading or writing fails
+     */
+    public long replace(Reader in, Writer out) throws IOException {
+        return replace(in, out, null);
+    }
+
+    /**
+     * Replaces all matches in a character stream within a time budget
+     *
+     * @param in The text to read; it is read to the end but not closed
+     * @param out Where the replaced text is written; it is not closed or flushed
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of replacements made
+     * @throws IOException If reading or writing fails
+     * @throws MatchTimeoutException If the budget runs out; carries the number of replacements and
+     * the number of input chars written so far
+     */
+    public long replace(Reader in, Writer out, MatchBudget budget) throws IOException {
+        return new Run(in, out, budget).replaceAll();
+    }
+
+    /**
+     * Replaces all matches in an encoded byte stream
+     * Malformed input is decoded to the replacement char, as FileReader does.
+     *
+     * @param in The bytes to read; the channel is read to the end but not closed
+     * @param out Where the replaced text is written; it is not closed
+     * @param charset The charset of both the input and the output
+     * @param budget Time budget and cancellation token, or null for no limit
+     * @return The number of replacements made
+     * @throws IOException If reading or writing fails
+     * @throws MatchTimeoutException If the budget runs out
+     */
+    public long replace(ReadableByteChannel in, WritableByteChannel out, Charset charset, MatchBudget budget)
+            throws IOException {
+        Reader reader = Channels.newReader(in, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+        Writer writer = Channels.newWriter(out, charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+        long count = replace(reader, writer, budget);
+        writer.flush();
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingReplacer[" + rule + ", reach=" + (reach == RegexNode.UNBOUNDED ? "unbounded" : reach)
+                + (lineBounded ? ", line bounded" : "") + "]";
+    }
+
+    /**
+     * State of one replacement pass over a stream
+     * Positions are indexes into the window buffer; base is the stream offset of its first char.
+     */
+    private final class Run {
+        private final Reader in;
+        private final Writer out;
+        private final MatchBudget budget;
+        private final StringBuilder replaced = new StringBuilder();
+        private char[] buffer;
+        private int count;
+        private long base;
+        private int emitted;
+        private int searchFrom;
+        private boolean endOfInput;
+        private long replacements;
+        private CharBuffer window;
+        private Matcher matcher;
+
+        Run(Reader in, Writer out, MatchBudget budget) {
+            this.in = in;
+            this.out = out;
+            this.budget = budget;
+            this.buffer = new char[chunkSize + context];
+        }
+
+        long replaceAll() throws IOException {
+            try {
+                fill(chunkSize);
+                while (wholeInput && !endOfInput) {
+                    fill(chunkSize);
+                }
+                resetMatcher();
+                while (true) {
+                    boolean found = matcher.find();
+                    if (!endOfInput && (!found || matcher.hitEnd())) {
+                        // More input could extend the match or turn a failed attempt into a match
+                        if (!found) {
+                            searchFrom = Math.max(searchFrom, matcher.hitEnd() ? settledPosition() : count);
+                        }
+                        slide();
+                        fill(Math.max(chunkSize, count - searchFrom));
+                        if (searchFrom > count) {
+                            // An empty match at the very end of the input was already replaced
+                            break;
+                        }
+                        resetMatcher();
+                        continue;
+                    }
+                    if (!found) {
+                        break;
+                    }
+
+                    out.write(buffer, emitted, matcher.start() - emitted);
+                    replaced.setLength(0);
+                    rule.appendReplacement(replaced, window, matcher);
+                    out.append(replaced);
+                    replacements++;
+                    emitted = matcher.end();
+                    // Matcher.find() never returns the same empty match twice
+                    searchFrom = matcher.end() == matcher.start() ? emitted + 1 : emitted;
+                }
+                out.write(buffer, emitted, count - emitted);
+                emitted = count;
+                return replacements;
+            } catch (MatchTimeoutException e) {
+                throw e.withProgress(replacements, base + emitted);
+            }
+        }
+
+        /**
+         * Gets the first position whose match attempt may still depend on input beyond the window
+         * Attempts before it read no further than the window end and failed for good.
+         */
+        private int settledPosition() {
+            if (reach != RegexNode.UNBOUNDED) {
+                return count - reach;
+            }
+            if (lineBounded) {
+                // No attempt reads past a line feed, apart from assertions peeking after it
+                for (int i = count - 1 - MatchReach.ASSERTION_LOOKAHEAD; i > searchFrom; i--) {
+                    if (buffer[i] == '\n') {
+                        return i;
+                    }
+                }
+            }
+            return searchFrom;
+        }
+
+        /**
+         * Writes out the text before the search position and drops it from the window
+         */
+        private void slide() throws IOException {
+            if (searchFrom > count) {
+                return;
+            }
+            out.write(buffer, emitted, searchFrom - emitted);
+            emitted = searchFrom;
+
+            int drop = Math.max(0, searchFrom - context);
+            if (drop > 0) {
+                System.arraycopy(buffer, drop, buffer, 0, count - drop);
+                count -= drop;
+                emitted -= drop;
+                searchFrom -= drop;
+                base += drop;
+            }
+        }
+
+        /**
+         * Reads at least the given number of chars into the window, unless the input ends first
+         */
+        private void fill(int wanted) throws IOException {
+            if (budget != null) {
+                budget.check();
+            }
+            if (buffer.length - count < wanted) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + wanted));
+            }
+            int target = count + wanted;
+            while (count < target) {
+                int read = in.read(buffer, count, buffer.length - count);
+                if (read < 0) {
+                    endOfInput = true;
+                    return;
+                }
+                count += read;
+            }
+        }
+
+        private void resetMatcher() {
+            window = CharBuffer.wrap(buffer, 0, count);
+            CharSequence guarded = InterruptibleCharSequence.wrap(window, budget);
+            if (matcher == null) {
+                matcher = pattern.matcher(guarded)
+                        .useTransparentBounds(true)
+                        .useAnchoringBounds(false);
+            } else {
+                matcher.reset(guarded);
+            }
+            matcher.region(searchFrom, count);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ibra.advancedtextprocessor.backend;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Byte search kernels on the incubating Vector API
+ * Each step compares as many bytes as the widest vector the CPU supports holds, 32 with AVX2
+ * and 64 with AVX-512; the bytes behind the last full vector are left to the scalar kernel.
+ * Only loaded by ByteScanner.getDefault once the jdk.incubator.vector module is known to be there.
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final ByteScanner TAIL = ByteScanner.scalar();
+
+    @Override
+    public int getVectorSize() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int indexOf(byte[] bytes, int from, int to, byte value) {
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            VectorMask<Byte> found = ByteVector.fromArray(SPECIES, bytes, i).eq(value);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return TAIL.indexOf(bytes, i, to, value);
+    }
+
+    @Override
+    public int indexOfAny(byte[] bytes, int from, int to, byte first, byte second) {
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, i);
+            VectorMask<Byte> found = vector.eq(first).or(vector.eq(second));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return TAIL.indexOfAny(bytes, i, to, first, second);
+    }
+
+    @Override
+    public int indexOf(byte[] bytes, int from, int to, byte[] needle) {
+        int length = needle.length;
+        if (length == 1) {
+            return indexOf(bytes, from, to, needle[0]);
+        }
+        // Compare the first and the last byte of the needle at every start in the vector at
+        // once; only starts where both agree are compared in full
+        byte head = needle[0];
+        byte tail = needle[length - 1];
+        int i = from;
+        for (int bound = to - length + 1 - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            VectorMask<Byte> candidates = ByteVector.fromArray(SPECIES, bytes, i).eq(head)
+                    .and(ByteVector.fromArray(SPECIES, bytes, i + length - 1).eq(tail));
+            if (candidates.anyTrue()) {
+                long bits = candidates.toLong();
+                while (bits != 0) {
+                    int start = i + Long.numberOfTrailingZeros(bits);
+                    if (startsWith(bytes, start, needle)) {
+                        return start;
+                    }
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return TAIL.indexOf(bytes, i, to, needle);
+    }
+
+    @Override
+    public int indexOfNonAscii(byte[] bytes, int from, int to) {
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            VectorMask<Byte> found = ByteVector.fromArray(SPECIES, bytes, i).compare(VectorOperators.LT, (byte) 0);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return TAIL.indexOfNonAscii(bytes, i, to);
+    }
+
+    @Override
+    public int count(byte[] bytes, int from, int to, byte value) {
+        int count = 0;
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            count += ByteVector.fromArray(SPECIES, bytes, i).eq(value).trueCount();
+        }
+        return count + TAIL.count(bytes, i, to, value);
+    }
+
+    @Override
+    public int countUtf8Chars(byte[] bytes, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, i);
+            count += vector.compare(VectorOperators.GE, (byte) 0xC0).trueCount();
+            count += vector.compare(VectorOperators.GE, (byte) 0xF0)
+                    .and(vector.compare(VectorOperators.LT, (byte) 0)).trueCount();
+        }
+        return count + TAIL.countUtf8Chars(bytes, i, to);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.ByteScanner;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ByteScannerTest {
+
+    private static int naiveIndexOf(byte[] bytes, int from, int to, byte[] needle) {
+        for (int i = from; i + needle.length <= to; i++) {
+            boolean found = true;
+            for (int j = 0; j < needle.length && found; j++) {
+                found = bytes[i + j] == needle[j];
+            }
+            if (found) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testScalarKernel() {
+        ByteScanner scanner = ByteScanner.scalar();
+        byte[] bytes = "first line\r\nsecond line\n".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(1, scanner.getVectorSize());
+        assertEquals(11, scanner.indexOf(bytes, 0, bytes.length, (byte) '\n'));
+        assertEquals(10, scanner.indexOfAny(bytes, 0, bytes.length, (byte) '\n', (byte) '\r'));
+        assertEquals(19, scanner.indexOf(bytes, 0, bytes.length, "line\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(-1, scanner.indexOf(bytes, 0, 22, "line\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(-1, scanner.indexOfNonAscii(bytes, 0, bytes.length));
+        assertEquals(1, scanner.indexOfNonAscii(new byte[]{'a', (byte) 0xE9}, 0, 2));
+        assertEquals(2, scanner.count(bytes, 0, bytes.length, (byte) '\n'));
+        assertEquals(2, scanner.count(bytes, 0, bytes.length, "ine".getBytes(StandardCharsets.US_ASCII)));
+        // Occurrences do not overlap
+        assertEquals(2, scanner.count(new byte[]{1, 1, 1, 1, 1}, 0, 5, new byte[]{1, 1}));
+    }
+
+    @Test
+    public void testUtf8CharCount() {
+        String text = "aé€😀\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(text.length(), ByteScanner.scalar().countUtf8Chars(bytes, 0, bytes.length));
+        assertEquals(text.length(), ByteScanner.getDefault().countUtf8Chars(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testDefaultKernelAgreesWithScalar() {
+        ByteScanner scalar = ByteScanner.scalar();
+        ByteScanner scanner = ByteScanner.getDefault();
+        Random random = new Random(20);
+
+        for (int round = 0; round < 300; round++) {
+            byte[] bytes = new byte[random.nextInt(600)];
+            for (int i = 0; i < bytes.length; i++) {
+                // Few distinct values, so needles occur and candidates often fail late
+                bytes[i] = (byte) "ab\n\ré".charAt(random.nextInt(5));
+            }
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int to = from + random.nextInt(bytes.length - from + 1);
+            byte[] needle = new byte[1 + random.nextInt(6)];
+            for (int i = 0; i < needle.length; i++) {
+                needle[i] = (byte) "ab\n".charAt(random.nextInt(3));
+            }
+
+            assertEquals(scalar.indexOf(bytes, from, to, (byte) '\n'), scanner.indexOf(bytes, from, to, (byte) '\n'));
+            assertEquals(scalar.indexOfAny(bytes, from, to, (byte) '\n', (byte) '\r'),
+                    scanner.indexOfAny(bytes, from, to, (byte) '\n', (byte) '\r'));
+            assertEquals(naiveIndexOf(bytes, from, to, needle), scalar.indexOf(bytes, from, to, needle));
+            assertEquals(naiveIndexOf(bytes, from, to, needle), scanner.indexOf(bytes, from, to, needle));
+            assertEquals(scalar.indexOfNonAscii(bytes, from, to), scanner.indexOfNonAscii(bytes, from, to));
+            assertEquals(scalar.count(bytes, from, to, (byte) 'a'), scanner.count(bytes, from, to, (byte) 'a'));
+            assertEquals(scalar.count(bytes, from, to, needle), scanner.count(bytes, from, to, needle));
+            assertEquals(scalar.countUtf8Chars(bytes, from, to), scanner.countUtf8Chars(bytes, from, to));
+        }
+    }
+}
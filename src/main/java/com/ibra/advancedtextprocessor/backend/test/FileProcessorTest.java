@@ -3,6 +3,12 @@ package com.ibra.advancedtextprocessor.backend.test;
 
 
 import com.ibra.advancedtextprocessor.backend.FileProcessor;
+import com.ibra.advancedtextprocessor.backend.LineFilterResult;
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.ParallelGrep;
+import com.ibra.advancedtextprocessor.backend.ReplacementRuleSet;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -10,11 +16,16 @@ import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
@@ -199,6 +210,316 @@ public class FileProcessorTest {
         }
     }
 
+    public static class RuleSetReplaceTest {
+        @Test
+        public void testBatchReplaceWithRuleSet() throws Exception {
+            Path input = tempDir.resolve("rules.txt");
+            Path outputDir = tempDir.resolve("rules_output");
+            Files.write(input, "Line 1 by alice@example.com\nLine 2".getBytes());
+            ReplacementRuleSet rules = new ReplacementRuleSet()
+                    .addRule("\\S+@\\S+", 0, "<email>")
+                    .addRule("Line (\\d)", 0, "Row $1");
+
+            try {
+                assertEquals("Row 1 by <email>\nRow 2", FileProcessor.replaceInFile(input.toFile(), rules));
+                assertEquals(1, FileProcessor.batchReplaceInFiles(List.of(input.toFile()), outputDir.toFile(), rules));
+                assertEquals("Row 1 by <email>\nRow 2",
+                        FileProcessor.readFile(outputDir.resolve("rules.txt").toFile()));
+            } finally {
+                Files.deleteIfExists(outputDir.resolve("rules.txt"));
+                Files.deleteIfExists(outputDir);
+                Files.deleteIfExists(input);
+            }
+        }
+    }
+
+    public static class StreamingReplaceTest {
+        @Test
+        public void testStreamingReplaceKeepsLineEndings() throws Exception {
+            Path input = tempDir.resolve("stream.txt");
+            Path output = tempDir.resolve("stream_out.txt");
+            Files.write(input, "Line 1\r\nLine 2".getBytes());
+
+            try {
+                assertEquals(2, FileProcessor.replaceInFile(input.toFile(), output.toFile(), "Line (\\d)", "Row $1", 0, null));
+                assertEquals("Row 1\r\nRow 2", Files.readString(output));
+            } finally {
+                Files.deleteIfExists(output);
+                Files.deleteIfExists(input);
+            }
+        }
+
+        @Test
+        public void testMissingInputLeavesNoOutput() throws Exception {
+            Path output = tempDir.resolve("missing_out.txt");
+            try {
+                FileProcessor.replaceInFile(tempDir.resolve("missing.txt").toFile(), output.toFile(), "a", "b", 0, null);
+                fail("Expected IOException");
+            } catch (IOException e) {
+                assertFalse(Files.exists(output));
+            }
+        }
+    }
+
+    public static class StreamingFilterTest {
+        @Test
+        public void testSinksMatchStringFilter() throws Exception {
+            Path input = tempDir.resolve("filter_sink.txt");
+            Files.write(input, "error 1\r\nok\nerror 2\rok\nlast error".getBytes());
+
+            try {
+                String expected = FileProcessor.filterFileByLinePattern(input.toFile(), "error", 0);
+                assertEquals("error 1\nerror 2\nlast error\n", expected);
+
+                StringWriter writer = new StringWriter();
+                LineFilterResult result = FileProcessor.filterFileByLinePattern(input.toFile(), "error", 0, writer, null);
+                assertEquals(expected, writer.toString());
+                assertEquals(5, result.getLineCount());
+                assertEquals(3, result.getMatchingLineCount());
+                assertEquals(Files.size(input), result.getBytesRead());
+                assertEquals(expected.length(), result.getWrittenLength());
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                result = FileProcessor.filterFileByLinePattern(input.toFile(), "error", 0,
+                        Channels.newChannel(bytes), null);
+                assertEquals(expected, bytes.toString());
+                assertEquals(bytes.size(), result.getWrittenLength());
+            } finally {
+                Files.deleteIfExists(input);
+            }
+        }
+
+        @Test
+        public void testChannelGetsLineBytesUnchanged() throws Exception {
+            Path input = tempDir.resolve("filter_raw.txt");
+            Files.write(input, new byte[]{'e', 'r', 'r', (byte) 0xE9, '\r', '\n', 'o', 'k'});
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                FileProcessor.filterFileByLinePattern(input.toFile(), "err", 0, Channels.newChannel(bytes), null);
+                assertArrayEquals(new byte[]{'e', 'r', 'r', (byte) 0xE9, '\n'}, bytes.toByteArray());
+            } finally {
+                Files.deleteIfExists(input);
+            }
+        }
+
+        @Test
+        public void testFileOutputWithLinesLongerThanBuffer() throws Exception {
+            Path input = tempDir.resolve("filter_long.txt");
+            Path output = tempDir.resolve("filter_long_out.txt");
+            String longLine = "x".repeat(3 * 1024 * 1024) + " error";
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 50_000; i++) {
+                content.append(i % 7 == 0 ? "error " : "fine ").append(i).append('\n');
+                if (i == 25_000) {
+                    content.append(longLine).append('\n');
+                }
+            }
+            Files.write(input, content.toString().getBytes());
+
+            try {
+                LineFilterResult result = FileProcessor.filterFileByLinePattern(input.toFile(), "error", 0,
+                        output.toFile(), null);
+                String expected = FileProcessor.filterFileByLinePattern(input.toFile(), "error", 0);
+                assertEquals(expected, Files.readString(output));
+                assertEquals(50_001, result.getLineCount());
+                assertEquals(50_000 / 7 + 2, result.getMatchingLineCount());
+                assertEquals(Files.size(output), result.getWrittenLength());
+            } finally {
+                Files.deleteIfExists(output);
+                Files.deleteIfExists(input);
+            }
+        }
+    }
+
+    public static class FuzzyGrepTest {
+        @Test
+        public void testFuzzyGrepFindsLinesWithTypos() throws Exception {
+            Path file = tempDir.resolve("fuzzy.txt");
+            Files.write(file, "open conection\nclosed\nCONNECTON lost\nconnection\n".getBytes());
+
+            try {
+                assertEquals("fuzzy.txt:1: open conection\nfuzzy.txt:4: connection\n",
+                        FileProcessor.grepFiles(List.of(file.toFile()), "connection", 0, 1, null));
+                assertEquals("fuzzy.txt:1: open conection\nfuzzy.txt:3: CONNECTON lost\nfuzzy.txt:4: connection\n",
+                        FileProcessor.grepFiles(List.of(file.toFile()), "connection", Pattern.CASE_INSENSITIVE, 2, null));
+                assertEquals("fuzzy.txt:4: connection\n",
+                        FileProcessor.grepFiles(List.of(file.toFile()), "connection", 0, 0, null));
+                // Regex syntax has no meaning in a fuzzy search
+                assertEquals("", FileProcessor.grepFiles(List.of(file.toFile()), "conn.*", 0, 0, null));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public static class ByteLevelLineTest {
+        private static String randomText(Random random) {
+            String[] pieces = {"error", "warn", "Error", "é", "\uD83D\uDE00", "x", " ", "\t", "42"};
+            String[] terminators = {"\n", "\n", "\r\n", "\r"};
+            StringBuilder text = new StringBuilder();
+            for (int line = 0; line < 20_000; line++) {
+                // Some lines are longer than the read buffer
+                int length = random.nextInt(500) == 0 ? 70_000 : random.nextInt(40);
+                for (int i = 0; i < length; i++) {
+                    text.append(pieces[random.nextInt(pieces.length)]);
+                }
+                text.append(terminators[random.nextInt(terminators.length)]);
+            }
+            if (random.nextBoolean()) {
+                text.append("last error without terminator");
+            }
+            return text.toString();
+        }
+
+        @Test
+        public void testLineOperationsMatchDecodedText() throws Exception {
+            Random random = new Random(20);
+            Path file = Files.createTempFile("byte-lines", ".txt");
+            try {
+                for (int round = 0; round < 3; round++) {
+                    Files.write(file, randomText(random).getBytes(java.nio.charset.Charset.defaultCharset()));
+                    List<String> lines = Files.readAllLines(file, java.nio.charset.Charset.defaultCharset());
+                    String decoded = new String(Files.readAllBytes(file), java.nio.charset.Charset.defaultCharset());
+
+                    for (String patternStr : new String[]{"error", "warn\\d*", "(?i)error", "x{3}", "é\\s", "nothing"}) {
+                        Pattern pattern = Pattern.compile(patternStr);
+                        StringBuilder filtered = new StringBuilder();
+                        StringBuilder grepped = new StringBuilder();
+                        for (int i = 0; i < lines.size(); i++) {
+                            if (pattern.matcher(lines.get(i)).find()) {
+                                filtered.append(lines.get(i)).append("\n");
+                                grepped.append(file.getFileName()).append(":").append(i + 1)
+                                        .append(": ").append(lines.get(i)).append("\n");
+                            }
+                        }
+                        long count = pattern.matcher(decoded).results().count();
+
+                        assertEquals(patternStr, filtered.toString(),
+                                FileProcessor.filterFileByLinePattern(file.toFile(), patternStr, 0));
+                        assertEquals(patternStr, grepped.toString(),
+                                FileProcessor.grepFiles(List.of(file.toFile()), patternStr, 0));
+                        assertEquals(patternStr, count, FileProcessor.countOccurrencesInFile(file.toFile(), patternStr, 0));
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testInlineFlagsKeepRequiredLiteralCase() throws Exception {
+            Path file = Files.createTempFile("inline-flags", ".txt");
+            try {
+                Files.write(file, "xAb\nxab\nXAB\nxxAbc\n".getBytes());
+                assertEquals("xAb\nxab\nxxAbc\n",
+                        FileProcessor.filterFileByLinePattern(file.toFile(), "a(?-i)b", Pattern.CASE_INSENSITIVE));
+                assertEquals(file.getFileName() + ":4: xxAbc\n", FileProcessor.grepFiles(List.of(file.toFile()),
+                        "xa(?-i)bc", Pattern.CASE_INSENSITIVE));
+                assertEquals(3, FileProcessor.countOccurrencesInFile(file.toFile(), "a(?-i)b", Pattern.CASE_INSENSITIVE));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testInlineFlagsKeepBlockMatchingLineByLine() throws Exception {
+            Path file = Files.createTempFile("inline-block", ".txt");
+            // With UNIX_LINES the ^ before (?-d) does not match after the lone \r the reader ends lines at
+            String patternStr = "^(?-d)[xy]";
+            int flags = Pattern.MULTILINE | Pattern.UNIX_LINES;
+            try {
+                Files.write(file, ("bbb\n".repeat(200) + "a\rxb\nb\nyc\r\n").getBytes());
+                assertEquals("xb\nyc\n", FileProcessor.filterFileByLinePattern(file.toFile(), patternStr, flags));
+                assertEquals("xb\nyc\n", new ParallelGrep().filter(file.toFile(), patternStr, flags));
+                assertEquals(file.getFileName() + ":202: xb\n" + file.getFileName() + ":204: yc\n",
+                        FileProcessor.grepFiles(List.of(file.toFile()), patternStr, flags));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testBlockMatchingMatchesLineByLine() throws Exception {
+            Random random = new Random(25);
+            Path file = Files.createTempFile("block-lines", ".txt");
+            // None of these has a literal to search the bytes for
+            String[] patterns = {"(?i)error", "[0-9]{2}", "(?m)^x", "(?m)[rx]$", "[xn]\\t", "(\\w)\\1",
+                    "x*", "(?i)nothing"};
+            try {
+                for (int round = 0; round < 2; round++) {
+                    Files.write(file, randomText(random).getBytes(java.nio.charset.Charset.defaultCharset()));
+                    List<String> lines = Files.readAllLines(file, java.nio.charset.Charset.defaultCharset());
+
+                    for (String patternStr : patterns) {
+                        Pattern pattern = Pattern.compile(patternStr);
+                        StringBuilder filtered = new StringBuilder();
+                        for (String line : lines) {
+                            if (pattern.matcher(line).find()) {
+                                filtered.append(line).append("\n");
+                            }
+                        }
+
+                        StringWriter out = new StringWriter();
+                        LineFilterResult result = FileProcessor.filterFileByLinePattern(file.toFile(), patternStr, 0,
+                                out, null);
+                        assertEquals(patternStr, filtered.toString(), out.toString());
+                        assertEquals(patternStr, lines.size(), result.getLineCount());
+                        String grepped = FileProcessor.grepFiles(List.of(file.toFile()), patternStr, 0);
+
+                        try {
+                            TextProcessor.setLineBlockMatchingEnabled(false);
+                            assertEquals(patternStr, result.toString(), FileProcessor.filterFileByLinePattern(
+                                    file.toFile(), patternStr, 0, new StringWriter(), null).toString());
+                            assertEquals(patternStr, grepped, FileProcessor.grepFiles(List.of(file.toFile()), patternStr, 0));
+                        } finally {
+                            TextProcessor.setLineBlockMatchingEnabled(true);
+                        }
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public static class TimeBudgetTest {
+        @Test
+        public void testBudgetOverloadsMatchUnlimited() throws Exception {
+            MatchBudget budget = new MatchBudget(1, TimeUnit.MINUTES);
+
+            assertEquals("Line 1\nLine 3\n",
+                    FileProcessor.filterFileByLinePattern(testFile.toFile(), "Line [13]", 0, budget));
+            assertEquals(3, FileProcessor.countOccurrencesInFile(testFile.toFile(), "Line", 0, budget));
+            assertEquals(FileProcessor.grepFiles(List.of(testFile.toFile()), "2", 0),
+                    FileProcessor.grepFiles(List.of(testFile.toFile()), "2", 0, budget));
+        }
+
+        @Test
+        public void testCancelledBudgetStopsFileOperations() throws Exception {
+            MatchBudget budget = new MatchBudget();
+            budget.cancel();
+
+            try {
+                FileProcessor.grepFiles(List.of(testFile.toFile()), "Line", 0, budget);
+                fail("Expected MatchTimeoutException");
+            } catch (MatchTimeoutException e) {
+                assertTrue(e.isCancelled());
+                assertEquals(0, e.getCompletedCount());
+            }
+
+            Path outputDir = tempDir.resolve("budget_output");
+            try {
+                FileProcessor.batchReplaceInFiles(List.of(testFile.toFile()), outputDir.toFile(), "Line", "Row", 0, budget);
+                fail("Expected MatchTimeoutException");
+            } catch (MatchTimeoutException e) {
+                assertEquals(0, e.getCompletedCount());
+            } finally {
+                Files.deleteIfExists(outputDir);
+            }
+        }
+    }
+
     @After
     public void verifyNoLeakedFiles() throws IOException {
         // Verify no unexpected files remain
@@ -0,0 +1,258 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.FuzzyMatcher;
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class FuzzyMatcherTest {
+
+    private static int editDistance(CharSequence a, CharSequence b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static List<String> matchTexts(List<TextProcessor.MatchInfo> matches) {
+        List<String> texts = new ArrayList<>();
+        for (TextProcessor.MatchInfo match : matches) {
+            texts.add(match.getMatchText());
+        }
+        return texts;
+    }
+
+    @Test
+    public void testFindsMatchesWithinDistance() {
+        String text = "The conection was lost, the connection came back, the connectoin failed.";
+        List<TextProcessor.MatchInfo> matches = TextProcessor.findFuzzyMatches(text, "connection", 2, 0);
+
+        assertEquals(List.of("conection", "connection", "connectoin"), matchTexts(matches));
+        assertEquals(1, matches.get(0).getEditDistance());
+        assertEquals(0, matches.get(1).getEditDistance());
+        assertEquals(2, matches.get(2).getEditDistance());
+        assertEquals(4, matches.get(0).getStartPosition());
+        assertEquals(13, matches.get(0).getEndPosition());
+    }
+
+    @Test
+    public void testExactSearchFindsEveryOccurrence() {
+        assertEquals(List.of("a", "a", "a"), matchTexts(new FuzzyMatcher("a", 0, false).findMatches("aaa")));
+        assertEquals(List.of("abc", "abc"), matchTexts(new FuzzyMatcher("abc", 0, false).findMatches("abcxabc")));
+        assertEquals(List.of("abc", "abc", "abc"), matchTexts(new FuzzyMatcher("abc", 1, false).findMatches("abcabcabc")));
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        assertTrue(new FuzzyMatcher("Straße", 1, true).contains("in der STRASE"));
+        assertFalse(new FuzzyMatcher("Straße", 1, false).contains("in der STRASE"));
+        assertTrue(new FuzzyMatcher("σοφια", 0, true).contains("ΣΟΦΙΑ"));
+        assertFalse(new FuzzyMatcher("σοφια", 0, false).contains("ΣΟΦΙΑ"));
+        assertEquals(List.of("CONNECTION"),
+                matchTexts(TextProcessor.findFuzzyMatches("a CONNECTION", "connection", 0, Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void testLongestPatternUsesAllBits() {
+        String pattern = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ+/";
+        assertEquals(FuzzyMatcher.MAX_PATTERN_LENGTH, pattern.length());
+        String typo = pattern.replace("m", "n").replace("Q", "");
+
+        FuzzyMatcher matcher = new FuzzyMatcher(pattern, 2, false);
+        List<TextProcessor.MatchInfo> matches = matcher.findMatches("-- " + typo + " --");
+        assertEquals(1, matches.size());
+        assertEquals(typo, matches.get(0).getMatchText());
+        assertEquals(2, matches.get(0).getEditDistance());
+        assertFalse(new FuzzyMatcher(pattern, 1, false).contains(typo));
+    }
+
+    @Test
+    public void testMatchesAgreeWithEditDistance() {
+        Random random = new Random(11);
+        String alphabet = "abcd";
+
+        for (int round = 0; round < 300; round++) {
+            StringBuilder pattern = new StringBuilder();
+            int patternLength = 2 + random.nextInt(6);
+            for (int i = 0; i < patternLength; i++) {
+                pattern.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 60; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            int maxDistance = random.nextInt(patternLength);
+            FuzzyMatcher matcher = new FuzzyMatcher(pattern.toString(), maxDistance, false);
+
+            // Brute force: some substring is within the distance
+            boolean expected = false;
+            for (int start = 0; start <= text.length() && !expected; start++) {
+                for (int end = start; end <= text.length() && !expected; end++) {
+                    expected = editDistance(pattern, text.subSequence(start, end)) <= maxDistance;
+                }
+            }
+            assertEquals(pattern + " in " + text, expected, matcher.contains(text));
+
+            int previousEnd = 0;
+            List<TextProcessor.MatchInfo> matches = matcher.findMatches(text);
+            assertEquals(expected, !matches.isEmpty());
+            for (TextProcessor.MatchInfo match : matches) {
+                assertTrue(match.getStartPosition() >= previousEnd);
+                int distance = editDistance(pattern, match.getMatchText());
+                assertEquals(distance, match.getEditDistance());
+                assertTrue(distance <= maxDistance);
+                previousEnd = match.getEndPosition();
+            }
+        }
+    }
+
+    @Test
+    public void testPieceSearchDoesNotChangeResults() {
+        Random random = new Random(5);
+        String[] words = {"connection", "conection", "Connectoin", "CONNECTION", "kinetic", "collection", "on",
+                "ion ", " "};
+
+        for (int round = 0; round < 200; round++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 300) {
+                text.append(words[random.nextInt(words.length)]);
+            }
+            for (int maxDistance = 0; maxDistance <= 3; maxDistance++) {
+                for (boolean ignoreCase : new boolean[]{false, true}) {
+                    FuzzyMatcher matcher = new FuzzyMatcher("connection", maxDistance, ignoreCase);
+                    String message = maxDistance + " " + ignoreCase + " in " + text;
+                    List<TextProcessor.MatchInfo> scanned = scanWithoutPieces(matcher, text);
+                    assertSameMatches(message, scanned, matcher.findMatches(text.toString()));
+                    assertSameMatches(message, scanned, matcher.findMatches(text));
+                    assertEquals(message, !scanned.isEmpty(), matcher.contains(text.toString()));
+                    assertEquals(message, !scanned.isEmpty(), matcher.contains(text));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPieceSearchAgreesWithEditDistance() {
+        assertTrue(new FuzzyMatcher("bababc", 1, false).contains("bcbabcbbabaaacaaab"));
+        assertPieceSearchAgrees("bababc", 1, false, "bcbabcbbabaaacaaab");
+        assertPieceSearchAgrees("abbabb", 1, false, "babaabbaabb");
+
+        Random random = new Random(17);
+        for (int round = 0; round < 2000; round++) {
+            boolean ignoreCase = round % 2 == 1;
+            String alphabet = ignoreCase ? "abcAB" : "abc";
+            StringBuilder pattern = new StringBuilder();
+            int patternLength = 3 + random.nextInt(6);
+            for (int i = 0; i < patternLength; i++) {
+                pattern.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            StringBuilder text = new StringBuilder();
+            int textLength = random.nextInt(40);
+            for (int i = 0; i < textLength; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertPieceSearchAgrees(pattern.toString(), random.nextInt(patternLength / 2 + 1), ignoreCase,
+                    text.toString());
+        }
+    }
+
+    @Test
+    public void testIgnoreCaseBeyondAscii() {
+        // The dotted capital I lower-cases to an ASCII i; the pieces fold case like the scan does
+        FuzzyMatcher matcher = new FuzzyMatcher("\u0130stanbul", 1, true);
+        assertTrue(matcher.contains("visit istanbul"));
+        assertTrue(matcher.contains(new StringBuilder("visit istanbul")));
+        assertEquals(0, matcher.findMatches("visit istanbul").get(0).getEditDistance());
+    }
+
+    private static void assertPieceSearchAgrees(String pattern, int maxDistance, boolean ignoreCase, String text) {
+        String message = pattern + "/" + maxDistance + "/" + ignoreCase + " in " + text;
+        FuzzyMatcher matcher = new FuzzyMatcher(pattern, maxDistance, ignoreCase);
+        String comparedPattern = ignoreCase ? pattern.toLowerCase() : pattern;
+        String comparedText = ignoreCase ? text.toLowerCase() : text;
+
+        boolean expected = false;
+        for (int start = 0; start <= text.length() && !expected; start++) {
+            for (int end = start; end <= text.length() && !expected; end++) {
+                expected = editDistance(comparedPattern, comparedText.substring(start, end)) <= maxDistance;
+            }
+        }
+        assertEquals(message, expected, matcher.contains(text));
+        assertEquals(message, expected, matcher.contains(new StringBuilder(text)));
+
+        List<TextProcessor.MatchInfo> scanned = scanWithoutPieces(matcher, text);
+        List<TextProcessor.MatchInfo> filtered = matcher.findMatches(text);
+        assertSameMatches(message, scanned, filtered);
+        assertSameMatches(message, scanned, matcher.findMatches(new StringBuilder(text)));
+        for (TextProcessor.MatchInfo match : filtered) {
+            String matched = ignoreCase ? match.getMatchText().toLowerCase() : match.getMatchText();
+            assertEquals(message, editDistance(comparedPattern, matched), match.getEditDistance());
+        }
+    }
+
+    private static List<TextProcessor.MatchInfo> scanWithoutPieces(FuzzyMatcher matcher, CharSequence text) {
+        TextProcessor.setLiteralPrefilterEnabled(false);
+        try {
+            return matcher.findMatches(text);
+        } finally {
+            TextProcessor.setLiteralPrefilterEnabled(true);
+        }
+    }
+
+    private static void assertSameMatches(String message, List<TextProcessor.MatchInfo> expected,
+                                          List<TextProcessor.MatchInfo> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).getStartPosition(), actual.get(i).getStartPosition());
+            assertEquals(message, expected.get(i).getEndPosition(), actual.get(i).getEndPosition());
+            assertEquals(message, expected.get(i).getEditDistance(), actual.get(i).getEditDistance());
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        String[] patterns = {"", "x".repeat(FuzzyMatcher.MAX_PATTERN_LENGTH + 1), "abc", "abc"};
+        int[] distances = {0, 0, 3, -1};
+        for (int i = 0; i < patterns.length; i++) {
+            try {
+                new FuzzyMatcher(patterns[i], distances[i], false);
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testCancelledBudget() {
+        MatchBudget budget = new MatchBudget();
+        budget.cancel();
+
+        try {
+            new FuzzyMatcher("abc", 1, false).findMatches("xx abc", budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+        }
+    }
+}
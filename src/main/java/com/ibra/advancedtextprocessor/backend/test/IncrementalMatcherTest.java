@@ -0,0 +1,126 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.IncrementalMatcher;
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class IncrementalMatcherTest {
+
+    private static List<String> matchTexts(IncrementalMatcher matcher) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < matcher.size(); i++) {
+            texts.add(matcher.getMatchText(i));
+        }
+        return texts;
+    }
+
+    private static List<Integer> bounds(IncrementalMatcher matcher) {
+        List<Integer> bounds = new ArrayList<>();
+        for (int i = 0; i < matcher.size(); i++) {
+            bounds.add(matcher.getStart(i));
+            bounds.add(matcher.getEnd(i));
+        }
+        return bounds;
+    }
+
+    private static List<Integer> expectedBounds(CharSequence text, String pattern, int flags) {
+        List<Integer> bounds = new ArrayList<>();
+        TextProcessor.streamMatches(text, pattern, flags).forEach(match -> {
+            bounds.add(match.getStartPosition());
+            bounds.add(match.getEndPosition());
+        });
+        return bounds;
+    }
+
+    @Test
+    public void testRandomEditsMatchFullSearch() {
+        Random random = new Random(3);
+        String alphabet = "abcx fo\n1";
+        String[] patterns = {"a+", "\\bfoo\\b", "(?m)^x", "x$", "a*", "\\d{2,4}", "[^\\n]+",
+                "(?s)a.+?b", "(?<=a)b", "\\s+", "\\Ga"};
+
+        for (String pattern : patterns) {
+            for (int flags : new int[]{0, Pattern.MULTILINE}) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 3000; i++) {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                IncrementalMatcher matcher = new IncrementalMatcher(pattern, flags);
+                matcher.reset(text);
+
+                for (int edit = 0; edit < 50; edit++) {
+                    int offset = random.nextInt(text.length() + 1);
+                    int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+                    String inserted = alphabet.substring(random.nextInt(alphabet.length()));
+                    text.replace(offset, offset + removed, inserted);
+                    matcher.edit(text, offset, removed, inserted.length());
+
+                    assertEquals(pattern, expectedBounds(text, pattern, flags), bounds(matcher));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEditRescansOnlyAffectedWindow() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append(" id=").append(i % 97).append('\n');
+        }
+        IncrementalMatcher matcher = new IncrementalMatcher("id=\\d+", 0);
+        matcher.reset(text);
+        int before = matcher.size();
+
+        int offset = text.indexOf("line 10000 ");
+        text.insert(offset, "id=7 ");
+        matcher.edit(text, offset, 0, 5);
+
+        assertEquals(before + 1, matcher.size());
+        assertTrue(matcher.getRescannedLength() < 100);
+        assertEquals(expectedBounds(text, "id=\\d+", 0), bounds(matcher));
+    }
+
+    @Test
+    public void testUpdateFindsTheEdit() {
+        IncrementalMatcher matcher = new IncrementalMatcher("\\w+@\\w+\\.com", 0);
+        matcher.reset("mail bob@test.com or eve@test.com");
+
+        matcher.update("mail bob@test.com, alice@example.com or eve@test.com");
+
+        assertEquals(List.of("bob@test.com", "alice@example.com", "eve@test.com"), matchTexts(matcher));
+        assertEquals(5, matcher.toSpans(0).getStart(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEditMustFitText() {
+        IncrementalMatcher matcher = new IncrementalMatcher("a", 0);
+        matcher.reset("aaa");
+        matcher.edit("aaaa", 0, 0, 2);
+    }
+
+    @Test
+    public void testCancelledBudgetLeavesMatcherEmpty() {
+        IncrementalMatcher matcher = new IncrementalMatcher("a", 0);
+        matcher.reset("aaa");
+        MatchBudget budget = new MatchBudget();
+        budget.cancel();
+
+        try {
+            matcher.update("aaab", budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertEquals(0, matcher.size());
+        }
+        matcher.update("aaab");
+        assertEquals(3, matcher.size());
+    }
+}
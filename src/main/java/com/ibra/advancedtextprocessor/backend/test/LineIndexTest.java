@@ -0,0 +1,77 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.LineIndex;
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineIndexTest {
+
+    @Test
+    public void testLinesAndColumns() {
+        String text = "first\nsecond line\r\n\nlast";
+        LineIndex lines = LineIndex.of(text);
+
+        assertEquals(4, lines.getLineCount());
+        assertEquals(0, lines.getLine(0));
+        assertEquals(0, lines.getLine(5));
+        assertEquals(1, lines.getLine(6));
+        assertEquals(4, lines.getColumn(10));
+        assertEquals(2, lines.getLine(19));
+        assertEquals(3, lines.getLine(text.length()));
+        assertEquals(4, lines.getColumn(text.length()));
+
+        assertEquals(6, lines.getLineStart(1));
+        // The carriage return is part of the line it ends
+        assertEquals("second line\r", text.substring(lines.getLineStart(1), lines.getLineEnd(1)));
+        assertEquals(19, lines.getLineEnd(2));
+        assertEquals(text.length(), lines.getLineEnd(3));
+    }
+
+    @Test
+    public void testEmptyTextAndTrailingLineFeed() {
+        assertEquals(1, LineIndex.of("").getLineCount());
+        assertEquals(1, LineIndex.of(null).getLineCount());
+
+        LineIndex lines = LineIndex.of("a\n");
+        assertEquals(2, lines.getLineCount());
+        assertEquals(1, lines.getLine(2));
+        assertEquals(0, lines.getColumn(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOffsetOutsideText() {
+        LineIndex.of("abc").getLine(4);
+    }
+
+    @Test
+    public void testAllSequenceTypesGiveSameLines() {
+        Random random = new Random(19);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            builder.append(random.nextInt(20) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+        }
+        String text = builder.toString();
+
+        LineIndex fromString = LineIndex.of(text);
+        LineIndex fromBuilder = LineIndex.of(builder);
+        LineIndex fromBuffer = LineIndex.of(CharBuffer.wrap(text));
+
+        int line = 0;
+        int lineStart = 0;
+        for (int offset = 0; offset <= text.length(); offset++) {
+            assertEquals(line, fromString.getLine(offset));
+            assertEquals(offset - lineStart, fromString.getColumn(offset));
+            assertEquals(line, fromBuilder.getLine(offset));
+            assertEquals(line, fromBuffer.getLine(offset));
+            if (offset < text.length() && text.charAt(offset) == '\n') {
+                line++;
+                lineStart = offset + 1;
+            }
+        }
+        assertEquals(line + 1, fromString.getLineCount());
+    }
+}
@@ -0,0 +1,128 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.MappedTextFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class MappedTextFileTest {
+
+    private static Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile("mapped", ".txt");
+        Files.write(file, content);
+        return file;
+    }
+
+    @Test
+    public void testTextKeepsLineEndings() throws Exception {
+        String content = "first\r\nsecond\rthird\n\nlast";
+        Path file = write(content.getBytes(StandardCharsets.UTF_8));
+        try (MappedTextFile text = MappedTextFile.open(file.toFile(), StandardCharsets.UTF_8)) {
+            assertEquals(content.length(), text.size());
+            CharSequence view = text.getText();
+            assertEquals(content, view.toString());
+            assertEquals('\r', view.charAt(5));
+            assertEquals("second", view.subSequence(7, 13).toString());
+            assertEquals("third\n", text.getText(14, 20).toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDecodesNonAsciiText() throws Exception {
+        String content = "café 😀\nnaïve\n";
+        Path file = write(content.getBytes(StandardCharsets.UTF_8));
+        try (MappedTextFile text = MappedTextFile.open(file.toFile(), StandardCharsets.UTF_8)) {
+            CharSequence view = text.getText();
+            assertEquals(content.length(), view.length());
+            assertEquals(content, view.toString());
+            assertEquals('é', view.charAt(3));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        // Malformed input decodes to the replacement char instead of failing
+        file = write(new byte[]{'a', (byte) 0xC3, 'b'});
+        try (MappedTextFile text = MappedTextFile.open(file.toFile(), StandardCharsets.UTF_8)) {
+            assertEquals("a�b", text.getText().toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSingleByteCharsets() throws Exception {
+        byte[] bytes = {'n', 'a', (byte) 0xEF, 'v', 'e', '\n', (byte) 0x80};
+        Path file = write(bytes);
+        try {
+            for (Charset charset : new Charset[]{StandardCharsets.ISO_8859_1, Charset.forName("windows-1252")}) {
+                try (MappedTextFile text = MappedTextFile.open(file.toFile(), charset)) {
+                    assertEquals(new String(bytes, charset), text.getText().toString());
+                    assertEquals(new String(bytes, 2, 4, charset), text.getText(2, 6).toString());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSplitAtLines() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        // A line longer than the ranges and no line feed at the end
+        content.append("x".repeat(300)).append("\ntail");
+        Path file = write(content.toString().getBytes(StandardCharsets.UTF_8));
+        try (MappedTextFile text = MappedTextFile.open(file.toFile(), StandardCharsets.UTF_8)) {
+            long[] bounds = text.splitAtLines(100);
+            assertEquals(0, bounds[0]);
+            assertEquals(text.size(), bounds[bounds.length - 1]);
+
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                assertTrue(bounds[i + 1] > bounds[i]);
+                String range = text.getText(bounds[i], bounds[i + 1]).toString();
+                if (i + 2 < bounds.length) {
+                    assertTrue(range.endsWith("\n"));
+                    assertTrue(range.length() <= 100 || range.indexOf('\n') == range.length() - 1);
+                }
+                joined.append(range);
+            }
+            assertEquals(content.toString(), joined.toString());
+
+            assertArrayEquals(new long[]{0, text.size()}, text.splitAtLines(text.size()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        Path file = write(new byte[0]);
+        try (MappedTextFile text = MappedTextFile.open(file.toFile())) {
+            assertEquals("", text.getText().toString());
+            assertArrayEquals(new long[]{0, 0}, text.splitAtLines(100));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRangeOutsideFile() throws Exception {
+        Path file = write("abc".getBytes(StandardCharsets.UTF_8));
+        try (MappedTextFile text = MappedTextFile.open(file.toFile())) {
+            text.getText(1, 4);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
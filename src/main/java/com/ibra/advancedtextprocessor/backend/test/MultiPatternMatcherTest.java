@@ -0,0 +1,154 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.MatchSpans;
+import com.ibra.advancedtextprocessor.backend.MultiPatternMatcher;
+import com.ibra.advancedtextprocessor.backend.PatternEntry;
+import com.ibra.advancedtextprocessor.backend.PatternManager;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiPatternMatcherTest {
+    private static final String LOG_TEXT =
+            "2024-01-05 user=alice@example.com ip=192.168.0.12 called 555-123-4567\n"
+                    + "visit https://www.example.org/path?q=1 or http://test.io\n"
+                    + "card 4111-1111-1111-1111 zip 90210-1234 ssn 123-45-6789 color #A0b1C2\n"
+                    + "<b>bold</b> on 12/31/2023 ERROR error Error\n";
+
+    @Test
+    public void testMatchesPerEntryFindMatches() {
+        PatternManager common = PatternManager.createCommonPatternCollection();
+        MultiPatternMatcher matcher = new MultiPatternMatcher(common.getAllPatterns());
+        Map<String, List<String>> results = matcher.findAllByPattern(LOG_TEXT);
+
+        for (PatternEntry entry : common.getAllPatterns()) {
+            List<String> expected = TextProcessor.findMatches(
+                    (CharSequence) LOG_TEXT, entry.getPattern(), entry.getFlags());
+            assertEquals(entry.getName(), expected, results.get(entry.getName()));
+        }
+    }
+
+    @Test
+    public void testPatternSetMatchesPerEntryFindMatches() {
+        // Overlapping, empty and priority dependent matches, with a backreference scanned on its own
+        List<PatternEntry> patterns = Arrays.asList(
+                new PatternEntry("abc", "ab*c|b", false, false),
+                new PatternEntry("lazy", "a.*?b", false, false),
+                new PatternEntry("greedy", "a[ab]*b", false, false),
+                new PatternEntry("digits", "\\d{2,3}", false, false),
+                new PatternEntry("boundary", "\\b", false, false),
+                new PatternEntry("optional", "c?", false, false),
+                new PatternEntry("lines", "^[ab]+$", true, false),
+                new PatternEntry("mail", "\\w+@\\w+", false, true),
+                new PatternEntry("choice", "b(a|ab)", false, false),
+                new PatternEntry("repeat", "(b)\\1", false, false));
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        Random random = new Random(4);
+        String alphabet = "aabbc1 2@\n";
+
+        for (int round = 0; round < 300; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = 1 + random.nextInt(80);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertMatchesPerEntry(matcher, patterns, text.toString());
+        }
+
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            log.append(LOG_TEXT.replace('1', (char) ('0' + random.nextInt(10))));
+        }
+        PatternManager common = PatternManager.createCommonPatternCollection();
+        assertMatchesPerEntry(new MultiPatternMatcher(common.getAllPatterns()), common.getAllPatterns(),
+                log.toString());
+    }
+
+    private static void assertMatchesPerEntry(MultiPatternMatcher matcher, List<PatternEntry> patterns, String text) {
+        Map<String, List<String>> results = matcher.findAllByPattern(text);
+        List<MultiPatternMatcher.MultiMatch> matches = matcher.findAll(text);
+        for (int i = 0; i < patterns.size(); i++) {
+            PatternEntry entry = patterns.get(i);
+            List<String> expected = TextProcessor.findMatches((CharSequence) text, entry.getPattern(), entry.getFlags());
+            assertEquals(entry.getName() + " in " + text, expected, results.get(entry.getName()));
+
+            List<String> expectedBounds = new ArrayList<>();
+            java.util.regex.Matcher m = java.util.regex.Pattern.compile(entry.getPattern(), entry.getFlags())
+                    .matcher(text);
+            while (m.find()) {
+                expectedBounds.add(m.start() + "-" + m.end());
+            }
+            List<String> bounds = new ArrayList<>();
+            for (MultiPatternMatcher.MultiMatch match : matches) {
+                if (match.getPatternIndex() == i) {
+                    bounds.add(match.getStartPosition() + "-" + match.getEndPosition());
+                }
+            }
+            assertEquals(entry.getName() + " in " + text, expectedBounds, bounds);
+        }
+    }
+
+    @Test
+    public void testLiteralEntries() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+                new PatternEntry("error", "error", false, true),
+                new PatternEntry("err", "err", false, false),
+                new PatternEntry("aa", "aa", false, false),
+                new PatternEntry("dot", "a\\.b", false, false)));
+
+        Map<String, List<String>> results = matcher.findAllByPattern("ERROR error aaaa a.b axb");
+
+        assertEquals(Arrays.asList("ERROR", "error"), results.get("error"));
+        assertEquals(Arrays.asList("err"), results.get("err"));
+        assertEquals(Arrays.asList("aa", "aa"), results.get("aa"));
+        assertEquals(Arrays.asList("a.b"), results.get("dot"));
+    }
+
+    @Test
+    public void testMatchesAreOrderedAndTagged() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+                new PatternEntry("digits", "\\d+", false, false),
+                new PatternEntry("word", "id", false, false)));
+
+        List<MultiPatternMatcher.MultiMatch> matches = matcher.findAll("id 42 id 7");
+
+        assertEquals(4, matches.size());
+        assertEquals("word", matches.get(0).getPatternName());
+        assertEquals(0, matches.get(0).getStartPosition());
+        assertEquals("digits", matches.get(1).getPatternName());
+        assertEquals(3, matches.get(1).getStartPosition());
+        assertEquals(5, matches.get(1).getEndPosition());
+        assertEquals(1, matches.get(2).getPatternIndex());
+        assertEquals(9, matches.get(3).getStartPosition());
+    }
+
+    @Test
+    public void testFindSpansTagsEntryIndex() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+                new PatternEntry("digits", "\\d+", false, false),
+                new PatternEntry("word", "id", false, false)));
+
+        MatchSpans spans = matcher.findSpans("id 42 id 7");
+
+        assertArrayEquals(new int[]{0, 2, 1, 3, 2, 0, 6, 2, 1, 9, 1, 0}, spans.toArray());
+    }
+
+    @Test
+    public void testInvalidEntriesAreSkipped() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+                new PatternEntry("Bad", "[invalid", false, false),
+                new PatternEntry("Good", "ok", false, false)));
+
+        assertEquals(Arrays.asList("Bad"), matcher.getInvalidPatterns());
+        assertEquals(1, matcher.getEntries().size());
+        assertEquals(1, matcher.findAll("ok").size());
+        assertTrue(matcher.findAll("").isEmpty());
+    }
+}
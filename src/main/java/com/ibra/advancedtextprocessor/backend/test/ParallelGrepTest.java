@@ -0,0 +1,244 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.FileProcessor;
+import com.ibra.advancedtextprocessor.backend.LineFilterResult;
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.ParallelGrep;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ParallelGrepTest {
+    private static Path tempDir;
+    private static List<File> files;
+    private static int grepParallelism;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        // FileProcessor.grepFiles is the sequential reference
+        grepParallelism = FileProcessor.getGrepParallelism();
+        FileProcessor.setGrepParallelism(1);
+        tempDir = Files.createTempDirectory("parallel-grep");
+        files = new ArrayList<>();
+        Random random = new Random(23);
+        for (int i = 0; i < 40; i++) {
+            StringBuilder content = new StringBuilder();
+            // A few large files among many small ones
+            int lines = i % 13 == 0 ? 20_000 : random.nextInt(200);
+            for (int line = 0; line < lines; line++) {
+                content.append(random.nextInt(4) == 0 ? "error " : "info ")
+                        .append(random.nextInt(1000)).append(" in file ").append(i).append('\n');
+            }
+            Path file = tempDir.resolve("log" + i + ".txt");
+            Files.write(file, content.toString().getBytes());
+            files.add(file.toFile());
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        FileProcessor.setGrepParallelism(grepParallelism);
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testMatchesSequentialGrepInFileOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (String pattern : new String[]{"error", "error \\d{3}\\b", "^info 1", "nothing"}) {
+                String expected = FileProcessor.grepFiles(files, pattern, 0);
+                assertEquals(pattern, expected, new ParallelGrep(executor, 8, ParallelGrep.DEFAULT_MAX_PENDING_LENGTH)
+                        .grep(files, pattern, 0));
+                // A limit far below the output keeps the files after the writing one waiting
+                assertEquals(pattern, expected, new ParallelGrep(executor, 8, 100).grep(files, pattern, 0));
+            }
+            assertEquals(FileProcessor.grepFiles(files, "eror", 0, 1, null),
+                    grepToString(new ParallelGrep(executor, 3, 0), "eror", 1));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(FileProcessor.grepFiles(files, "error", 0), new ParallelGrep().grep(files, "error", 0));
+    }
+
+    @Test
+    public void testGrepFilesInParallelMatchesSequential() throws Exception {
+        try {
+            for (String pattern : new String[]{"error", "error \\d{3}\\b", "^info 1", "nothing"}) {
+                FileProcessor.setGrepParallelism(1);
+                String expected = FileProcessor.grepFiles(files, pattern, 0);
+                FileProcessor.setGrepParallelism(4);
+                assertEquals(pattern, expected, FileProcessor.grepFiles(files, pattern, 0));
+            }
+            FileProcessor.setGrepParallelism(1);
+            String expected = FileProcessor.grepFiles(files, "eror", 0, 1, null);
+            FileProcessor.setGrepParallelism(3);
+            assertEquals(expected, FileProcessor.grepFiles(files, "eror", 0, 1, null));
+        } finally {
+            FileProcessor.setGrepParallelism(1);
+        }
+    }
+
+    @Test
+    public void testFinishesWithoutWorkers() throws Exception {
+        String expected = FileProcessor.grepFiles(files, "error", 0);
+
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(expected, new ParallelGrep(single, 16, 0).grep(files, "error", 0));
+        } finally {
+            single.shutdown();
+        }
+        // Every file is grepped by the calling thread when the executor takes none
+        assertEquals(expected, new ParallelGrep(task -> {
+            throw new RejectedExecutionException();
+        }, 4, 0).grep(files, "error", 0));
+    }
+
+    @Test
+    public void testRangesOfOneFileMatchSequentialOutput() throws Exception {
+        File file = writeBigLog("big.log");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (long rangeLength : new long[]{1, 4096, 100_000}) {
+                ParallelGrep grep = new ParallelGrep(executor, 4, 2000, rangeLength);
+                List<File> withSmallFiles = List.of(files.get(1), file, files.get(2));
+                for (String pattern : new String[]{"error", "^info 4\\d$", "caf"}) {
+                    assertEquals(pattern + " ranges of " + rangeLength,
+                            FileProcessor.grepFiles(withSmallFiles, pattern, 0), grep.grep(withSmallFiles, pattern, 0));
+                    assertEquals(pattern + " ranges of " + rangeLength,
+                            FileProcessor.filterFileByLinePattern(file, pattern, 0), grep.filter(file, pattern, 0));
+                }
+
+                StringWriter expected = new StringWriter();
+                LineFilterResult sequential = FileProcessor.filterFileByLinePattern(file, "error", 0, expected, null);
+                StringWriter out = new StringWriter();
+                LineFilterResult result = grep.filter(file, "error", 0, out, null);
+                assertEquals(expected.toString(), out.toString());
+                assertEquals(sequential.toString(), result.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFileProcessorSplitsLargeFiles() throws Exception {
+        File file = writeBigLog("split.log");
+        File output = tempDir.resolve("split.out").toFile();
+        try {
+            for (String pattern : new String[]{"error", "^info 4\\d$", "caf", "nothing"}) {
+                FileProcessor.setGrepParallelism(1);
+                String grepped = FileProcessor.grepFiles(List.of(file), pattern, 0);
+                String filtered = FileProcessor.filterFileByLinePattern(file, pattern, 0);
+                StringWriter written = new StringWriter();
+                LineFilterResult writerResult = FileProcessor.filterFileByLinePattern(file, pattern, 0, written, null);
+                ByteArrayOutputStream copied = new ByteArrayOutputStream();
+                LineFilterResult channelResult = FileProcessor.filterFileByLinePattern(file, pattern, 0,
+                        Channels.newChannel(copied), null);
+                FileProcessor.filterFileByLinePattern(file, pattern, 0, output, null);
+                byte[] outputBytes = Files.readAllBytes(output.toPath());
+
+                // Ranges far smaller than the file, and a limit that keeps later ranges waiting
+                FileProcessor.setGrepParallelism(4, 4096);
+                assertEquals(pattern, grepped, FileProcessor.grepFiles(List.of(file), pattern, 0));
+                assertEquals(pattern, filtered, FileProcessor.filterFileByLinePattern(file, pattern, 0));
+                StringWriter parallelWritten = new StringWriter();
+                assertEquals(pattern, writerResult.toString(),
+                        FileProcessor.filterFileByLinePattern(file, pattern, 0, parallelWritten, null).toString());
+                assertEquals(pattern, written.toString(), parallelWritten.toString());
+                ByteArrayOutputStream parallelCopied = new ByteArrayOutputStream();
+                assertEquals(pattern, channelResult.toString(), FileProcessor.filterFileByLinePattern(file, pattern, 0,
+                        Channels.newChannel(parallelCopied), null).toString());
+                assertArrayEquals(copied.toByteArray(), parallelCopied.toByteArray());
+                FileProcessor.filterFileByLinePattern(file, pattern, 0, output, null);
+                assertArrayEquals(outputBytes, Files.readAllBytes(output.toPath()));
+            }
+        } finally {
+            FileProcessor.setGrepParallelism(1);
+        }
+    }
+
+    @Test
+    public void testMissingFileStopsAfterEarlierResults() throws Exception {
+        List<File> withMissing = new ArrayList<>(files.subList(0, 3));
+        withMissing.add(tempDir.resolve("missing.txt").toFile());
+        withMissing.addAll(files.subList(3, 6));
+
+        StringWriter out = new StringWriter();
+        try {
+            new ParallelGrep().grep(withMissing, "error", 0, -1, out, null);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals(FileProcessor.grepFiles(files.subList(0, 3), "error", 0), out.toString());
+        }
+    }
+
+    @Test
+    public void testCancelledBudget() throws Exception {
+        MatchBudget budget = new MatchBudget();
+        budget.cancel();
+        try {
+            new ParallelGrep().grep(files, "error", 0, -1, new StringWriter(), budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+            assertEquals(0, e.getCompletedCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new ParallelGrep(Runnable::run, 0, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidGrepParallelism() {
+        FileProcessor.setGrepParallelism(0);
+    }
+
+    /**
+     * Writes a log of mixed line terminators with a few non-ASCII chars and no final line end
+     */
+    private static File writeBigLog(String name) throws IOException {
+        Random random = new Random(24);
+        String[] terminators = {"\n", "\n", "\r\n", "\r"};
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 30_000; line++) {
+            content.append(random.nextInt(5) == 0 ? "error " : "info ").append(random.nextInt(100))
+                    .append(random.nextInt(50) == 0 ? " café" : "")
+                    .append(terminators[random.nextInt(terminators.length)]);
+        }
+        content.append("last error");
+        Path path = tempDir.resolve(name);
+        Files.write(path, content.toString().getBytes());
+        return path.toFile();
+    }
+
+    private static String grepToString(ParallelGrep grep, String pattern, int maxEditDistance) throws IOException {
+        StringWriter out = new StringWriter();
+        grep.grep(files, pattern, 0, maxEditDistance, out, null);
+        return out.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.ParallelMatcher;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ParallelMatcherTest {
+    private static final String LOG_TEXT = buildLog();
+
+    private static String buildLog() {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            log.append("line ").append(i).append(" from 10.0.").append(i % 7).append('.').append(i)
+                    .append(" color #A0b1C").append(i % 10).append(" ab abab\n");
+        }
+        return log.toString();
+    }
+
+    @Test
+    public void testMatchesSequentialAcrossChunkBoundaries() {
+        String[] patterns = {"\\b(?:\\d{1,3}\\.){3}\\d{1,3}\\b", "#[0-9a-fA-F]{6}", "(ab){1,2}", "\\d{1,3}", "x?"};
+
+        for (int chunkSize : new int[]{1, 7, 64, 333}) {
+            ParallelMatcher matcher = new ParallelMatcher(chunkSize, 32);
+            for (String pattern : patterns) {
+                assertEquals(pattern + " chunk " + chunkSize,
+                        TextProcessor.findMatches((CharSequence) LOG_TEXT, pattern, 0),
+                        matcher.findMatches(LOG_TEXT, pattern, 0));
+                assertEquals(pattern + " chunk " + chunkSize,
+                        TextProcessor.getDetailedMatches((CharSequence) LOG_TEXT, pattern, 0).toString(),
+                        matcher.getDetailedMatches(LOG_TEXT, pattern, 0).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testMultilineAnchorsAtChunkBoundaries() {
+        ParallelMatcher matcher = new ParallelMatcher(5, 16);
+        String text = "ab\nab ab\nxab\nab";
+
+        assertEquals(TextProcessor.getDetailedMatches((CharSequence) text, "^ab$", Pattern.MULTILINE).toString(),
+                matcher.getDetailedMatches(text, "^ab$", Pattern.MULTILINE).toString());
+        assertEquals(TextProcessor.getDetailedMatches((CharSequence) text, "^.{0,2}", Pattern.MULTILINE).toString(),
+                matcher.getDetailedMatches(text, "^.{0,2}", Pattern.MULTILINE).toString());
+        assertEquals(TextProcessor.getDetailedMatches((CharSequence) text, "\\bab\\b", 0).toString(),
+                matcher.getDetailedMatches(text, "\\bab\\b", 0).toString());
+    }
+
+    @Test
+    public void testHighlightMatches() {
+        ParallelMatcher matcher = new ParallelMatcher(16, 32);
+
+        assertEquals(TextProcessor.highlightMatches((CharSequence) LOG_TEXT, "ab", "[", "]", 0),
+                matcher.highlightMatches(LOG_TEXT, "ab", "[", "]", 0));
+        assertNull(matcher.highlightMatches(null, "ab", "[", "]", 0));
+    }
+
+    @Test
+    public void testUnboundedPatternFallsBackToSequential() {
+        ParallelMatcher matcher = new ParallelMatcher(8, 16);
+
+        assertFalse(matcher.supportsParallel("\\d+", 0));
+        assertFalse(matcher.supportsParallel("a{1,17}", 0));
+        assertFalse(matcher.supportsParallel("(a)\\1", 0));
+        assertTrue(matcher.supportsParallel("a{1,16}", 0));
+        assertEquals(TextProcessor.findMatches((CharSequence) LOG_TEXT, "\\d+", 0),
+                matcher.findMatches(LOG_TEXT, "\\d+", 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChunkSize() {
+        new ParallelMatcher(0, 16);
+    }
+}
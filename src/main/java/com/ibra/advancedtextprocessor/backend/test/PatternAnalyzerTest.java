@@ -0,0 +1,81 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.PatternAnalyzer;
+import com.ibra.advancedtextprocessor.backend.PatternAnalyzer.CostClass;
+import com.ibra.advancedtextprocessor.backend.PatternAnalyzer.PatternAnalysis;
+import com.ibra.advancedtextprocessor.backend.PatternEntry;
+import com.ibra.advancedtextprocessor.backend.PatternManager;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PatternAnalyzerTest {
+
+    @Test
+    public void testNestedQuantifiers() {
+        assertEquals(CostClass.EXPONENTIAL, PatternAnalyzer.analyze("(a+)+b", 0).getCostClass());
+        assertEquals(CostClass.EXPONENTIAL, PatternAnalyzer.analyze("(\\w+\\s?)*$", 0).getCostClass());
+        assertEquals(CostClass.POLYNOMIAL, PatternAnalyzer.analyze("(.*a){12}", 0).getCostClass());
+
+        // Iterations that cannot run into each other are fine
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(ab+)+", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(?:[a-z]+\\.)+[a-z]+", 0).getCostClass());
+
+        // Possessive and atomic repetitions never backtrack
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(a++)+b", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(?>a+)+b", 0).getCostClass());
+    }
+
+    @Test
+    public void testOverlappingAlternation() {
+        PatternAnalysis analysis = PatternAnalyzer.analyze("(a|aa)*c", 0);
+        assertTrue(analysis.isDangerous());
+        assertEquals(CostClass.EXPONENTIAL, analysis.getCostClass());
+        assertFalse(analysis.getWarnings().isEmpty());
+
+        assertEquals(CostClass.EXPONENTIAL, PatternAnalyzer.analyze("(\\w|\\d)+", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(ab|ac)*", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("(?:GET|POST)+", 0).getCostClass());
+    }
+
+    @Test
+    public void testAdjacentQuantifiers() {
+        assertEquals(CostClass.POLYNOMIAL, PatternAnalyzer.analyze("\\d+\\d+x", 0).getCostClass());
+        assertEquals(CostClass.POLYNOMIAL, PatternAnalyzer.analyze(".*.*=", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("\\d+\\.\\d+", 0).getCostClass());
+        assertEquals(CostClass.LINEAR, PatternAnalyzer.analyze("\\s*\\w*", 0).getCostClass());
+    }
+
+    @Test
+    public void testMatchLengths() {
+        PatternAnalysis analysis = PatternAnalyzer.analyze("\\b(?:\\d{1,3}\\.){3}\\d{1,3}\\b", 0);
+        assertTrue(analysis.isValid());
+        assertTrue(analysis.isLengthKnown());
+        assertEquals(7, analysis.getMinLength());
+        assertEquals(15, analysis.getMaxLength());
+
+        assertEquals(-1, PatternAnalyzer.analyze("a+", 0).getMaxLength());
+    }
+
+    @Test
+    public void testInvalidAndUnsupportedPatterns() {
+        PatternAnalysis invalid = PatternAnalyzer.analyze("[invalid", 0);
+        assertFalse(invalid.isValid());
+        assertNotNull(invalid.getErrorMessage());
+        assertFalse(PatternAnalyzer.analyze("", 0).isValid());
+
+        PatternAnalysis unsupported = PatternAnalyzer.analyze("\\p{Lu}+", 0);
+        assertTrue(unsupported.isValid());
+        assertEquals(CostClass.UNKNOWN, unsupported.getCostClass());
+        assertFalse(unsupported.isLengthKnown());
+    }
+
+    @Test
+    public void testCommonPatternsAreSafe() {
+        for (PatternEntry entry : PatternManager.createCommonPatternCollection().getAllPatterns()) {
+            PatternAnalysis analysis = PatternAnalyzer.analyze(entry);
+            assertTrue(entry.getName(), analysis.isValid());
+            assertNotEquals(entry.getName(), CostClass.EXPONENTIAL, analysis.getCostClass());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.PatternCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class PatternCacheTest {
+    private PatternCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new PatternCache(2);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        Pattern first = cache.compile("\\d+", 0);
+        Pattern second = cache.compile("\\d+", 0);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testFlagsArePartOfKey() {
+        Pattern plain = cache.compile("abc", 0);
+        Pattern insensitive = cache.compile("abc", Pattern.CASE_INSENSITIVE);
+
+        assertNotSame(plain, insensitive);
+        assertEquals(Pattern.CASE_INSENSITIVE, insensitive.flags());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Pattern a = cache.compile("a", 0);
+        cache.compile("b", 0);
+        cache.compile("a", 0);   // touch "a" so "b" becomes the eldest
+        cache.compile("c", 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.compile("a", 0));
+
+        long misses = cache.getMissCount();
+        cache.compile("b", 0);
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void testShrinkingEvicts() {
+        cache.compile("a", 0);
+        cache.compile("b", 0);
+        cache.setMaxSize(1);
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidPatternIsNotCached() {
+        try {
+            cache.compile("[invalid", 0);
+            fail("Expected PatternSyntaxException");
+        } catch (PatternSyntaxException e) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        cache.compile("a", 0);
+        cache.compile("a", 0);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new PatternCache(0);
+    }
+
+    @Test
+    public void testSharedCacheIsUsed() {
+        assertNotNull(PatternCache.getShared());
+        assertSame(PatternCache.getShared(), PatternCache.getShared());
+    }
+}
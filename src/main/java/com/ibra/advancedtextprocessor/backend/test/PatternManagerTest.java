@@ -50,6 +50,26 @@ public class PatternManagerTest {
         assertEquals(1, customManager.getAllPatterns().size());
     }
 
+    @Test
+    public void testAddPatternRejectsInvalid() {
+        assertFalse(manager.addPattern(invalidEntry));
+        assertTrue(manager.getAllPatterns().isEmpty());
+    }
+
+    @Test
+    public void testSafetyPolicy() {
+        PatternEntry dangerous = new PatternEntry("Nested", "(a+)+b", false, false);
+        assertEquals(PatternManager.SafetyPolicy.WARN, manager.getSafetyPolicy());
+
+        manager.setSafetyPolicy(PatternManager.SafetyPolicy.REJECT);
+        assertFalse(manager.addPattern(dangerous));
+        assertTrue(manager.addPattern(validEntry));
+        assertFalse(manager.updatePattern("Email", dangerous));
+
+        manager.setSafetyPolicy(PatternManager.SafetyPolicy.WARN);
+        assertTrue(manager.addPattern(dangerous));
+    }
+
     @Test
     public void testRemovePattern() {
         manager.addPattern(validEntry);
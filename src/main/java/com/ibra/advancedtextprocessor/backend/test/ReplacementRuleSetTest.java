@@ -0,0 +1,111 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.ReplacementRuleSet;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class ReplacementRuleSetTest {
+
+    @Test
+    public void testSingleRuleMatchesReplaceAll() {
+        String text = "user=alice id=42 user=bob id=7\nbaa";
+        String[][] cases = {
+                {"user=(\\w+)", "user=<$1>"},
+                {"(?<key>\\w+)=(?<value>\\d+)", "${value}:${key}"},
+                {"\\d+", "\\$N"},
+                {"a*", "X"},
+                {"^", "> "},
+                {"\\b", "|"}
+        };
+
+        for (String[] c : cases) {
+            for (int flags : new int[]{0, Pattern.MULTILINE}) {
+                String expected = TextProcessor.replaceAll(text, c[0], c[1], flags);
+                String actual = new ReplacementRuleSet().addRule(c[0], flags, c[1]).apply(text);
+                assertEquals(c[0], expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testLeftmostMatchWins() {
+        ReplacementRuleSet rules = new ReplacementRuleSet()
+                .addRule("foo", 0, "X")
+                .addRule("o+bar", 0, "Y");
+        assertEquals("Xbar", rules.apply("foobar"));
+        assertEquals("fY", rules.apply("fobar"));
+    }
+
+    @Test
+    public void testRulePriorityBreaksTies() {
+        assertEquals("1c", new ReplacementRuleSet().addRule("ab", 0, "1").addRule("abc", 0, "2").apply("abc"));
+        assertEquals("2", new ReplacementRuleSet().addRule("abc", 0, "2").addRule("ab", 0, "1").apply("abc"));
+    }
+
+    @Test
+    public void testReplacedTextIsNotMatchedAgain() {
+        ReplacementRuleSet rules = new ReplacementRuleSet()
+                .addRule("a", 0, "b")
+                .addRule("b", 0, "c");
+        assertEquals("bc", rules.apply("ab"));
+    }
+
+    @Test
+    public void testOverlappedMatchesAreSearchedAgain() {
+        ReplacementRuleSet rules = new ReplacementRuleSet(List.of(
+                new ReplacementRuleSet.Rule("ab", 0, "X"),
+                new ReplacementRuleSet.Rule("bcd", 0, "Y")));
+        assertEquals("Xcd Y", rules.apply("abcd bcd"));
+        assertEquals(2, rules.size());
+    }
+
+    @Test
+    public void testRedactLog() {
+        ReplacementRuleSet rules = new ReplacementRuleSet()
+                .addRule("[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}", 0, "<email>")
+                .addRule("\\b(?:\\d{1,3}\\.){3}\\d{1,3}\\b", 0, "<ip>")
+                .addRule("password=\\S+", Pattern.CASE_INSENSITIVE, "password=***");
+
+        assertEquals("login <email> from <ip> password=*** ok",
+                rules.apply("login bob@example.com from 10.0.0.1 PASSWORD=hunter2 ok"));
+    }
+
+    @Test
+    public void testEmptyAndNullInput() {
+        ReplacementRuleSet rules = new ReplacementRuleSet().addRule("a", 0, "b");
+        assertNull(rules.apply(null));
+        assertEquals("", rules.apply(""));
+        assertEquals("abc", new ReplacementRuleSet().apply("abc"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidRule() {
+        new ReplacementRuleSet().addRule("[invalid", 0, "x");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testMissingGroup() {
+        new ReplacementRuleSet().addRule("a", 0, "$1").apply("a");
+    }
+
+    @Test
+    public void testCancelledBudget() {
+        MatchBudget budget = new MatchBudget();
+        budget.cancel();
+        try {
+            new ReplacementRuleSet().addRule("a", 0, "b").apply("aaa", budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+            assertEquals(0, e.getCompletedCount());
+        }
+    }
+}
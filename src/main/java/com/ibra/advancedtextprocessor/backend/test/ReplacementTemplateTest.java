@@ -0,0 +1,104 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.MatchReplacer;
+import com.ibra.advancedtextprocessor.backend.ReplacementTemplate;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ReplacementTemplateTest {
+
+    @Test
+    public void testMatchesMatcherReplaceAll() {
+        String text = "id=7 name=ann id=12 x=";
+        Pattern pattern = Pattern.compile("(?<key>\\w+)=(\\w*)");
+        String[] replacements = {"", "plain", "$0!", "$2:$1", "${key}", "\\$1 costs \\\\", "$1$2$12", "[$2]"};
+
+        for (String replacement : replacements) {
+            ReplacementTemplate template = new ReplacementTemplate(replacement, pattern);
+            assertEquals(replacement, pattern.matcher(text).replaceAll(replacement),
+                    TextProcessor.replaceAll(text, pattern, template, null));
+        }
+        assertTrue(new ReplacementTemplate("plain \\$", pattern).isLiteral());
+        assertFalse(new ReplacementTemplate("$1", pattern).isLiteral());
+    }
+
+    @Test
+    public void testMultiDigitGroupReferences() {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            regex.append("(.)");
+            text.append((char) ('a' + i));
+        }
+        Pattern pattern = Pattern.compile(regex.toString());
+
+        for (String replacement : new String[]{"$12", "$13", "$1$0", "$10x"}) {
+            assertEquals(pattern.matcher(text).replaceAll(replacement),
+                    TextProcessor.replaceAll(text, pattern, new ReplacementTemplate(replacement, pattern), null));
+        }
+    }
+
+    @Test
+    public void testInvalidReferencesFailWhenParsed() {
+        Pattern pattern = Pattern.compile("(a)");
+        String[] invalid = {"$", "x\\", "${missing}", "${open", "$x"};
+        for (String replacement : invalid) {
+            try {
+                new ReplacementTemplate(replacement, pattern);
+                fail("Expected IllegalArgumentException for " + replacement);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        try {
+            new ReplacementTemplate("$2", pattern);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testAppendToWriter() throws IOException {
+        Pattern pattern = Pattern.compile("(\\w+)@(\\w+)");
+        Matcher matcher = pattern.matcher("mail bob@host now");
+        assertTrue(matcher.find());
+
+        StringWriter out = new StringWriter();
+        new ReplacementTemplate("$2 <- $1", pattern).appendTo(out, "mail bob@host now", matcher);
+        assertEquals("host <- bob", out.toString());
+    }
+
+    @Test
+    public void testComputedReplacement() {
+        // Mask all but the last four digits
+        MatchReplacer mask = (match, out) -> {
+            int digits = match.end() - match.start();
+            for (int i = 0; i < digits - 4; i++) {
+                out.append('*');
+            }
+            out.append(match.group().substring(Math.max(0, digits - 4)));
+        };
+
+        assertEquals("card ************3456, pin 12",
+                TextProcessor.replaceAll("card 1234567890123456, pin 12", "\\d+", 0, mask));
+        assertEquals("a-b", TextProcessor.replaceAll("a-b", "x", 0, mask));
+        assertEquals("<>a<>b<>", TextProcessor.replaceAll("ab", "x*", 0, (match, out) -> out.append("<>")));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testReplacerIOException() {
+        TextProcessor.replaceAll("abc", "b", 0, (match, out) -> {
+            throw new IOException("failed");
+        });
+    }
+}
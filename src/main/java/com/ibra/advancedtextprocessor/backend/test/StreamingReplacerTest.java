@@ -0,0 +1,99 @@
+package com.ibra.advancedtextprocessor.backend.test;
+
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
+import com.ibra.advancedtextprocessor.backend.StreamingReplacer;
+import com.ibra.advancedtextprocessor.backend.TextProcessor;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class StreamingReplacerTest {
+
+    /**
+     * Builds a text several chunks long so that matches cross window boundaries
+     */
+    private static String longText() {
+        Random random = new Random(42);
+        String[] words = {"error", "warn", "id=42", "aaa", "b", "foo bar", "\n", "  ", "x\n"};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 5 * StreamingReplacer.DEFAULT_CHUNK_SIZE) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String stream(String text, String pattern, int flags, String replacement) throws Exception {
+        StringWriter out = new StringWriter();
+        new StreamingReplacer(pattern, flags, replacement).replace(new StringReader(text), out);
+        return out.toString();
+    }
+
+    @Test
+    public void testMatchesReplaceAll() throws Exception {
+        String text = longText();
+        String[][] cases = {
+                {"error", "ERROR"},
+                {"id=(\\d+)", "id=<$1>"},
+                {"a+", "A"},
+                {"a*", "-"},
+                {"\\bbar\\b", "baz"},
+                {"^x$", "y"},
+                {"(?<=foo )bar", "qux"},
+                {"warn(?= )", "W"},
+                {"[^\\n]+", "[$0]"},
+                {"(?s)error.*?warn", "E..W"},
+                {"\\Gerror", "E"}
+        };
+
+        for (String[] c : cases) {
+            for (int flags : new int[]{0, Pattern.MULTILINE}) {
+                String expected = TextProcessor.replaceAll(text, c[0], c[1], flags);
+                assertEquals(c[0], expected, stream(text, c[0], flags, c[1]));
+            }
+        }
+    }
+
+    @Test
+    public void testReachAndLineBounds() {
+        assertEquals(5 + 2, new StreamingReplacer("error", 0, "").getReach());
+        assertEquals(-1, new StreamingReplacer("a+", 0, "").getReach());
+        assertTrue(new StreamingReplacer("[^\\n]+", 0, "").isLineBounded());
+        assertFalse(new StreamingReplacer("\\s+", 0, "").isLineBounded());
+    }
+
+    @Test
+    public void testReplaceByteChannel() throws Exception {
+        String text = "café au lait\n".repeat(2000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = new StreamingReplacer("café", 0, "thé").replace(
+                Channels.newChannel(new java.io.ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(out), StandardCharsets.UTF_8, null);
+
+        assertEquals(2000, count);
+        assertEquals(text.replace("café", "thé"), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCancelledBudget() throws Exception {
+        MatchBudget budget = new MatchBudget();
+        budget.cancel();
+
+        try {
+            new StreamingReplacer("a", 0, "b").replace(new StringReader("aaa"), new StringWriter(), budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+            assertEquals(0, e.getCompletedCount());
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.ibra.advancedtextprocessor.backend.test;
 
 
+import com.ibra.advancedtextprocessor.backend.LineIndex;
+import com.ibra.advancedtextprocessor.backend.MatchBudget;
+import com.ibra.advancedtextprocessor.backend.MatchOffsets;
+import com.ibra.advancedtextprocessor.backend.MatchSpans;
+import com.ibra.advancedtextprocessor.backend.MatchTimeoutException;
 import com.ibra.advancedtextprocessor.backend.TextProcessor;
 import org.junit.Test;
 
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -118,6 +131,23 @@ public class TextProcessorTest {
         assertTrue(TextProcessor.getDetailedMatches(null, "pattern", 0).isEmpty());
     }
 
+    @Test
+    public void testGetDetailedMatchesWithLines() {
+        String text = "alpha beta\ngamma\n  beta";
+        LineIndex lines = LineIndex.of(text);
+
+        List<TextProcessor.MatchInfo> matches = TextProcessor.getDetailedMatches(text, "beta", 0, lines, null);
+
+        assertEquals(2, matches.size());
+        assertEquals(1, matches.get(0).getLineNumber());
+        assertEquals(7, matches.get(0).getColumnNumber());
+        assertEquals(3, matches.get(1).getLineNumber());
+        assertEquals(3, matches.get(1).getColumnNumber());
+
+        // Without a line index no lines are reported
+        assertEquals(-1, TextProcessor.getDetailedMatches(text, "beta", 0).get(0).getLineNumber());
+    }
+
     @Test(expected = PatternSyntaxException.class)
     public void testGetDetailedMatchesInvalidPattern() {
         TextProcessor.getDetailedMatches("text", "[invalid", 0);
@@ -136,4 +166,456 @@ public class TextProcessorTest {
         assertNull(info.getGroup(2));
         assertTrue(info.toString().contains("pos: 10-14"));
     }
+
+    @Test
+    public void testMatchInfoOffsets() {
+        StringBuilder text = new StringBuilder("k1=v1, k2");
+        List<TextProcessor.MatchInfo> matches = TextProcessor.getDetailedMatches(text, "(k\\d)(=v\\d)?", 0);
+
+        assertEquals(2, matches.size());
+        TextProcessor.MatchInfo first = matches.get(0);
+        assertEquals(2, first.getGroupCount());
+        assertEquals(0, first.getGroupStart(1));
+        assertEquals(2, first.getGroupEnd(1));
+        assertEquals("k1=v1", first.getMatchText());
+        assertEquals("=v1", first.getGroup(2));
+
+        TextProcessor.MatchInfo second = matches.get(1);
+        assertEquals("k2", second.getGroup(0));
+        assertNull(second.getGroup(2));
+        assertEquals(-1, second.getGroupStart(2));
+        assertNull(second.getGroup(3));
+        assertEquals("Match: 'k2', pos: 7-9", second.toString());
+    }
+
+    @Test
+    public void testFindMatchOffsets() {
+        MatchOffsets offsets = TextProcessor.findMatchOffsets("a=1 b c=3", "(\\w)(=\\d)?", 0);
+
+        assertEquals(2, offsets.getGroupCount());
+        assertEquals(3, offsets.size());
+        assertEquals(4, offsets.getStart(1));
+        assertEquals(5, offsets.getEnd(1));
+        assertEquals(-1, offsets.getGroupStart(1, 2));
+        assertEquals(7, offsets.getGroupStart(2, 2));
+        assertArrayEquals(new int[]{0, 3, 0, 1, 1, 3}, Arrays.copyOf(offsets.toArray(), 6));
+        assertEquals(18, offsets.toArray().length);
+
+        assertEquals(0, TextProcessor.findMatchOffsets("", "a", 0).size());
+    }
+
+    @Test
+    public void testTimeBudgetStopsRunawayPattern() {
+        // (.*a){12} backtracks polynomially with degree 12 when the match fails
+        String text = "x1x2" + "a".repeat(40) + "!";
+        MatchBudget budget = new MatchBudget(100, TimeUnit.MILLISECONDS);
+
+        try {
+            TextProcessor.findMatches(text, "x\\d|(.*a){12}$", 0, budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertFalse(e.isCancelled());
+            assertEquals(2, e.getCompletedCount());
+            assertEquals(4, e.getProcessedLength());
+        }
+
+        try {
+            TextProcessor.replaceAll(text, "(.*a){12}$", "", 0, new MatchBudget(50, TimeUnit.MILLISECONDS));
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertEquals(0, e.getCompletedCount());
+        }
+    }
+
+    @Test
+    public void testCancelledBudget() {
+        MatchBudget budget = new MatchBudget();
+        assertEquals(List.of("1"), TextProcessor.findMatches("a1", "\\d", 0, budget));
+
+        budget.cancel();
+        try {
+            TextProcessor.countMatches("a1", "\\d", 0, budget);
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+        }
+
+        Iterator<TextProcessor.MatchInfo> iterator = TextProcessor.matchIterator("a1", "\\d", 0, budget);
+        try {
+            iterator.hasNext();
+            fail("Expected MatchTimeoutException");
+        } catch (MatchTimeoutException e) {
+            assertTrue(e.isCancelled());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testBudgetDoesNotChangeResults() {
+        String text = "cat hat bat";
+        MatchBudget budget = new MatchBudget(1, TimeUnit.MINUTES);
+
+        assertEquals("[cat] hat [bat]", TextProcessor.highlightMatches(text, "[cb]at", "[", "]", 0, budget));
+        assertEquals("cow hat bow", TextProcessor.replaceAll(text, "([cb])at", "$1ow", 0, budget));
+        assertEquals(3, TextProcessor.getDetailedMatches(text, "\\wat", 0, budget).size());
+        assertEquals(3, TextProcessor.findMatchOffsets(text, "\\wat", 0, budget).size());
+    }
+
+    @Test
+    public void testStreamMatches() {
+        String text = "a1 b22 c333 d4444";
+
+        List<String> all = TextProcessor.streamMatches(text, "\\d+", 0)
+                .map(TextProcessor.MatchInfo::getMatchText)
+                .collect(Collectors.toList());
+        assertEquals(List.of("1", "22", "333", "4444"), all);
+
+        // Short-circuiting
+        TextProcessor.MatchInfo first = TextProcessor.streamMatches(text, "\\d+", 0).findFirst().orElse(null);
+        assertNotNull(first);
+        assertEquals(1, first.getStartPosition());
+        assertEquals(2, TextProcessor.streamMatches(text, "\\d+", 0).limit(2).count());
+
+        // Empty cases
+        assertEquals(0, TextProcessor.streamMatches("", "\\d+", 0).count());
+        assertEquals(0, TextProcessor.streamMatches(null, "\\d+", 0).count());
+        assertEquals(0, TextProcessor.streamMatches(text, "", 0).count());
+    }
+
+    @Test
+    public void testMatchIterator() {
+        Iterator<TextProcessor.MatchInfo> iterator = TextProcessor.matchIterator("x=1, y=2", "(\\w)=(\\d)", 0);
+
+        assertTrue(iterator.hasNext());
+        assertTrue(iterator.hasNext());   // hasNext must not skip matches
+        TextProcessor.MatchInfo first = iterator.next();
+        assertEquals("x", first.getGroup(1));
+        assertEquals("1", first.getGroup(2));
+
+        TextProcessor.MatchInfo second = iterator.next();
+        assertEquals("y=2", second.getMatchText());
+        assertEquals(5, second.getStartPosition());
+        assertFalse(iterator.hasNext());
+
+        try {
+            iterator.next();
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testStreamMatchesInvalidPattern() {
+        TextProcessor.streamMatches("text", "[invalid", 0);
+    }
+
+    @Test
+    public void testCharSequenceOverloads() {
+        StringBuilder builder = new StringBuilder("cat hat bat");
+        CharBuffer buffer = CharBuffer.wrap("cat hat bat");
+
+        assertEquals(List.of("cat", "hat", "bat"), TextProcessor.findMatches(builder, "\\wat", 0));
+        assertEquals("[cat] hat [bat]", TextProcessor.highlightMatches(buffer, "[cb]at", "[", "]", 0));
+        assertEquals("cow hat bow", TextProcessor.replaceAll(builder, "([cb])at", "$1ow", 0));
+        assertEquals(3, TextProcessor.getDetailedMatches(buffer, "\\w+", 0).size());
+        assertEquals("hat", TextProcessor.getDetailedMatches(builder, "h\\w+", 0).get(0).getMatchText());
+    }
+
+    @Test
+    public void testFindMatchSpans() {
+        MatchSpans spans = TextProcessor.findMatchSpans("cat hat bat", "[cb]at", 0);
+
+        assertArrayEquals(new int[]{0, 3, 0, 8, 3, 0}, spans.toArray());
+        assertEquals(2, spans.size());
+        assertEquals(11, spans.getEnd(1));
+        assertEquals(0, TextProcessor.findMatchSpans("", "x", 0).size());
+    }
+
+    @Test
+    public void testProcessTextMatchesSequentialOperations() {
+        String[] texts = {"cat hat bat\nfoo**bar", ""};
+        String[] patterns = {"[cb]at", "\\b\\w", "a*", "\\*+", "(\\w)at"};
+        String[][] markers = {{"[", "]"}, {"**", "**"}, {"", ""}, {null, null}};
+        String[] replacements = {"<$0>", "", null};
+
+        for (String text : texts) {
+            for (String pattern : patterns) {
+                for (String[] marker : markers) {
+                    for (String replacement : replacements) {
+                        TextProcessor.ProcessResult result = TextProcessor.processText(
+                                text, pattern, 0, true, marker[0], marker[1], replacement, null);
+
+                        String expected = marker[0] == null
+                                ? text
+                                : TextProcessor.highlightMatches((CharSequence) text, pattern, marker[0], marker[1], 0);
+                        if (marker[0] != null) {
+                            assertEquals(pattern, expected, result.getHighlightedText());
+                        }
+                        if (replacement != null) {
+                            expected = TextProcessor.replaceAll((CharSequence) expected, pattern, replacement, 0);
+                        }
+                        assertEquals(pattern, expected, result.getOutput());
+                        assertEquals(pattern, TextProcessor.findMatches((CharSequence) text, pattern, 0),
+                                result.getMatches());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testProcessTextCollectsSpans() {
+        TextProcessor.ProcessResult result = TextProcessor.processText(
+                "cat hat bat", "[cb]at", 0, false, null, null, null, null);
+
+        assertNull(result.getMatches());
+        assertNull(result.getHighlightedText());
+        assertEquals("cat hat bat", result.getOutput());
+        assertArrayEquals(new int[]{0, 3, 0, 8, 3, 0}, result.getSpans().toArray());
+    }
+
+    @Test
+    public void testProcessTextListsFirstMatchPage() {
+        String[] texts = {"cat hat bat\nfoo**bar", ""};
+        String[] patterns = {"[cb]at", "\\b\\w", "a*", "\\*+", "(\\w)at"};
+
+        for (String text : texts) {
+            for (String pattern : patterns) {
+                List<TextProcessor.MatchInfo> all = TextProcessor.findMatchPage(text, pattern, 0, 0, 100).getMatches();
+                for (int maxMatches = 0; maxMatches <= all.size() + 1; maxMatches++) {
+                    String message = pattern + " " + maxMatches + " in " + text;
+                    TextProcessor.ProcessResult result = TextProcessor.processText(
+                            text, pattern, 0, maxMatches, "[", "]", "<$0>", null);
+                    TextProcessor.MatchPage page = result.getMatchPage();
+
+                    assertEquals(message, TextProcessor.highlightMatches((CharSequence) text, pattern, "[", "]", 0),
+                            result.getHighlightedText());
+                    assertEquals(message, Math.min(maxMatches, all.size()), page.getMatches().size());
+                    assertEquals(message, maxMatches >= all.size(), page.isComplete());
+
+                    // The page and the pages loaded after it hold every match once
+                    List<TextProcessor.MatchInfo> listed = new ArrayList<>(page.getMatches());
+                    if (!page.isComplete()) {
+                        listed.addAll(TextProcessor.findMatchPage(
+                                text, pattern, 0, page.getNextPosition(), 100).getMatches());
+                    }
+                    assertEquals(message, all.size(), listed.size());
+                    for (int i = 0; i < all.size(); i++) {
+                        assertEquals(message, all.get(i).getStartPosition(), listed.get(i).getStartPosition());
+                        assertEquals(message, all.get(i).getMatchText(), listed.get(i).getMatchText());
+                        assertEquals(message, all.get(i).getGroupCount(), listed.get(i).getGroupCount());
+                    }
+                }
+            }
+        }
+        assertNull(TextProcessor.processText("cat", "c", 0, false, null, null, null, null).getMatchPage());
+    }
+
+    @Test
+    public void testCountMatches() {
+        CharBuffer buffer = CharBuffer.wrap("one two three two one");
+
+        assertEquals(2, TextProcessor.countMatches(buffer, Pattern.compile("two")));
+        assertEquals(5, TextProcessor.countMatches(buffer, "\\w+", 0));
+        assertEquals(2, TextProcessor.countMatches(buffer, "ONE", Pattern.CASE_INSENSITIVE));
+        assertEquals(0, TextProcessor.countMatches(null, Pattern.compile("two")));
+        assertEquals(0, TextProcessor.countMatches("", Pattern.compile("two")));
+        assertEquals(0, TextProcessor.countMatches(buffer, "", 0));
+    }
+
+    @Test
+    public void testFindMatchesMaxResults() {
+        String text = "one two three two one";
+
+        assertEquals(Arrays.asList("one", "two"), TextProcessor.findMatches(text, "\\w+", 0, 2));
+        assertEquals(5, TextProcessor.findMatches(text, "\\w+", 0, 100).size());
+        assertTrue(TextProcessor.findMatches(text, "\\w+", 0, 0).isEmpty());
+
+        try {
+            TextProcessor.findMatches(text, "\\w+", 0, -1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testExistsAndFirstMatch() {
+        String text = "no digits here, but 42 and 7 later";
+
+        assertTrue(TextProcessor.existsMatch(text, "\\d+", 0));
+        assertFalse(TextProcessor.existsMatch(text, "xyz", 0));
+        assertFalse(TextProcessor.existsMatch("", "\\d+", 0));
+
+        TextProcessor.MatchInfo first = TextProcessor.firstMatch(text, "(\\d)(\\d)?", 0);
+        assertEquals("42", first.getMatchText());
+        assertEquals(20, first.getStartPosition());
+        assertEquals("2", first.getGroup(2));
+        assertNull(TextProcessor.firstMatch(text, "xyz", 0));
+    }
+
+    @Test
+    public void testMatchPagesEqualFullScan() {
+        String text = "ab a\n\nabc b a ab\n";
+        String[] patterns = {"\\w+", "a*", "(?<=a)b?", "\\b", "^", "x"};
+
+        for (String pattern : patterns) {
+            List<TextProcessor.MatchInfo> expected = TextProcessor.getDetailedMatches(text, pattern, Pattern.MULTILINE);
+            for (int pageSize = 1; pageSize <= 4; pageSize++) {
+                List<TextProcessor.MatchInfo> paged = new ArrayList<>();
+                int from = 0;
+                TextProcessor.MatchPage page;
+                do {
+                    page = TextProcessor.findMatchPage(text, pattern, Pattern.MULTILINE, from, pageSize);
+                    assertTrue(page.getMatches().size() <= pageSize);
+                    paged.addAll(page.getMatches());
+                    from = page.getNextPosition();
+                } while (!page.isComplete());
+
+                assertEquals(pattern + " in pages of " + pageSize, expected.size(), paged.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getStartPosition(), paged.get(i).getStartPosition());
+                    assertEquals(expected.get(i).getEndPosition(), paged.get(i).getEndPosition());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLiteralPrefilterDoesNotChangeResults() {
+        String text = "Mail ADMIN@example.com or bob@test.org, see http://example.com/a?b=1 "
+                + "from 10.0.0.1 on 12/31/2023; color #A1b2C3 and <b>bold</b>";
+        String[] patterns = {
+                "[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}",
+                "https?://[^ ]+",
+                "\\b(?:\\d{1,3}\\.){3}\\d{1,3}\\b",
+                "\\b(0?[1-9]|1[0-2])/(0?[1-9]|[12]\\d|3[01])/\\d{4}\\b",
+                "<([a-z]+)>.*?</\\1>",
+                "#[0-9a-f]{6}",
+                "admin"
+        };
+
+        try {
+            for (String pattern : patterns) {
+                for (int flags : new int[]{0, Pattern.CASE_INSENSITIVE}) {
+                    TextProcessor.setLiteralPrefilterEnabled(false);
+                    List<String> plain = TextProcessor.findMatches((CharSequence) text, pattern, flags);
+                    String highlighted = TextProcessor.highlightMatches(text, pattern, "[", "]", flags);
+
+                    TextProcessor.setLiteralPrefilterEnabled(true);
+                    assertEquals(pattern, plain, TextProcessor.findMatches((CharSequence) text, pattern, flags));
+                    assertEquals(pattern, highlighted, TextProcessor.highlightMatches(text, pattern, "[", "]", flags));
+                    assertEquals(pattern, plain.size(), TextProcessor.countMatches(text, pattern, flags));
+                }
+            }
+        } finally {
+            TextProcessor.setLiteralPrefilterEnabled(true);
+        }
+
+        assertTrue(TextProcessor.isLiteralPrefilterEnabled());
+        assertEquals(List.of("ADMIN"), TextProcessor.findMatches((CharSequence) text, "admin", Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void testLiteralPrefilterUsesCompileFlags() {
+        String text = "xAb xab XAB xxAbc abC ABc kA Ka";
+        String[] patterns = {"a(?-i)b", "xa(?-i)bc", "ab(?i)c", "K(?i)a", "(?i)ab", "(?-i)ab(?i)C", "(?i:a)b"};
+
+        try {
+            // Only the prefilter is under test here
+            TextProcessor.setDfaEngineEnabled(false);
+            for (String pattern : patterns) {
+                for (int flags : new int[]{0, Pattern.CASE_INSENSITIVE}) {
+                    List<String> expected = Pattern.compile(pattern, flags).matcher(text).results()
+                            .map(MatchResult::group).collect(Collectors.toList());
+                    // Twice, so the second call takes the analysis cached with the pattern
+                    assertEquals(pattern + " " + flags, expected, TextProcessor.findMatches((CharSequence) text, pattern, flags));
+                    assertEquals(pattern + " " + flags, expected, TextProcessor.findMatches((CharSequence) text, pattern, flags));
+                    assertEquals(pattern + " " + flags, expected.size(), TextProcessor.countMatches(text, pattern, flags));
+                }
+            }
+        } finally {
+            TextProcessor.setDfaEngineEnabled(true);
+        }
+    }
+
+    @Test
+    public void testDfaEngineDoesNotChangeResults() {
+        String text = "Mail ADMIN@example.com or bob@test.org\r\nfrom 10.0.0.1 on 12/31/2023;\n"
+                + "color #A1b2C3, call (555) 123-4567\u2028zip 12345-6789 \uD83D\uDE00 done\n";
+        String[] patterns = {
+                "[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}",
+                "\\b(?:\\d{1,3}\\.){3}\\d{1,3}\\b",
+                "\\b(0?[1-9]|1[0-2])/(0?[1-9]|[12]\\d|3[01])/\\d{4}\\b",
+                "\\(?\\d{3}\\)?[-. ]?\\d{3}[-. ]?\\d{4}",
+                "^\\w+|\\w+$",
+                "(\\w+?)(\\d*)\\B",
+                "(a|ab)(c|bcd)?",
+                ".*?\\s",
+                "\\w*"
+        };
+
+        try {
+            for (String pattern : patterns) {
+                for (int flags : new int[]{0, Pattern.CASE_INSENSITIVE, Pattern.MULTILINE, Pattern.DOTALL}) {
+                    TextProcessor.setDfaEngineEnabled(false);
+                    List<String> plain = TextProcessor.findMatches((CharSequence) text, pattern, flags);
+                    String details = TextProcessor.getDetailedMatches(text, pattern, flags).toString();
+                    String highlighted = TextProcessor.highlightMatches(text, pattern, "[", "]", flags);
+
+                    TextProcessor.setDfaEngineEnabled(true);
+                    assertEquals(pattern, plain, TextProcessor.findMatches((CharSequence) text, pattern, flags));
+                    assertEquals(pattern, details, TextProcessor.getDetailedMatches(text, pattern, flags).toString());
+                    assertEquals(pattern, highlighted, TextProcessor.highlightMatches(text, pattern, "[", "]", flags));
+                    assertEquals(pattern, plain.size(), TextProcessor.countMatches(text, pattern, flags));
+                }
+            }
+        } finally {
+            TextProcessor.setDfaEngineEnabled(true);
+        }
+        assertTrue(TextProcessor.isDfaEngineEnabled());
+    }
+
+    @Test
+    public void testDfaEngineUsesCompileFlags() {
+        String text = "ABC abc abC kA Ka k K a\nline AB\nab END";
+        String[] patterns = {"ab(?i)c", "K(?i)a", "(K)|(?i)a", "(?i)ab(?-i)C", "a(?-i)b", "(?i:k)a|b",
+                "(?m)^ab|(?-m)b$", "(?s)b.(?-s)l", "(?i)k(?-i)(a|A)", "x|(?i)end"};
+
+        for (String pattern : patterns) {
+            for (int flags : new int[]{0, Pattern.CASE_INSENSITIVE, Pattern.MULTILINE}) {
+                List<String> expected = new ArrayList<>();
+                Pattern.compile(pattern, flags).matcher(text).results()
+                        .forEach(match -> expected.add(match.group() + "@" + match.start()));
+
+                List<String> actual = new ArrayList<>();
+                for (TextProcessor.MatchInfo match : TextProcessor.getDetailedMatches(text, pattern, flags)) {
+                    actual.add(match.getMatchText() + "@" + match.getStartPosition());
+                }
+                assertEquals(pattern + " " + flags, expected, actual);
+                assertEquals(pattern + " " + flags, expected.size(), TextProcessor.countMatches(text, pattern, flags));
+            }
+        }
+    }
+
+    @Test
+    public void testSupportsDfaEngine() {
+        assertTrue(TextProcessor.supportsDfaEngine("\\b\\d{5}(?:-\\d{4})?\\b", 0));
+        assertTrue(TextProcessor.supportsDfaEngine("^error: (.*)$", Pattern.MULTILINE));
+        assertFalse(TextProcessor.supportsDfaEngine("<([a-z]+)>.*?</\\1>", 0));
+        assertFalse(TextProcessor.supportsDfaEngine("foo(?=bar)", 0));
+        assertFalse(TextProcessor.supportsDfaEngine("a++b", 0));
+        assertFalse(TextProcessor.supportsDfaEngine("(a?)*b", 0));
+    }
+
+    @Test
+    public void testDfaEngineAvoidsBacktracking() {
+        String text = "x" + "a".repeat(5000) + " " + "b".repeat(5000);
+        MatchBudget budget = new MatchBudget(10, TimeUnit.SECONDS);
+
+        assertEquals(0, TextProcessor.countMatches(text, "(a|aa)*c", 0, budget));
+        assertEquals(0, TextProcessor.countMatches(text, "(\\w+\\s?)+!", 0, budget));
+        assertEquals(List.of("xaaa"), TextProcessor.findMatches(text.substring(0, 4), "x(a|aa)*", 0, budget));
+    }
 }
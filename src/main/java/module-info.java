@@ -3,6 +3,7 @@ module com.ibra.advancedtextprocessor {
     requires javafx.fxml;
 
     requires org.controlsfx.controls;
+    requires static jdk.incubator.vector;
     requires junit;
 
     opens com.ibra.advancedtextprocessor to javafx.fxml;